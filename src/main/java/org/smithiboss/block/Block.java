@@ -2,6 +2,7 @@ package org.smithiboss.block;
 
 import org.smithiboss.ecc.Hex;
 import org.smithiboss.ecc.Int;
+import org.smithiboss.spv.PartialMerkleTree;
 import org.smithiboss.utils.Bytes;
 import org.smithiboss.utils.Hash;
 import org.smithiboss.utils.Helper;
@@ -22,6 +23,7 @@ public class Block {
     private final byte[] bits;
     private final byte[] nonce;
     private List<byte[]> txHashes;
+    private List<List<byte[]>> merkleLevels = null;
 
     public Block(Int version, byte[] prevBlock, byte[] merkleRoot, Int timestamp, byte[] bits, byte[] nonce, List<byte[]> txHashes) {
         this.version = version;
@@ -184,11 +186,37 @@ public class Block {
      *         is valid, otherwise {@code false}.
      */
     public boolean validateMerkleRoot() {
-        var hashes = txHashes.stream().map(Bytes::reverseOrder).toList();
-        var root = Helper.merkleRoot(hashes);
+        var root = merkleLevels().getLast().getFirst();
         return Arrays.equals(Bytes.reverseOrder(root), merkleRoot);
     }
 
+    /**
+     * Builds a {@link MerkleBlock} that proves the matched transactions of this block (BIP37).
+     * The interior hashes computed for {@link #validateMerkleRoot()} are reused.
+     *
+     * @param matches a {@code boolean} per transaction hash, {@code true} if the transaction matched
+     * @return a {@link MerkleBlock} object
+     */
+    public MerkleBlock merkleBlock(boolean[] matches) {
+        var tree = PartialMerkleTree.build(merkleLevels(), matches);
+        // merkle blocks keep their hashes in reversed order
+        var hashes = tree.getHashes().stream().map(Bytes::reverseOrder).toList();
+        return new MerkleBlock(version, prevBlock, merkleRoot, timestamp, bits, nonce, tree.getTotal(), hashes, tree.getFlags());
+    }
+
+    /**
+     * Returns all levels of the merkle tree of the transaction hashes, computing them on first use
+     *
+     * @return a {@link List} of levels, leaves first and root last
+     */
+    private List<List<byte[]>> merkleLevels() {
+        if (merkleLevels == null) {
+            var hashes = txHashes.stream().map(Bytes::reverseOrder).toList();
+            merkleLevels = Helper.merkleLevels(hashes);
+        }
+        return merkleLevels;
+    }
+
     public Int getVersion() {
         return version;
     }
@@ -213,7 +241,12 @@ public class Block {
         return nonce;
     }
 
+    public List<byte[]> getTxHashes() {
+        return txHashes;
+    }
+
     public void setTxHashes(List<byte[]> txHashes) {
         this.txHashes = txHashes;
+        this.merkleLevels = null;
     }
 }
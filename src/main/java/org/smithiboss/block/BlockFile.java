@@ -0,0 +1,162 @@
+package org.smithiboss.block;
+
+import org.smithiboss.network.NetworkEnvelope;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+public class BlockFile {
+
+    private static final Pattern NAME = Pattern.compile("blk(\\d+)\\.dat");
+    private static final int HEADER_LENGTH = 80;
+    // magic and length before every block
+    private static final int FRAME_LENGTH = 4 + 4;
+    // the largest serialized block, witness included, that consensus allows
+    private static final int MAX_BLOCK_SIZE = 4_000_000;
+
+    private final Path path;
+    private final int number;
+    private final ByteBuffer data;
+    private final int magic;
+    private final boolean testnet;
+
+    private BlockFile(Path path, int number, ByteBuffer data, boolean testnet) {
+        this.path = path;
+        this.number = number;
+        this.data = data;
+        this.magic = ByteBuffer.wrap(NetworkEnvelope.magic(testnet)).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        this.testnet = testnet;
+    }
+
+    /**
+     * Maps a block file of Bitcoin Core ({@code blkNNNNN.dat}) read only into memory. Every block in it is
+     * framed by the network magic and its length; blocks are read as views of the mapping without copying.
+     *
+     * @param path the file
+     * @param testnet whether the file holds testnet blocks, which have another magic
+     * @return a {@link BlockFile} object
+     * @throws IllegalStateException if the file cannot be mapped
+     */
+    public static BlockFile open(Path path, boolean testnet) {
+        var matcher = NAME.matcher(path.getFileName().toString());
+        var number = matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Block file too large: " + path);
+            }
+            var data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            return new BlockFile(path, number, data, testnet);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Finds every block in the file by its framing. Bytes that do not start a frame are skipped up to the next
+     * magic, the way Bitcoin Core reindexes: block files are preallocated and end in zeros, and a crash can leave
+     * a partial block behind. A frame whose length runs past the end of the file or above the maximum block size,
+     * or whose block does not parse, is skipped in the same way from the byte after its magic. To find the blocks
+     * that do not parse, every block is walked over as a {@link RawBlock}, which reads the length of every
+     * transaction.
+     *
+     * @return a {@link List} of {@link BlockLocation} in file order
+     */
+    public List<BlockLocation> scan() {
+        var locations = new ArrayList<BlockLocation>();
+        scan((location, block) -> locations.add(location));
+        return locations;
+    }
+
+    /**
+     * Calls the consumer with every block of the file as a view of the mapping, in file order
+     *
+     * @param consumer receives the location and the {@link RawBlock}
+     * @see #scan()
+     */
+    public void forEach(BiConsumer<BlockLocation, RawBlock> consumer) {
+        scan(consumer);
+    }
+
+    private void scan(BiConsumer<BlockLocation, RawBlock> consumer) {
+        var limit = data.limit();
+        var position = 0;
+        while (position + FRAME_LENGTH <= limit) {
+            if (data.getInt(position) != magic) {
+                position++;
+                continue;
+            }
+            var length = data.getInt(position + 4);
+            if (length < HEADER_LENGTH || length > MAX_BLOCK_SIZE || length > limit - position - FRAME_LENGTH) {
+                // not a frame after all, or a block cut off at the end of the file
+                position++;
+                continue;
+            }
+            var location = new BlockLocation(number, position + FRAME_LENGTH, length);
+            RawBlock block;
+            try {
+                block = block(location);
+            } catch (IllegalStateException e) {
+                // a partial block followed by zeros or the next block, which may start within its length
+                position++;
+                continue;
+            }
+            consumer.accept(location, block);
+            position += FRAME_LENGTH + length;
+        }
+    }
+
+    /**
+     * Returns a block of the file as a view of the mapping, without copying
+     *
+     * @param location a {@link BlockLocation} of this file
+     * @return a {@link RawBlock} object
+     */
+    public RawBlock block(BlockLocation location) {
+        return RawBlock.wrap(slice(location), testnet);
+    }
+
+    /**
+     * Returns the serialized block as a read only view of the mapping
+     *
+     * @param location a {@link BlockLocation} of this file
+     * @return a {@link ByteBuffer}
+     */
+    public ByteBuffer slice(BlockLocation location) {
+        return data.slice(location.offset(), location.length()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Computes the hash of a block from its header, without parsing the block
+     *
+     * @param location a {@link BlockLocation} of this file
+     * @return the block hash as {@link Block#hash()} returns it
+     */
+    public byte[] hash(BlockLocation location) {
+        var header = new byte[HEADER_LENGTH];
+        data.get(location.offset(), header);
+        return Bytes.reverseOrder(Hash.hash256(header));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of the file, {@code 12} for {@code blk00012.dat}, or -1 for other file names
+     *
+     * @return a {@code int}
+     */
+    public int getNumber() {
+        return number;
+    }
+}
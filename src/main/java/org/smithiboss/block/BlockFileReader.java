@@ -0,0 +1,118 @@
+package org.smithiboss.block;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads the block files of a Bitcoin Core data directory ({@code blocks/blkNNNNN.dat}) through memory mappings
+ */
+public class BlockFileReader {
+
+    private final Path blocksDir;
+    private final boolean testnet;
+
+    /**
+     * @param blocksDir the {@code blocks} directory
+     * @param testnet whether the directory holds testnet blocks
+     * @throws IllegalStateException if the block files are obfuscated, which Bitcoin Core does since version 28
+     */
+    public BlockFileReader(Path blocksDir, boolean testnet) {
+        this.blocksDir = blocksDir;
+        this.testnet = testnet;
+        checkNotObfuscated();
+    }
+
+    /**
+     * Returns the block files in the order Bitcoin Core wrote them
+     *
+     * @return a {@link List} of paths
+     * @throws IllegalStateException if the directory cannot be listed
+     */
+    public List<Path> files() {
+        try (Stream<Path> paths = Files.list(blocksDir)) {
+            return paths.filter(p -> p.getFileName().toString().matches("blk\\d+\\.dat")).sorted().toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Calls the consumer with every block of every file, in file order. The blocks are views of the mappings,
+     * which stay mapped as long as a block refers to them.
+     *
+     * @param consumer receives the location and the {@link RawBlock}
+     */
+    public void forEach(BiConsumer<BlockLocation, RawBlock> consumer) {
+        for (Path path : files()) {
+            BlockFile.open(path, testnet).forEach(consumer);
+        }
+    }
+
+    /**
+     * Like {@link #forEach(BiConsumer)}, but reads the files in parallel, one file per task. The blocks of a file
+     * still arrive in order, the files in no particular order, and the consumer must be thread safe.
+     *
+     * @param consumer receives the location and the {@link RawBlock}
+     */
+    public void forEachParallel(BiConsumer<BlockLocation, RawBlock> consumer) {
+        files().parallelStream().forEach(path -> BlockFile.open(path, testnet).forEach(consumer));
+    }
+
+    /**
+     * Scans all block files in parallel and indexes every block by its hash. Every block is walked over once to
+     * check that it parses, as {@link BlockFile#scan()} does, but its transactions are not deserialized.
+     *
+     * @return a {@link BlockIndex} object
+     */
+    public BlockIndex buildIndex() {
+        var index = new BlockIndex();
+        files().parallelStream().forEach(path -> {
+            var file = BlockFile.open(path, testnet);
+            for (BlockLocation location : file.scan()) {
+                index.put(file.hash(location), location);
+            }
+        });
+        return index;
+    }
+
+    /**
+     * Returns a block from its location
+     *
+     * @param location a {@link BlockLocation} object
+     * @return a {@link RawBlock} backed by a mapping of its file
+     */
+    public RawBlock read(BlockLocation location) {
+        return BlockFile.open(path(location.file()), testnet).block(location);
+    }
+
+    /**
+     * Returns the path of a block file
+     *
+     * @param number the number of the file
+     * @return a {@link Path}
+     */
+    public Path path(int number) {
+        return blocksDir.resolve(String.format("blk%05d.dat", number));
+    }
+
+    // xor.dat holds the key Bitcoin Core obfuscates its block files with, all zeros when they are not
+    private void checkNotObfuscated() {
+        var xor = blocksDir.resolve("xor.dat");
+        if (!Files.exists(xor)) return;
+        byte[] key;
+        try {
+            key = Files.readAllBytes(xor);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        for (byte b : key) {
+            if (b != 0) {
+                throw new IllegalStateException("Obfuscated block files are not supported, see -blocksxor");
+            }
+        }
+    }
+}
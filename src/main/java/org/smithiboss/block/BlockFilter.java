@@ -0,0 +1,133 @@
+package org.smithiboss.block;
+
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.SipHash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class BlockFilter {
+
+    public static final int P = 19;
+    public static final long M = 784931;
+    private static final byte OP_RETURN = 0x6a;
+
+    private final byte[] blockHash;
+    private final GolombCodedSet set;
+
+    /**
+     * Constructs a basic block filter (BIP158)
+     *
+     * @param blockHash the hash of the block in internal byte order
+     * @param set the {@link GolombCodedSet} of the filter
+     */
+    public BlockFilter(byte[] blockHash, GolombCodedSet set) {
+        this.blockHash = blockHash;
+        this.set = set;
+    }
+
+    /**
+     * Builds the basic filter of a block. It contains every output script of the block except empty and
+     * OP_RETURN scripts, and the output script spent by every input except the coinbase input.
+     *
+     * @param block the {@link Block} header
+     * @param txs the transactions of the block
+     * @param spentScripts the output scripts spent by the inputs of the block, in any order
+     * @return a {@link BlockFilter} object
+     */
+    public static BlockFilter build(Block block, List<Tx> txs, List<Script> spentScripts) {
+        var elements = new ArrayList<byte[]>();
+        for (Tx tx : txs) {
+            for (TxOut txOut : tx.getTxOuts()) {
+                // the elements are the scripts exactly as they are in the block
+                var script = txOut.scriptPubkey().rawSerialize();
+                if (script.length == 0 || script[0] == OP_RETURN) continue;
+                elements.add(script);
+            }
+        }
+        for (Script script : spentScripts) {
+            var raw = script.rawSerialize();
+            if (raw.length > 0) {
+                elements.add(raw);
+            }
+        }
+        var blockHash = blockHash(block);
+        return new BlockFilter(blockHash, GolombCodedSet.build(elements, P, M, k0(blockHash), k1(blockHash)));
+    }
+
+    /**
+     * Parses the serialized basic filter of the given block
+     *
+     * @param block the {@link Block} header the filter belongs to
+     * @param serialized a {@code byte} array
+     * @return a {@link BlockFilter} object
+     */
+    public static BlockFilter parse(Block block, byte[] serialized) {
+        var blockHash = blockHash(block);
+        return new BlockFilter(blockHash, GolombCodedSet.parse(serialized, P, M, k0(blockHash), k1(blockHash)));
+    }
+
+    /**
+     * Returns whether any of the raw output scripts may be in this block
+     *
+     * @param scripts a {@link Collection} of raw serialized scripts
+     * @return a {@code boolean}
+     */
+    public boolean matchAny(Collection<byte[]> scripts) {
+        return set.matchAny(scripts);
+    }
+
+    /**
+     * Serializes the filter
+     *
+     * @return a {@code byte} array
+     */
+    public byte[] serialize() {
+        return set.serialize();
+    }
+
+    /**
+     * Returns the hash256 of the serialized filter
+     *
+     * @return a {@code byte} array in internal byte order
+     */
+    public byte[] filterHash() {
+        return Hash.hash256(serialize());
+    }
+
+    /**
+     * Returns the filter header, the hash256 of the filter hash followed by the previous filter header
+     *
+     * @param prevHeader the filter header of the previous block in internal byte order
+     * @return a {@code byte} array in internal byte order
+     */
+    public byte[] header(byte[] prevHeader) {
+        return Hash.hash256(Bytes.concat(filterHash(), prevHeader));
+    }
+
+    public byte[] getBlockHash() {
+        return blockHash;
+    }
+
+    public GolombCodedSet getSet() {
+        return set;
+    }
+
+    private static byte[] blockHash(Block block) {
+        return Hash.hash256(block.serialize());
+    }
+
+    // the SipHash key is the first 16 bytes of the block hash
+    private static long k0(byte[] blockHash) {
+        return SipHash.readLongLittleEndian(blockHash, 0);
+    }
+
+    private static long k1(byte[] blockHash) {
+        return SipHash.readLongLittleEndian(blockHash, 8);
+    }
+}
@@ -0,0 +1,148 @@
+package org.smithiboss.block;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Maps block hashes to where the blocks are stored in the block files. The index can be saved, so the block
+ * files only have to be scanned once.
+ */
+public class BlockIndex {
+
+    private static final byte[] MAGIC = {'B', 'I', 'D', 'X'};
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    // hash, file, offset and length
+    private static final int RECORD_LENGTH = HASH_LENGTH + 3 * 4;
+
+    private final Map<ByteBuffer, BlockLocation> locations = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a block, replacing an earlier location of the same block. Safe to call from several threads.
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @param location a {@link BlockLocation} object
+     */
+    public void put(byte[] hash, BlockLocation location) {
+        if (hash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Block hash must be 32 bytes");
+        }
+        locations.put(ByteBuffer.wrap(hash.clone()), location);
+    }
+
+    /**
+     * Returns where a block is stored
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @return a {@link BlockLocation}, or null if the block is not in the index
+     */
+    public BlockLocation get(byte[] hash) {
+        return locations.get(ByteBuffer.wrap(hash));
+    }
+
+    public boolean contains(byte[] hash) {
+        return locations.containsKey(ByteBuffer.wrap(hash));
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * Calls the consumer with every block hash and its location, in no particular order
+     *
+     * @param consumer receives the block hash and the location
+     */
+    public void forEach(BiConsumer<byte[], BlockLocation> consumer) {
+        locations.forEach((hash, location) -> consumer.accept(hash.array().clone(), location));
+    }
+
+    /**
+     * Writes the index to a file: a header, one fixed size record per block and a CRC32 of everything before it.
+     * The file is written next to the target first and moved into place, so a crash never leaves a partial index.
+     *
+     * @param path the file
+     * @throws IllegalStateException if the file cannot be written
+     */
+    public void save(Path path) {
+        var temp = path.resolveSibling(path.getFileName() + ".tmp");
+        var crc = new CRC32();
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            var header = ByteBuffer.allocate(MAGIC.length + 4 + 4).put(MAGIC).putInt(VERSION).putInt(locations.size());
+            write(out, crc, header.array());
+            var record = ByteBuffer.allocate(RECORD_LENGTH);
+            for (var entry : locations.entrySet()) {
+                var location = entry.getValue();
+                record.clear();
+                record.put(entry.getKey().array()).putInt(location.file()).putInt(location.offset())
+                        .putInt(location.length());
+                write(out, crc, record.array());
+            }
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}
+     *
+     * @param path the file
+     * @return a {@link BlockIndex} object
+     * @throws IllegalStateException if the file cannot be read, is not an index or is corrupt
+     */
+    public static BlockIndex load(Path path) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        var buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < MAGIC.length + 4 + 4 + 4
+                || !ByteBuffer.wrap(MAGIC).equals(buffer.slice(0, MAGIC.length))) {
+            throw new IllegalStateException("Not a block index: " + path);
+        }
+        var version = buffer.getInt(MAGIC.length);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported block index version: " + version);
+        }
+        var count = buffer.getInt(MAGIC.length + 4);
+        var end = MAGIC.length + 4 + 4 + (long) count * RECORD_LENGTH;
+        if (count < 0 || end + 4 != bytes.length) {
+            throw new IllegalStateException("Block index has the wrong size: " + path);
+        }
+        var crc = new CRC32();
+        crc.update(bytes, 0, (int) end);
+        if ((int) crc.getValue() != buffer.getInt((int) end)) {
+            throw new IllegalStateException("Block index is corrupt: " + path);
+        }
+        var index = new BlockIndex();
+        buffer.position(MAGIC.length + 4 + 4);
+        for (int i = 0; i < count; i++) {
+            var hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            index.locations.put(ByteBuffer.wrap(hash), new BlockLocation(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        return index;
+    }
+
+    private static void write(DataOutputStream out, CRC32 crc, byte[] bytes) throws IOException {
+        out.write(bytes);
+        crc.update(bytes);
+    }
+}
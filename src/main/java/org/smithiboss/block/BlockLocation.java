@@ -0,0 +1,10 @@
+package org.smithiboss.block;
+
+/**
+ * Where a serialized block is stored
+ *
+ * @param file the number of the file, {@code 12} for {@code blk00012.dat}
+ * @param offset the offset of the block in the file, after its framing
+ * @param length the length of the block
+ */
+public record BlockLocation(int file, int offset, int length) {}
@@ -0,0 +1,470 @@
+package org.smithiboss.block;
+
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public class BlockStore implements Closeable {
+
+    private static final Logger log = Logger.getLogger(BlockStore.class.getSimpleName());
+
+    public static final int DEFAULT_SEGMENT_SIZE = 128 << 20;
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    private static final int HEADER_LENGTH = 80;
+    // block hash, height, segment, offset, length and CRC32 of the rest, little endian
+    private static final int RECORD_LENGTH = 32 + 4 * 4 + 4;
+    // a record of this segment forgets every height above its height, see truncate
+    private static final int TRUNCATE = -1;
+    private static final String INDEX = "index.dat";
+
+    private final Path dir;
+    private final boolean testnet;
+    private final int segmentSize;
+    private final FileChannel index;
+    private final List<FileChannel> segments = new ArrayList<>();
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final Map<ByteBuffer, Entry> byHash = new HashMap<>();
+    private final Map<Integer, ByteBuffer> byHeight = new HashMap<>();
+    private final Map<ByteBuffer, RawBlock> cache;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long indexEnd = 0;
+    private int segmentEnd = 0;
+    private int tipHeight = -1;
+
+    private record Entry(int height, BlockLocation location) {}
+
+    /**
+     * Opens a store of raw blocks with the default segment and cache size
+     *
+     * @param dir the directory, it is created if it does not exist
+     * @param testnet whether the blocks are testnet blocks
+     * @return a {@link BlockStore} object
+     * @see #open(Path, boolean, int, int)
+     */
+    public static BlockStore open(Path dir, boolean testnet) {
+        return open(dir, testnet, DEFAULT_SEGMENT_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens a store of raw blocks. Blocks are appended to segment files ({@code seg00000.dat}, ...) of at most
+     * {@code segmentSize} bytes, and every block gets a record in {@code index.dat} with its hash, its height and
+     * where it is stored. The index is read into memory once; a record cut off or corrupted by a crash, or one that
+     * points past the end of its segment, is dropped together with everything after it, and so are segment bytes
+     * that no record points to.
+     * <p>
+     * Blocks are read as views of memory mappings of the segments without copying. Reads are thread-safe and can
+     * run in parallel, writes are serialized.
+     *
+     * @param dir the directory, it is created if it does not exist
+     * @param testnet whether the blocks are testnet blocks
+     * @param segmentSize the size after which a new segment is started
+     * @param cacheSize the number of parsed blocks to keep, the least recently used ones are evicted
+     * @return a {@link BlockStore} object
+     */
+    public static BlockStore open(Path dir, boolean testnet, int segmentSize, int cacheSize) {
+        if (segmentSize <= HEADER_LENGTH) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+        }
+        try {
+            Files.createDirectories(dir);
+            var index = FileChannel.open(dir.resolve(INDEX), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            var store = new BlockStore(dir, testnet, segmentSize, cacheSize, index);
+            store.load();
+            return store;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private BlockStore(Path dir, boolean testnet, int segmentSize, int cacheSize, FileChannel index) {
+        this.dir = dir;
+        this.testnet = testnet;
+        this.segmentSize = segmentSize;
+        this.index = index;
+        // an access ordered map drops the least recently used entry
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, RawBlock> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    private void load() throws IOException {
+        var size = index.size();
+        var bytes = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining()) {
+            if (index.read(bytes, bytes.position()) < 0) throw new IOException("Unexpected end of index");
+        }
+        var position = 0;
+        // the end of the data of every segment, as far as the index knows
+        var ends = new ArrayList<Integer>();
+        while (position + RECORD_LENGTH <= size) {
+            if (crc(bytes.array(), position) != bytes.getInt(position + RECORD_LENGTH - 4)) break;
+            var hash = new byte[32];
+            bytes.get(position, hash);
+            var height = bytes.getInt(position + 32);
+            var segment = bytes.getInt(position + 36);
+            var offset = bytes.getInt(position + 40);
+            var length = bytes.getInt(position + 44);
+            if (segment == TRUNCATE) {
+                forgetAbove(height);
+            } else {
+                // segments are numbered in the order they are started
+                if (segment < 0 || segment > ends.size()) break;
+                if (segment == ends.size()) {
+                    segments.add(openSegment(segment));
+                    mappings.add(null);
+                    ends.add(0);
+                }
+                // the record was written but its block did not reach the disk before a crash
+                if (offset < 0 || length < 0 || (long) offset + length > segments.get(segment).size()) break;
+                ends.set(segment, Math.max(ends.get(segment), offset + length));
+                index(hash, height, new BlockLocation(segment, offset, length));
+            }
+            position += RECORD_LENGTH;
+        }
+        if (position < size) {
+            log.warning(String.format("Dropping %d bytes of incomplete records at the end of the index", size - position));
+            index.truncate(position);
+        }
+        indexEnd = position;
+        if (segments.isEmpty()) {
+            segments.add(openSegment(0));
+            mappings.add(null);
+            ends.add(0);
+        }
+        var last = segments.size() - 1;
+        segmentEnd = ends.get(last);
+        if (segments.get(last).size() > segmentEnd) {
+            log.warning(String.format("Dropping %d bytes of unindexed blocks at the end of %s",
+                    segments.get(last).size() - segmentEnd, segmentPath(last).getFileName()));
+            segments.get(last).truncate(segmentEnd);
+        }
+    }
+
+    /**
+     * Appends a raw block and makes it the block at its height, replacing a block of another branch there. A block
+     * that is stored already is not written again, only its height is updated.
+     *
+     * @param raw the serialized block
+     * @param height the height of the block
+     * @return where the block is stored
+     * @throws IllegalArgumentException if the height is negative
+     * @throws IllegalStateException if the block is not a complete block
+     */
+    public BlockLocation put(byte[] raw, int height) {
+        if (height < 0) {
+            throw new IllegalArgumentException("Negative height: " + height);
+        }
+        // fails on anything that is not a complete block before it is written
+        RawBlock.parse(raw, testnet);
+        var hash = hash(raw);
+        lock.writeLock().lock();
+        try {
+            var entry = byHash.get(ByteBuffer.wrap(hash));
+            if (entry != null && entry.height() == height && ByteBuffer.wrap(hash).equals(byHeight.get(height))) {
+                return entry.location();
+            }
+            var location = entry != null ? entry.location() : append(raw);
+            writeRecord(hash, height, location.file(), location.offset(), location.length());
+            index(hash, height, location);
+            return location;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets the blocks above a height, for a reorg. The blocks stay readable by their hash.
+     *
+     * @param height the new tip height
+     */
+    public void truncate(int height) {
+        lock.writeLock().lock();
+        try {
+            if (height >= tipHeight) return;
+            writeRecord(new byte[32], height, TRUNCATE, 0, 0);
+            forgetAbove(height);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a block, parsed and cached
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @return a {@link RawBlock} object, or {@code null} if the block is not stored
+     */
+    public RawBlock get(byte[] hash) {
+        var key = ByteBuffer.wrap(hash);
+        synchronized (cache) {
+            var block = cache.get(key);
+            if (block != null) return block;
+        }
+        var raw = getRaw(hash);
+        if (raw == null) return null;
+        // parse without holding the lock
+        var block = RawBlock.wrap(raw, testnet);
+        synchronized (cache) {
+            cache.put(ByteBuffer.wrap(hash.clone()), block);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the block at a height, parsed and cached
+     *
+     * @param height the height of the block
+     * @return a {@link RawBlock} object, or {@code null} if there is no block at the height
+     */
+    public RawBlock get(int height) {
+        var hash = getHash(height);
+        return hash == null ? null : get(hash);
+    }
+
+    /**
+     * Returns a serialized block as a view of the mapping of its segment, without copying
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @return a read only {@link ByteBuffer}, or {@code null} if the block is not stored
+     */
+    public ByteBuffer getRaw(byte[] hash) {
+        lock.readLock().lock();
+        try {
+            var entry = byHash.get(ByteBuffer.wrap(hash));
+            if (entry == null) return null;
+            var location = entry.location();
+            return mapping(location.file(), location.offset() + location.length())
+                    .slice(location.offset(), location.length()).asReadOnlyBuffer();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the hash of the block at a height
+     *
+     * @param height the height of the block
+     * @return the block hash, or {@code null} if there is no block at the height
+     */
+    public byte[] getHash(int height) {
+        lock.readLock().lock();
+        try {
+            var hash = byHeight.get(height);
+            return hash == null ? null : hash.array().clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the height of a block
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @return the height, or -1 if the block is not stored or not on the current chain
+     */
+    public int getHeight(byte[] hash) {
+        lock.readLock().lock();
+        try {
+            var entry = byHash.get(ByteBuffer.wrap(hash));
+            return entry == null || !ByteBuffer.wrap(hash).equals(byHeight.get(entry.height())) ? -1 : entry.height();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns where a block is stored
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @return a {@link BlockLocation}, or {@code null} if the block is not stored
+     */
+    public BlockLocation getLocation(byte[] hash) {
+        lock.readLock().lock();
+        try {
+            var entry = byHash.get(ByteBuffer.wrap(hash));
+            return entry == null ? null : entry.location();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(byte[] hash) {
+        return getLocation(hash) != null;
+    }
+
+    /**
+     * Returns the highest height with a block
+     *
+     * @return a {@code int}, -1 for an empty store
+     */
+    public int getTipHeight() {
+        lock.readLock().lock();
+        try {
+            return tipHeight;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of stored blocks, including blocks that are no longer on the current chain
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byHash.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces all appended blocks to the disk, the segments before the index, so the index never points at blocks
+     * that are not there after a crash
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            segments.getLast().force(false);
+            index.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (FileChannel segment : segments) {
+                segment.close();
+            }
+            index.close();
+            synchronized (cache) {
+                cache.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private BlockLocation append(byte[] raw) throws IOException {
+        // a block larger than a segment gets a segment of its own
+        if (segmentEnd > 0 && (long) segmentEnd + raw.length > segmentSize) {
+            segments.getLast().force(false);
+            segments.add(openSegment(segments.size()));
+            mappings.add(null);
+            segmentEnd = 0;
+        }
+        var segment = segments.size() - 1;
+        var buffer = ByteBuffer.wrap(raw);
+        var position = segmentEnd;
+        while (buffer.hasRemaining()) {
+            position += segments.get(segment).write(buffer, position);
+        }
+        var location = new BlockLocation(segment, segmentEnd, raw.length);
+        segmentEnd = position;
+        return location;
+    }
+
+    private void writeRecord(byte[] hash, int height, int segment, int offset, int length) throws IOException {
+        var record = ByteBuffer.allocate(RECORD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(hash).putInt(height).putInt(segment).putInt(offset).putInt(length);
+        record.putInt(crc(record.array(), 0));
+        record.flip();
+        var position = indexEnd;
+        while (record.hasRemaining()) {
+            position += index.write(record, position);
+        }
+        indexEnd = position;
+    }
+
+    private void index(byte[] hash, int height, BlockLocation location) {
+        var key = ByteBuffer.wrap(hash);
+        var previous = byHash.put(key, new Entry(height, location));
+        if (previous != null && key.equals(byHeight.get(previous.height()))) {
+            byHeight.remove(previous.height());
+        }
+        // a block replaced at the height keeps its location but is no longer on the chain
+        byHeight.put(height, key);
+        tipHeight = Math.max(tipHeight, height);
+    }
+
+    private void forgetAbove(int height) {
+        byHeight.keySet().removeIf(h -> h > height);
+        tipHeight = byHeight.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+    }
+
+    // maps the segment again once it has grown past the end of its mapping
+    private ByteBuffer mapping(int segment, int end) {
+        synchronized (mappings) {
+            var mapping = mappings.get(segment);
+            if (mapping == null || mapping.capacity() < end) {
+                try {
+                    var channel = segments.get(segment);
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                mappings.set(segment, mapping);
+            }
+            return mapping;
+        }
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("seg%05d.dat", segment));
+    }
+
+    private static byte[] hash(byte[] raw) {
+        var header = new byte[HEADER_LENGTH];
+        System.arraycopy(raw, 0, header, 0, HEADER_LENGTH);
+        return Bytes.reverseOrder(Hash.hash256(header));
+    }
+
+    private static int crc(byte[] bytes, int offset) {
+        var crc = new CRC32();
+        crc.update(bytes, offset, RECORD_LENGTH - 4);
+        return (int) crc.getValue();
+    }
+}
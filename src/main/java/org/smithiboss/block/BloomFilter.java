@@ -2,7 +2,6 @@ package org.smithiboss.block;
 
 import org.smithiboss.ecc.Int;
 import org.smithiboss.network.GenericMessage;
-import org.smithiboss.utils.Bytes;
 import org.smithiboss.utils.Helper;
 import org.smithiboss.utils.Murmur3;
 
@@ -12,14 +11,25 @@ import java.util.Objects;
 public class BloomFilter {
 
     public static final int BIP37_CONSTANT =0xfba4c795;
+    public static final int MAX_FILTER_SIZE = 36000;
+    public static final int MAX_FUNCTION_COUNT = 50;
+    public static final int BLOOM_UPDATE_NONE = 0;
+    public static final int BLOOM_UPDATE_ALL = 1;
+    public static final int BLOOM_UPDATE_P2PUBKEY_ONLY = 2;
+
+    private static final double LN2 = Math.log(2);
 
     private final int size;
-    private final byte[] bitField;
+    private final long[] bitField;
+    private final long bitCount;
     private final int functionCount;
     private final int tweak;
+    private long setBits = 0;
 
     /**
      * Constructs a new BloomFilter object. The filter is initialized with the given size, function count and tweak.
+     * The bits are packed 64 to a {@code long}, with bit {@code i} of the filter in bit {@code i % 64} of word
+     * {@code i / 64}, which is the BIP37 wire layout once the words are written little endian.
      *
      * @param size a {@code int} object
      * @param functionCount a {@code int} object
@@ -27,11 +37,52 @@ public class BloomFilter {
      */
     public BloomFilter(int size, int functionCount, int tweak) {
         this.size = size;
-        this.bitField = Bytes.initFill(this.size * 8, (byte) 0);
+        this.bitField = new long[(size + 7) / 8];
+        this.bitCount = size * 8L;
         this.functionCount = functionCount;
         this.tweak = tweak;
     }
 
+    /**
+     * Creates a BloomFilter from the filter bytes of a filterload message
+     *
+     * @param filterBytes a {@code byte} array in BIP37 wire layout
+     * @param functionCount a {@code int} object
+     * @param tweak a {@code int} object
+     * @return a {@link BloomFilter} object
+     */
+    public static BloomFilter fromBytes(byte[] filterBytes, int functionCount, int tweak) {
+        var filter = new BloomFilter(filterBytes.length, functionCount, tweak);
+        for (int i = 0; i < filterBytes.length; i++) {
+            filter.bitField[i >>> 3] |= (filterBytes[i] & 0xffL) << ((i & 7) << 3);
+            filter.setBits += Integer.bitCount(filterBytes[i] & 0xff);
+        }
+        return filter;
+    }
+
+    /**
+     * Creates a BloomFilter sized for the expected number of elements and the target false positive rate,
+     * using the optimal size {@code -n * ln(p) / ln(2)^2} bits and {@code size / n * ln(2)} hash functions,
+     * capped at the BIP37 limits of {@value #MAX_FILTER_SIZE} bytes and {@value #MAX_FUNCTION_COUNT} functions.
+     *
+     * @param elementCount the expected number of elements
+     * @param falsePositiveRate the target false positive rate, between 0 and 1
+     * @param tweak a {@code int} object
+     * @return a {@link BloomFilter} object
+     */
+    public static BloomFilter create(int elementCount, double falsePositiveRate, int tweak) {
+        if (elementCount < 1) {
+            throw new IllegalArgumentException("Element count must be positive: " + elementCount);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        var bits = -elementCount * Math.log(falsePositiveRate) / (LN2 * LN2);
+        var size = (int) Math.max(1, Math.min(bits, MAX_FILTER_SIZE * 8.0) / 8);
+        var functionCount = (int) Math.max(1, Math.min(size * 8.0 / elementCount * LN2, MAX_FUNCTION_COUNT));
+        return new BloomFilter(size, functionCount, tweak);
+    }
+
     /**
      * Adds the specified item to the Bloom filter. The item is hashed multiple times
      * using the Murmur3 hash function, and the resulting hash values
@@ -40,17 +91,123 @@ public class BloomFilter {
      * @param item the byte array representing the item to be added to the filter
      */
     public void add(byte[] item) {
+        add(item, 0, item.length);
+    }
+
+    /**
+     * Adds a range of the given array to the Bloom filter without copying it.
+     *
+     * @param data the byte array containing the item
+     * @param offset index of the first byte of the item
+     * @param length length of the item
+     */
+    public void add(byte[] data, int offset, int length) {
+        for (int i = 0; i < functionCount; i++) {
+            var bit = bitIndex(data, offset, length, i);
+            var word = (int) (bit >>> 6);
+            var mask = 1L << bit;
+            // set the bit field at bit to be 1 and keep count of the set bits
+            if ((bitField[word] & mask) == 0) {
+                bitField[word] |= mask;
+                setBits++;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the item may have been added to the filter. False positives are possible,
+     * false negatives are not.
+     *
+     * @param item the byte array representing the item
+     * @return {@code true} if every bit of the item is set
+     */
+    public boolean contains(byte[] item) {
+        return contains(item, 0, item.length);
+    }
+
+    /**
+     * Returns whether the item in the given range of the array may have been added to the filter.
+     *
+     * @param data the byte array containing the item
+     * @param offset index of the first byte of the item
+     * @param length length of the item
+     * @return {@code true} if every bit of the item is set
+     */
+    public boolean contains(byte[] data, int offset, int length) {
+        if (bitCount == 0) return false;
         for (int i = 0; i < functionCount; i++) {
-            // BIP0037 seed is i*BIP37_CONSTANT + tweak
-            var seed = i * BIP37_CONSTANT + tweak;
-            // get the murmur3 hash given that seed
-            var hInt = Murmur3.murmur3(item, seed);
-            var h = hInt & 0xffffffffL;
-            // set the bit at the hash mod the bitfield size
-            var bit = h % (size * 8L);
-            // set the bit field at bit to be 1
-            this.bitField[(int) bit] = 1;
+            var bit = bitIndex(data, offset, length, i);
+            if ((bitField[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Returns the share of bits that are set
+     *
+     * @return a {@code double} between 0 and 1
+     */
+    public double fillRatio() {
+        return bitCount == 0 ? 0 : (double) setBits / bitCount;
+    }
+
+    /**
+     * Estimates the current false positive rate, the chance that all bits of an item that was never
+     * added happen to be set, which is the fill ratio to the power of the number of hash functions
+     *
+     * @return a {@code double} between 0 and 1
+     */
+    public double falsePositiveRate() {
+        return Math.pow(fillRatio(), functionCount);
+    }
+
+    /**
+     * Estimates how many distinct elements were added from the number of set bits
+     *
+     * @return a {@code long}
+     */
+    public long estimatedElementCount() {
+        if (setBits == bitCount) return Long.MAX_VALUE;
+        return Math.round(-bitCount / (double) functionCount * Math.log(1 - fillRatio()));
+    }
+
+    /**
+     * Returns whether the filter got so full that its false positive rate exceeds the given rate,
+     * meaning it should be replaced by a larger one
+     *
+     * @param falsePositiveRate the highest acceptable false positive rate
+     * @return a {@code boolean}
+     */
+    public boolean isSaturated(double falsePositiveRate) {
+        return falsePositiveRate() > falsePositiveRate;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getFunctionCount() {
+        return functionCount;
+    }
+
+    public int getTweak() {
+        return tweak;
+    }
+
+    /**
+     * Computes the bit of the filter selected by the given hash function
+     *
+     * @return the index of the bit
+     */
+    private long bitIndex(byte[] data, int offset, int length, int function) {
+        // BIP0037 seed is i*BIP37_CONSTANT + tweak
+        var seed = function * BIP37_CONSTANT + tweak;
+        // get the murmur3 hash given that seed
+        var h = Murmur3.murmur3(data, offset, length, seed) & 0xffffffffL;
+        // the bit is the hash mod the bitfield size
+        return h % bitCount;
     }
 
     /**
@@ -60,7 +217,11 @@ public class BloomFilter {
      * @return a byte array that represents the current state of the Bloom filter's bit field
      */
     public byte[] filterBytes() {
-        return Bytes.bitFieldToBytes(this.bitField);
+        var result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (bitField[i >>> 3] >>> ((i & 7) << 3));
+        }
+        return result;
     }
 
     /**
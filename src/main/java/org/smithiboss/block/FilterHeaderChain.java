@@ -0,0 +1,85 @@
+package org.smithiboss.block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FilterHeaderChain {
+
+    private final int startHeight;
+    private final byte[] startHeader;
+    private final List<byte[]> headers = new ArrayList<>();
+
+    /**
+     * Constructs a filter header chain starting at the genesis block, whose previous filter header is 32 zero bytes
+     */
+    public FilterHeaderChain() {
+        this(0, new byte[32]);
+    }
+
+    /**
+     * Constructs a filter header chain continuing from a trusted checkpoint
+     *
+     * @param startHeight the height of the first block added to the chain
+     * @param prevHeader the filter header of the block before it in internal byte order
+     */
+    public FilterHeaderChain(int startHeight, byte[] prevHeader) {
+        this.startHeight = startHeight;
+        this.startHeader = prevHeader;
+    }
+
+    /**
+     * Appends the filter of the next block and returns its filter header
+     *
+     * @param filter a {@link BlockFilter} object
+     * @return a {@code byte} array in internal byte order
+     */
+    public byte[] add(BlockFilter filter) {
+        var header = filter.header(getTip());
+        headers.add(header);
+        return header;
+    }
+
+    /**
+     * Appends the filter of the next block and checks it against the filter header a peer sent
+     *
+     * @param filter a {@link BlockFilter} object
+     * @param expectedHeader a {@code byte} array in internal byte order
+     * @return {@code true} if the headers match, in which case the filter was added
+     */
+    public boolean addAndVerify(BlockFilter filter, byte[] expectedHeader) {
+        var header = filter.header(getTip());
+        if (!Arrays.equals(header, expectedHeader)) return false;
+        headers.add(header);
+        return true;
+    }
+
+    /**
+     * Returns the filter header at the given height
+     *
+     * @param height a {@code int}
+     * @return a {@code byte} array in internal byte order
+     */
+    public byte[] getHeader(int height) {
+        if (height == startHeight - 1) return startHeader;
+        return headers.get(height - startHeight);
+    }
+
+    /**
+     * Returns the filter header of the last block, or the starting header if no filter was added yet
+     *
+     * @return a {@code byte} array in internal byte order
+     */
+    public byte[] getTip() {
+        return headers.isEmpty() ? startHeader : headers.getLast();
+    }
+
+    /**
+     * Returns the height of the last block
+     *
+     * @return a {@code int}
+     */
+    public int getHeight() {
+        return startHeight + headers.size() - 1;
+    }
+}
@@ -0,0 +1,26 @@
+package org.smithiboss.block;
+
+import org.smithiboss.network.GenericMessage;
+import org.smithiboss.network.Message;
+import org.smithiboss.tx.Tx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public record FilteredBlock(MerkleBlock merkleBlock, List<Tx> txs) {
+
+    /**
+     * Returns the messages a peer expects for a filtered block: the merkleblock followed by
+     * a tx message for every matched transaction
+     *
+     * @return a {@link List} of {@link Message} objects
+     */
+    public List<Message> messages() {
+        var result = new ArrayList<Message>(txs.size() + 1);
+        result.add(new GenericMessage("merkleblock", merkleBlock.serialize()));
+        for (Tx tx : txs) {
+            result.add(new GenericMessage("tx", tx.serialize()));
+        }
+        return result;
+    }
+}
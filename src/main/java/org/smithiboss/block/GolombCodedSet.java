@@ -0,0 +1,226 @@
+package org.smithiboss.block;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Helper;
+import org.smithiboss.utils.SipHash;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+public class GolombCodedSet {
+
+    private final int p;
+    private final long m;
+    private final long k0;
+    private final long k1;
+    private final int n;
+    private final byte[] data;
+
+    /**
+     * Constructs a Golomb-coded set (BIP158) from its encoded bits
+     *
+     * @param p the Golomb-Rice coding parameter, the number of remainder bits
+     * @param m the inverse false positive rate
+     * @param k0 the first half of the SipHash key
+     * @param k1 the second half of the SipHash key
+     * @param n the number of elements
+     * @param data the Golomb-Rice coded deltas
+     */
+    public GolombCodedSet(int p, long m, long k0, long k1, int n, byte[] data) {
+        this.p = p;
+        this.m = m;
+        this.k0 = k0;
+        this.k1 = k1;
+        this.n = n;
+        this.data = data;
+    }
+
+    /**
+     * Builds a Golomb-coded set. Every distinct element is hashed with SipHash and mapped uniformly to
+     * {@code [0, n * m)}, the sorted values are delta encoded and each delta is written with Golomb-Rice coding:
+     * the quotient {@code delta >> p} in unary followed by the lowest {@code p} bits.
+     *
+     * @param elements a {@link Collection} of {@code byte} arrays
+     * @param p the Golomb-Rice coding parameter
+     * @param m the inverse false positive rate
+     * @param k0 the first half of the SipHash key
+     * @param k1 the second half of the SipHash key
+     * @return a {@link GolombCodedSet} object
+     */
+    public static GolombCodedSet build(Collection<byte[]> elements, int p, long m, long k0, long k1) {
+        // remove duplicate elements, byte buffers compare by content
+        var distinct = new LinkedHashSet<ByteBuffer>();
+        for (byte[] element : elements) {
+            distinct.add(ByteBuffer.wrap(element));
+        }
+        var n = distinct.size();
+        var range = n * m;
+        var values = new long[n];
+        var i = 0;
+        for (ByteBuffer element : distinct) {
+            values[i++] = hashToRange(element.array(), range, k0, k1);
+        }
+        Arrays.sort(values);
+
+        var writer = new BitWriter();
+        var last = 0L;
+        for (long value : values) {
+            var delta = value - last;
+            // quotient in unary: q ones followed by a zero
+            for (long q = delta >>> p; q > 0; q--) {
+                writer.write(1, 1);
+            }
+            writer.write(0, 1);
+            // remainder in p bits
+            writer.write(delta, p);
+            last = value;
+        }
+        return new GolombCodedSet(p, m, k0, k1, n, writer.toByteArray());
+    }
+
+    /**
+     * Parses a serialized Golomb-coded set, the number of elements as varint followed by the coded deltas
+     *
+     * @param serialized a {@code byte} array
+     * @param p the Golomb-Rice coding parameter
+     * @param m the inverse false positive rate
+     * @param k0 the first half of the SipHash key
+     * @param k1 the second half of the SipHash key
+     * @return a {@link GolombCodedSet} object
+     */
+    public static GolombCodedSet parse(byte[] serialized, int p, long m, long k0, long k1) {
+        var s = new ByteArrayInputStream(serialized);
+        var n = Helper.readVarint(s).intValue();
+        return new GolombCodedSet(p, m, k0, k1, n, Bytes.read(s, s.available()));
+    }
+
+    /**
+     * Serializes the set, the number of elements as varint followed by the coded deltas
+     *
+     * @return a {@code byte} array
+     */
+    public byte[] serialize() {
+        return Bytes.concat(Helper.encodeVarInt(Int.parse(n)), data);
+    }
+
+    /**
+     * Returns whether the element may be in the set
+     *
+     * @param element a {@code byte} array
+     * @return {@code true} if the element matches, false positives occur with a rate of {@code 1 / m}
+     */
+    public boolean match(byte[] element) {
+        return matchAny(List.of(element));
+    }
+
+    /**
+     * Returns whether any of the elements may be in the set. The elements are hashed and sorted, then the set is
+     * decoded as a stream and merged with them in one pass, stopping at the first match.
+     *
+     * @param elements a {@link Collection} of {@code byte} arrays
+     * @return {@code true} if any element matches
+     */
+    public boolean matchAny(Collection<byte[]> elements) {
+        if (n == 0 || elements.isEmpty()) return false;
+        var range = n * m;
+        var queries = new long[elements.size()];
+        var i = 0;
+        for (byte[] element : elements) {
+            queries[i++] = hashToRange(element, range, k0, k1);
+        }
+        Arrays.sort(queries);
+
+        var reader = new BitReader(data);
+        var value = 0L;
+        var q = 0;
+        for (int j = 0; j < n; j++) {
+            // decode the next value: unary quotient followed by the p bit remainder
+            var quotient = 0L;
+            while (reader.read(1) == 1) {
+                quotient++;
+            }
+            value += (quotient << p) | reader.read(p);
+            // skip all queries below the current value
+            while (queries[q] < value) {
+                if (++q == queries.length) return false;
+            }
+            if (queries[q] == value) return true;
+        }
+        return false;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Maps the SipHash of the element uniformly to {@code [0, range)} by taking the upper 64 bits of the
+     * 128-bit product of the hash and the range
+     */
+    private static long hashToRange(byte[] element, long range, long k0, long k1) {
+        return Math.unsignedMultiplyHigh(SipHash.sipHash(k0, k1, element), range);
+    }
+
+    /**
+     * Writes bits most significant bit first
+     */
+    private static class BitWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current = 0;
+        private int count = 0;
+
+        private void write(long value, int bits) {
+            for (int b = bits - 1; b >= 0; b--) {
+                current = (current << 1) | (int) ((value >>> b) & 1);
+                if (++count == 8) {
+                    out.write(current);
+                    current = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        private byte[] toByteArray() {
+            // pad the last byte with zeros
+            if (count > 0) {
+                out.write(current << (8 - count));
+                current = 0;
+                count = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Reads bits most significant bit first
+     */
+    private static class BitReader {
+
+        private final byte[] data;
+        private long position = 0;
+
+        private BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        private long read(int bits) {
+            var result = 0L;
+            for (int b = 0; b < bits; b++) {
+                var index = (int) (position >>> 3);
+                if (index >= data.length) {
+                    throw new IllegalStateException("Read past the end of the filter");
+                }
+                result = (result << 1) | ((data[index] >> (7 - (position & 7))) & 1);
+                position++;
+            }
+            return result;
+        }
+    }
+}
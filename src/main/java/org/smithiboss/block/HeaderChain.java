@@ -0,0 +1,442 @@
+package org.smithiboss.block;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class HeaderChain implements Closeable {
+
+    public static final int HEADER_LENGTH = 80;
+
+    // the file grows by this many headers at a time
+    private static final int GROWTH = 1 << 16;
+    private static final int PREV_BLOCK_OFFSET = 4;
+    private static final int BITS_OFFSET = 72;
+    private static final BigInteger TWO_256 = BigInteger.ONE.shiftLeft(256);
+
+    private final FileChannel channel;
+    private MappedByteBuffer data;
+    private int count = 0;
+    // hash of the last header in internal byte order, every other hash is the prevBlock of the header after it
+    private byte[] tipHash = null;
+    // cumulative chainwork per height as unsigned 128 bit numbers
+    private long[] workHigh = new long[GROWTH];
+    private long[] workLow = new long[GROWTH];
+    // the work of a block only depends on its bits, which change every 2016 blocks
+    private final Map<Integer, long[]> workByBits = new HashMap<>();
+    // open addressing from the first 8 bytes of a hash in internal byte order to its height
+    private long[] tableKeys = new long[1 << 10];
+    private int[] tableHeights = new int[1 << 10];
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens a chain of block headers stored back to back as 80 byte records, so the height of a header is its
+     * offset divided by 80. The file is memory mapped and grows in steps; unused space at its end is zero and
+     * cut off when the chain is closed.
+     * <p>
+     * Opening reads only the prevBlock and bits field of every header: the hash of each header is the prevBlock of
+     * the header after it, so only the last header is hashed, and the work of a block is computed once per
+     * distinct bits. The headers are trusted to have been validated before they were appended.
+     * <p>
+     * Reads are thread-safe and can run in parallel, writes are serialized.
+     *
+     * @param path the file, it is created if it does not exist
+     * @return a {@link HeaderChain} object
+     * @throws IllegalStateException if the file cannot be mapped
+     */
+    public static HeaderChain open(Path path) {
+        try {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            var chain = new HeaderChain(channel);
+            chain.load();
+            return chain;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HeaderChain(FileChannel channel) {
+        this.channel = channel;
+        Arrays.fill(tableHeights, -1);
+    }
+
+    private void load() throws IOException {
+        var records = (int) Math.min(channel.size() / HEADER_LENGTH, Integer.MAX_VALUE / HEADER_LENGTH);
+        map(Math.max(records, GROWTH));
+        // a header with zero bits is never valid, it is space the file grew by
+        while (count < records && data.getInt(count * HEADER_LENGTH + BITS_OFFSET) != 0) {
+            index(count);
+            count++;
+        }
+        if (count > 0) {
+            var tip = new byte[HEADER_LENGTH];
+            data.get((count - 1) * HEADER_LENGTH, tip);
+            tipHash = Hash.hash256(tip);
+            insert(key(tipHash), count - 1);
+        }
+    }
+
+    /**
+     * Appends a header on top of the chain
+     *
+     * @param header a {@link Block} object
+     * @return the height of the header
+     * @throws IllegalArgumentException if the header does not extend the tip
+     */
+    public int append(Block header) {
+        return append(header.serialize());
+    }
+
+    /**
+     * Appends a serialized header on top of the chain
+     *
+     * @param header 80 bytes
+     * @return the height of the header
+     * @throws IllegalArgumentException if the header does not extend the tip or has zero bits
+     */
+    public int append(byte[] header) {
+        if (header.length != HEADER_LENGTH) {
+            throw new IllegalArgumentException("Header must be 80 bytes");
+        }
+        // zero bits mark the unused end of the file
+        if (Arrays.equals(header, BITS_OFFSET, BITS_OFFSET + 4, new byte[4], 0, 4)) {
+            throw new IllegalArgumentException("Header without bits");
+        }
+        lock.writeLock().lock();
+        try {
+            if (tipHash != null && !Arrays.equals(header, PREV_BLOCK_OFFSET, PREV_BLOCK_OFFSET + 32, tipHash, 0, 32)) {
+                throw new IllegalArgumentException("Header does not extend the tip");
+            }
+            if ((count + 1L) * HEADER_LENGTH > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Header chain full");
+            }
+            if (count == data.capacity() / HEADER_LENGTH) {
+                map(count + GROWTH);
+            }
+            data.put(count * HEADER_LENGTH, header);
+            // from now on the old tip is identified by the prevBlock of the new one
+            index(count);
+            tipHash = Hash.hash256(header);
+            insert(key(tipHash), count);
+            return count++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends headers, as a {@code headers} message brings them
+     *
+     * @param headers the headers in chain order
+     * @return the height of the last header
+     * @throws IllegalArgumentException if a header does not extend the one before it, the headers before it are
+     * appended
+     */
+    public int appendAll(Block[] headers) {
+        var height = getHeight();
+        for (Block header : headers) {
+            height = append(header);
+        }
+        return height;
+    }
+
+    /**
+     * Removes the headers above a height, for a reorg
+     *
+     * @param height the height of the new tip, -1 to remove all headers
+     */
+    public void truncate(int height) {
+        lock.writeLock().lock();
+        try {
+            if (height >= count - 1) return;
+            for (int h = count - 1; h > height; h--) {
+                delete(key(hashAt(h)), h);
+            }
+            var newTip = height < 0 ? null : hashAt(height);
+            data.put(Math.max(height + 1, 0) * HEADER_LENGTH, new byte[(count - height - 1) * HEADER_LENGTH]);
+            count = height + 1;
+            tipHash = newTip;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the height of the last header
+     *
+     * @return a {@code int}, -1 for an empty chain
+     */
+    public int getHeight() {
+        lock.readLock().lock();
+        try {
+            return count - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the height of a header
+     *
+     * @param hash the block hash as {@link Block#hash()} returns it
+     * @return the height, or -1 if the header is not in the chain
+     */
+    public int getHeight(byte[] hash) {
+        var internal = Bytes.reverseOrder(hash);
+        lock.readLock().lock();
+        try {
+            var key = key(internal);
+            var mask = tableKeys.length - 1;
+            for (int slot = (int) mix(key) & mask; tableHeights[slot] >= 0; slot = (slot + 1) & mask) {
+                if (tableKeys[slot] == key && Arrays.equals(hashAt(tableHeights[slot]), internal)) {
+                    return tableHeights[slot];
+                }
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(byte[] hash) {
+        return getHeight(hash) >= 0;
+    }
+
+    /**
+     * Returns a header
+     *
+     * @param height the height of the header
+     * @return a {@link Block} object
+     */
+    public Block getHeader(int height) {
+        return Block.parse(getRaw(height));
+    }
+
+    /**
+     * Returns a serialized header
+     *
+     * @param height the height of the header
+     * @return 80 bytes
+     */
+    public byte[] getRaw(int height) {
+        lock.readLock().lock();
+        try {
+            checkHeight(height);
+            var header = new byte[HEADER_LENGTH];
+            data.get(height * HEADER_LENGTH, header);
+            return header;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the hash of a header, without hashing it
+     *
+     * @param height the height of the header
+     * @return the block hash as {@link Block#hash()} returns it
+     */
+    public byte[] getHash(int height) {
+        lock.readLock().lock();
+        try {
+            checkHeight(height);
+            return Bytes.reverseOrder(hashAt(height));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the total work of the chain up to and including a header: the sum of 2^256 / (target + 1) over all
+     * headers, as Bitcoin Core computes it to pick the best chain
+     *
+     * @param height the height of the header
+     * @return a {@link Int} object
+     */
+    public Int getChainwork(int height) {
+        lock.readLock().lock();
+        try {
+            checkHeight(height);
+            return Int.parse(toBigInteger(workHigh[height], workLow[height]));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces all appended headers to the disk
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            data.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the headers to the disk and cuts off the unused space at the end of the file
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            data.force();
+            data = null;
+            channel.truncate((long) count * HEADER_LENGTH);
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // maps the file with room for this many headers, growing it with zeros
+    private void map(int records) {
+        try {
+            data = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * HEADER_LENGTH);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // adds the chainwork of a header and indexes the hash of the header before it, known from its prevBlock
+    private void index(int height) {
+        if (height == workLow.length) {
+            workHigh = Arrays.copyOf(workHigh, height * 2);
+            workLow = Arrays.copyOf(workLow, height * 2);
+        }
+        var work = workByBits.computeIfAbsent(data.getInt(height * HEADER_LENGTH + BITS_OFFSET), HeaderChain::work);
+        var high = height == 0 ? 0 : workHigh[height - 1];
+        var low = height == 0 ? 0 : workLow[height - 1];
+        var sum = low + work[1];
+        workHigh[height] = high + work[0] + (Long.compareUnsigned(sum, low) < 0 ? 1 : 0);
+        workLow[height] = sum;
+        if (height > 0) {
+            insert(data.getLong(height * HEADER_LENGTH + PREV_BLOCK_OFFSET), height - 1);
+        }
+    }
+
+    private static long[] work(int bits) {
+        var bitsBytes = new byte[]{(byte) bits, (byte) (bits >> 8), (byte) (bits >> 16), (byte) (bits >>> 24)};
+        var target = Bytes.bitsToTarget(bitsBytes).getBigInteger();
+        if (target.signum() <= 0) return new long[]{0, 0};
+        var work = TWO_256.divide(target.add(BigInteger.ONE));
+        return new long[]{work.shiftRight(64).longValue(), work.longValue()};
+    }
+
+    private static BigInteger toBigInteger(long high, long low) {
+        return new BigInteger(1, Bytes.concat(longBytes(high), longBytes(low)));
+    }
+
+    private static byte[] longBytes(long l) {
+        var bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) l;
+            l >>>= 8;
+        }
+        return bytes;
+    }
+
+    private byte[] hashAt(int height) {
+        return height == count - 1 && tipHash != null ? tipHash.clone()
+                : bytesAt((height + 1) * HEADER_LENGTH + PREV_BLOCK_OFFSET);
+    }
+
+    private byte[] bytesAt(int offset) {
+        var bytes = new byte[32];
+        data.get(offset, bytes);
+        return bytes;
+    }
+
+    private void checkHeight(int height) {
+        if (height < 0 || height >= count) {
+            throw new IllegalArgumentException("No header at height " + height);
+        }
+    }
+
+    private static long key(byte[] internalHash) {
+        long key = 0;
+        for (int i = 7; i >= 0; i--) {
+            key = key << 8 | (internalHash[i] & 0xff);
+        }
+        return key;
+    }
+
+    // hashes are random, but the table must not degrade on headers crafted to share a prefix
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        return key ^ key >>> 33;
+    }
+
+    private void insert(long key, int height) {
+        if (count * 2L >= tableKeys.length) {
+            resize();
+        }
+        var mask = tableKeys.length - 1;
+        var slot = (int) mix(key) & mask;
+        while (tableHeights[slot] >= 0) {
+            if (tableHeights[slot] == height) return;
+            slot = (slot + 1) & mask;
+        }
+        tableKeys[slot] = key;
+        tableHeights[slot] = height;
+    }
+
+    private void resize() {
+        var keys = tableKeys;
+        var heights = tableHeights;
+        tableKeys = new long[keys.length * 2];
+        tableHeights = new int[keys.length * 2];
+        Arrays.fill(tableHeights, -1);
+        var mask = tableKeys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (heights[i] < 0) continue;
+            var slot = (int) mix(keys[i]) & mask;
+            while (tableHeights[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = keys[i];
+            tableHeights[slot] = heights[i];
+        }
+    }
+
+    // removes by shifting the entries after it back, so no lookup stops early
+    private void delete(long key, int height) {
+        var mask = tableKeys.length - 1;
+        var slot = (int) mix(key) & mask;
+        while (tableHeights[slot] != height) {
+            if (tableHeights[slot] < 0) return;
+            slot = (slot + 1) & mask;
+        }
+        var next = (slot + 1) & mask;
+        while (tableHeights[next] >= 0) {
+            var home = (int) mix(tableKeys[next]) & mask;
+            // move the entry into the hole unless its home lies between the hole and the entry
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                tableKeys[slot] = tableKeys[next];
+                tableHeights[slot] = tableHeights[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        tableHeights[slot] = -1;
+    }
+}
@@ -0,0 +1,39 @@
+package org.smithiboss.block;
+
+/**
+ * Outcome of validating a batch of headers with a {@link HeaderValidator}
+ *
+ * @param count the number of headers in the batch
+ * @param firstInvalid the index of the first invalid header in the batch, -1 if all are valid
+ * @param failure why the first invalid header is invalid, {@code null} if all are valid
+ * @param nanos the time the whole validation took
+ */
+public record HeaderValidationResult(int count, int firstInvalid, Failure failure, long nanos) {
+
+    public enum Failure {
+        // the prevBlock is not the hash of the header before
+        BAD_PREV_BLOCK,
+        // the bits are not the ones the difficulty adjustment requires
+        BAD_DIFFICULTY,
+        // the hash is above the target of the bits
+        HIGH_HASH
+    }
+
+    /**
+     * Returns whether every header of the batch is valid
+     *
+     * @return a {@code boolean}
+     */
+    public boolean valid() {
+        return firstInvalid < 0;
+    }
+
+    /**
+     * Returns the number of headers before the first invalid one, which can be appended to the chain
+     *
+     * @return a {@code int}
+     */
+    public int validCount() {
+        return valid() ? count : firstInvalid;
+    }
+}
@@ -0,0 +1,272 @@
+package org.smithiboss.block;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.network.HeadersMessage;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.Helper;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class HeaderValidator {
+
+    private static final int RETARGET_INTERVAL = 2016;
+    // a testnet block more than 20 minutes after the one before may use the minimum difficulty
+    private static final int TESTNET_MIN_DIFFICULTY_SPACING = 20 * 60;
+    private static final int PREV_BLOCK_OFFSET = 4;
+    private static final int TIMESTAMP_OFFSET = 68;
+    private static final int BITS_OFFSET = 72;
+    // headers hashed by one task
+    private static final int CHUNK_SIZE = 128;
+    // the highest target, bits 1d00ffff, on mainnet and testnet
+    private static final byte[] POW_LIMIT_BITS = {(byte) 0xff, (byte) 0xff, 0x00, 0x1d};
+
+    // null validates on the calling thread
+    private final ExecutorService executor;
+    private final boolean testnet;
+    private final byte[] powLimitBits;
+    private final Int powLimit;
+    // the target of every bits seen, as 32 bytes big endian, empty for bits that encode no valid target
+    private final Map<Integer, byte[]> targets = new ConcurrentHashMap<>();
+
+    // another proof of work limit lets tests mine headers
+    HeaderValidator(ExecutorService executor, boolean testnet, byte[] powLimitBits) {
+        this.executor = executor;
+        this.testnet = testnet;
+        this.powLimitBits = powLimitBits;
+        this.powLimit = Bytes.bitsToTarget(powLimitBits);
+    }
+
+    /**
+     * Returns a validator that hashes the headers one after the other on the calling thread
+     *
+     * @param testnet whether to apply the minimum difficulty rule of testnet
+     * @return a {@link HeaderValidator} object
+     */
+    public static HeaderValidator sequential(boolean testnet) {
+        return new HeaderValidator(null, testnet, POW_LIMIT_BITS);
+    }
+
+    /**
+     * Returns a validator that hashes the headers in parallel on the common work-stealing pool
+     *
+     * @param testnet whether to apply the minimum difficulty rule of testnet
+     * @return a {@link HeaderValidator} object
+     */
+    public static HeaderValidator parallel(boolean testnet) {
+        return parallel(ForkJoinPool.commonPool(), testnet);
+    }
+
+    /**
+     * Returns a validator that hashes the headers in parallel on the given executor
+     *
+     * @param executor an {@link ExecutorService}, it is not shut down by the validator
+     * @param testnet whether to apply the minimum difficulty rule of testnet
+     * @return a {@link HeaderValidator} object
+     */
+    public static HeaderValidator parallel(ExecutorService executor, boolean testnet) {
+        return new HeaderValidator(executor, testnet, POW_LIMIT_BITS);
+    }
+
+    /**
+     * Validates the headers of a {@code headers} message as the continuation of a chain
+     *
+     * @param chain the {@link HeaderChain} the headers extend
+     * @param message a {@link HeadersMessage} object
+     * @return a {@link HeaderValidationResult} object
+     * @see #validate(HeaderChain, Block[])
+     */
+    public HeaderValidationResult validate(HeaderChain chain, HeadersMessage message) {
+        return validate(chain, message.getBlocks());
+    }
+
+    /**
+     * Validates a batch of headers as the continuation of a chain. Every header is serialized, hashed and checked
+     * against the target of its bits in a first pass that runs in parallel; the targets are decoded once per
+     * distinct bits. A second pass then checks in order that each header links to the one before and carries the
+     * bits of the difficulty adjustment: a retarget every 2016 blocks from the time the last 2016 blocks took,
+     * the bits of the block before otherwise.
+     *
+     * @param chain the {@link HeaderChain} the headers extend, it is not changed
+     * @param headers the headers in chain order, the first one extends the tip of the chain
+     * @return a {@link HeaderValidationResult} with the first invalid header
+     */
+    public HeaderValidationResult validate(HeaderChain chain, Block[] headers) {
+        var start = System.nanoTime();
+        var count = headers.length;
+        var raw = new byte[count][];
+        var hashes = new byte[count][];
+        var powValid = new boolean[count];
+        if (executor == null || count <= CHUNK_SIZE) {
+            hash(headers, 0, count, raw, hashes, powValid);
+        } else {
+            hashParallel(headers, raw, hashes, powValid);
+        }
+
+        var batch = new Batch(chain, raw);
+        for (int i = 0; i < count; i++) {
+            var height = batch.base + i;
+            var prevHash = i == 0 ? batch.tipHash : hashes[i - 1];
+            if (prevHash != null && !Arrays.equals(raw[i], PREV_BLOCK_OFFSET, PREV_BLOCK_OFFSET + 32, prevHash, 0, 32)) {
+                return result(count, i, HeaderValidationResult.Failure.BAD_PREV_BLOCK, start);
+            }
+            if (height > 0 && !Arrays.equals(bits(raw[i]), expectedBits(batch, height))) {
+                return result(count, i, HeaderValidationResult.Failure.BAD_DIFFICULTY, start);
+            }
+            if (!powValid[i]) {
+                return result(count, i, HeaderValidationResult.Failure.HIGH_HASH, start);
+            }
+        }
+        return result(count, -1, null, start);
+    }
+
+    private void hashParallel(Block[] headers, byte[][] raw, byte[][] hashes, boolean[] powValid) {
+        var futures = new ArrayList<Future<?>>();
+        for (int from = 0; from < headers.length; from += CHUNK_SIZE) {
+            var chunkStart = from;
+            var chunkEnd = Math.min(from + CHUNK_SIZE, headers.length);
+            futures.add(executor.submit(() -> hash(headers, chunkStart, chunkEnd, raw, hashes, powValid)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted while validating", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // the arrays are written by one task per index and read after all tasks completed
+    private void hash(Block[] headers, int from, int to, byte[][] raw, byte[][] hashes, boolean[] powValid) {
+        for (int i = from; i < to; i++) {
+            raw[i] = headers[i].serialize();
+            hashes[i] = Hash.hash256(raw[i]);
+            var target = target(Helper.littleEndianToInt(bits(raw[i])).intValue());
+            powValid[i] = target != null && belowOrAt(hashes[i], target);
+        }
+    }
+
+    private byte[] expectedBits(Batch batch, int height) {
+        var last = batch.header(height - 1);
+        if (height % RETARGET_INTERVAL == 0) {
+            var first = batch.header(height - RETARGET_INTERVAL);
+            var timespan = timestamp(last) - timestamp(first);
+            var bits = Bytes.calculateNewBits(bits(last), Int.parse(timespan));
+            return Bytes.bitsToTarget(bits).gt(powLimit) ? powLimitBits : bits;
+        }
+        if (testnet) {
+            if (timestamp(batch.header(height)) > timestamp(last) + TESTNET_MIN_DIFFICULTY_SPACING) {
+                return powLimitBits;
+            }
+            return lastNonMinimumBits(batch, height - 1);
+        }
+        return bits(last);
+    }
+
+    private byte[] target(int bits) {
+        var target = targets.computeIfAbsent(bits, this::decodeTarget);
+        return target.length == 0 ? null : target;
+    }
+
+    /**
+     * Walks back to the last block that did not use the minimum difficulty, or the last retarget. A walk that
+     * reaches the start of the previous walk ends where that one ended, so a run of minimum difficulty blocks is
+     * walked once.
+     */
+    private byte[] lastNonMinimumBits(Batch batch, int height) {
+        var h = height;
+        while (h % RETARGET_INTERVAL != 0 && Arrays.equals(bits(batch.header(h)), powLimitBits)) {
+            if (h == batch.walkedFrom) {
+                h = batch.walkedTo;
+                break;
+            }
+            h--;
+        }
+        batch.walkedFrom = height;
+        batch.walkedTo = h;
+        return bits(batch.header(h));
+    }
+
+    /**
+     * Decodes compact bits as Bitcoin Core does: bits with the sign bit set or above the proof of work limit encode
+     * no valid target
+     *
+     * @return the target as 32 bytes big endian, or an empty array
+     */
+    private byte[] decodeTarget(int bits) {
+        var exponent = bits >>> 24;
+        var mantissa = bits & 0x007fffff;
+        if ((bits & 0x00800000) != 0 || mantissa == 0) return new byte[0];
+        var target = exponent <= 3
+                ? BigInteger.valueOf(mantissa >>> (8 * (3 - exponent)))
+                : BigInteger.valueOf(mantissa).shiftLeft(8 * (exponent - 3));
+        if (target.signum() == 0 || target.compareTo(powLimit.getBigInteger()) > 0) return new byte[0];
+        var bytes = target.toByteArray();
+        var padded = new byte[32];
+        var length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, padded, 32 - length, length);
+        return padded;
+    }
+
+    // the hash is a little endian number, the target big endian
+    private static boolean belowOrAt(byte[] hash, byte[] target) {
+        for (int i = 0; i < 32; i++) {
+            var h = hash[31 - i] & 0xff;
+            var t = target[i] & 0xff;
+            if (h != t) return h < t;
+        }
+        return true;
+    }
+
+    private static byte[] bits(byte[] header) {
+        return Arrays.copyOfRange(header, BITS_OFFSET, BITS_OFFSET + 4);
+    }
+
+    private static long timestamp(byte[] header) {
+        return Helper.littleEndianToInt(Arrays.copyOfRange(header, TIMESTAMP_OFFSET, TIMESTAMP_OFFSET + 4)).longValue();
+    }
+
+    private static HeaderValidationResult result(int count, int firstInvalid, HeaderValidationResult.Failure failure,
+                                                 long start) {
+        return new HeaderValidationResult(count, firstInvalid, failure, System.nanoTime() - start);
+    }
+
+    /**
+     * The headers of a batch on top of the chain, looked up by height in either
+     */
+    private static class Batch {
+
+        private final HeaderChain chain;
+        private final byte[][] raw;
+        // the height of the first header of the batch
+        private final int base;
+        // the hash of the tip of the chain in internal byte order, null for an empty chain
+        private final byte[] tipHash;
+        // the last walk of lastNonMinimumBits
+        private int walkedFrom = -1;
+        private int walkedTo = -1;
+
+        Batch(HeaderChain chain, byte[][] raw) {
+            this.chain = chain;
+            this.raw = raw;
+            this.base = chain.getHeight() + 1;
+            this.tipHash = base == 0 ? null : Bytes.reverseOrder(chain.getHash(base - 1));
+        }
+
+        byte[] header(int height) {
+            return height >= base ? raw[height - base] : chain.getRaw(height);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.smithiboss.block;
+
+import org.smithiboss.utils.Helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MerkleAccumulator {
+
+    private final List<List<byte[]>> levels = new ArrayList<>();
+    private byte[] root = null;
+
+    /**
+     * Constructs an empty merkle accumulator
+     */
+    public MerkleAccumulator() {
+        levels.add(new ArrayList<>());
+    }
+
+    /**
+     * Constructs a merkle accumulator holding the given leaf hashes
+     *
+     * @param hashes a {@link List} of {@code byte} arrays in internal byte order
+     */
+    public MerkleAccumulator(List<byte[]> hashes) {
+        this();
+        for (byte[] hash : hashes) {
+            append(hash);
+        }
+    }
+
+    /**
+     * Appends a leaf to the tree. Only parents whose two children are both known are stored, so a parent is
+     * computed once when its right child arrives, which makes appending amortized O(1).
+     *
+     * @param hash a {@code byte} array in internal byte order
+     */
+    public void add(byte[] hash) {
+        append(hash);
+    }
+
+    // not overridable, so the constructor can call it
+    private void append(byte[] hash) {
+        var leaves = levels.getFirst();
+        leaves.add(hash);
+        var depth = 0;
+        var index = leaves.size() - 1;
+        // every completed right child finishes its parent
+        while (index % 2 == 1) {
+            var level = levels.get(depth);
+            var parent = Helper.merkleParent(level.get(index - 1), level.get(index));
+            if (levels.size() == depth + 1) {
+                levels.add(new ArrayList<>());
+            }
+            var parentLevel = levels.get(depth + 1);
+            parentLevel.add(parent);
+            depth++;
+            index = parentLevel.size() - 1;
+        }
+        root = null;
+    }
+
+    /**
+     * Replaces the leaf at the given index, e.g. the coinbase after an extranonce change, and recomputes
+     * the stored ancestors of that leaf in O(log n).
+     *
+     * @param index a {@code int}
+     * @param hash a {@code byte} array in internal byte order
+     */
+    public void set(int index, byte[] hash) {
+        levels.getFirst().set(index, hash);
+        var depth = 0;
+        // walk up as long as the parent has both of its children
+        while ((index | 1) < levels.get(depth).size()) {
+            var level = levels.get(depth);
+            var left = index & ~1;
+            levels.get(depth + 1).set(index / 2, Helper.merkleParent(level.get(left), level.get(left + 1)));
+            depth++;
+            index /= 2;
+        }
+        root = null;
+    }
+
+    /**
+     * Returns the leaf at the given index
+     *
+     * @param index a {@code int}
+     * @return a {@code byte} array
+     */
+    public byte[] get(int index) {
+        return levels.getFirst().get(index);
+    }
+
+    /**
+     * Returns the number of leaves
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        return levels.getFirst().size();
+    }
+
+    /**
+     * Returns the merkle root of all leaves, identical to {@link Helper#merkleRoot(List)}. Only the right edge
+     * of the tree, where the last node of a level is missing its sibling, is hashed here, which takes
+     * O(log n). The result is cached until the next change.
+     *
+     * @return a {@code byte} array in internal byte order
+     */
+    public byte[] root() {
+        if (root != null) return root;
+        var total = size();
+        if (total == 0) {
+            throw new IllegalStateException("Cannot compute the merkle root without leaves");
+        }
+        // the last node of the current level if it is not stored yet
+        byte[] carry = null;
+        var depth = 0;
+        var width = total;
+        while (width > 1) {
+            var level = levels.get(depth);
+            var parentWidth = (width + 1) / 2;
+            var parentStored = levels.size() > depth + 1 ? levels.get(depth + 1).size() : 0;
+            if (parentStored < parentWidth) {
+                // the last parent is incomplete, combine its children and duplicate the left one if needed
+                var left = nodeAt(level, 2 * (parentWidth - 1), carry);
+                var right = 2 * parentWidth - 1 < width ? nodeAt(level, 2 * parentWidth - 1, carry) : left;
+                carry = Helper.merkleParent(left, right);
+            } else {
+                carry = null;
+            }
+            depth++;
+            width = parentWidth;
+        }
+        root = carry != null ? carry : levels.get(depth).getFirst();
+        return root;
+    }
+
+    /**
+     * Returns the node at the given index of a level, falling back to the not yet stored last node
+     *
+     * @param level a {@link List} of {@code byte} arrays
+     * @param index a {@code int}
+     * @param carry a {@code byte} array
+     * @return a {@code byte} array
+     */
+    private static byte[] nodeAt(List<byte[]> level, int index, byte[] carry) {
+        return index < level.size() ? level.get(index) : carry;
+    }
+}
@@ -1,13 +1,13 @@
 package org.smithiboss.block;
 
 import org.smithiboss.ecc.Int;
-import org.smithiboss.spv.MerkleTree;
+import org.smithiboss.spv.FlatMerkleTree;
 import org.smithiboss.utils.Bytes;
 import org.smithiboss.utils.Helper;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class MerkleBlock {
@@ -83,6 +83,38 @@ public class MerkleBlock {
         return new MerkleBlock(version, prevBlock, merkleRoot, timestamp, bits, nonce, total, hashes, flags);
     }
 
+    /**
+     * Serializes the merkle block into its byte array representation, the payload of a merkleblock message.
+     *
+     * @return a byte array containing the serialized representation of the merkle block
+     */
+    public byte[] serialize() {
+        var result = new ByteArrayOutputStream();
+        // version is 4 bytes little endian
+        result.writeBytes(version.toBytesLittleEndian(4));
+        // prevBlock is 32 bytes little endian
+        result.writeBytes(Bytes.reverseOrder(prevBlock));
+        // merkleRoot is 32 bytes little endian
+        result.writeBytes(Bytes.reverseOrder(merkleRoot));
+        // timestamp is 4 bytes little endian
+        result.writeBytes(timestamp.toBytesLittleEndian(4));
+        // bits are 4 bytes
+        result.writeBytes(bits);
+        // nonce is 4 bytes
+        result.writeBytes(nonce);
+        // total is 4 bytes little endian
+        result.writeBytes(Int.parse(total).toBytesLittleEndian(4));
+        // numHashes is a varint followed by each hash, 32 bytes little endian
+        result.writeBytes(Helper.encodeVarInt(Int.parse(hashes.size())));
+        for (byte[] hash : hashes) {
+            result.writeBytes(Bytes.reverseOrder(hash));
+        }
+        // flags is a varint length followed by the flag bytes
+        result.writeBytes(Helper.encodeVarInt(Int.parse(flags.length)));
+        result.writeBytes(flags);
+        return result.toByteArray();
+    }
+
     /**
      * Validates the integrity of the merkle block by ensuring the calculated merkle root
      * matches the provided merkle root from the block data. This involves reconstructing
@@ -92,16 +124,12 @@ public class MerkleBlock {
      *         {@code false} otherwise.
      */
     public boolean isValid() {
-        // convert flag bytes to bit field
-        var flagBits = Bytes.bytesToBitField(flags);
-        // reverse hashes for the merkle root calculation
-        var h = hashes.stream().map(Bytes::reverseOrder).toList();
-        // create a merkle tree
-        var merkleTree = new MerkleTree(total);
-        // populate the merkle tree with the hashes and flagbits
-        merkleTree.populateTree(flagBits, h);
+        // create a flat merkle tree, which reads the flag bits straight from the flag bytes
+        var merkleTree = new FlatMerkleTree(total);
+        // populate the merkle tree with the reversed hashes and flag bits
+        merkleTree.populateTree(flags, hashes, true);
         // compare the merkle root calculated from the merkle tree with the merkle root in the merkle block
-        return Arrays.equals(merkleRoot, Bytes.reverseOrder(merkleTree.root()));
+        return merkleTree.rootEquals(merkleRoot, true);
     }
 
     public Int getVersion() {
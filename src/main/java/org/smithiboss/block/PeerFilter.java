@@ -0,0 +1,87 @@
+package org.smithiboss.block;
+
+import org.smithiboss.tx.Tx;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Helper;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+
+public class PeerFilter {
+
+    private final BloomFilter filter;
+    private final int updateFlag;
+
+    /**
+     * Constructs the filter a connected peer loaded, together with its update flag
+     *
+     * @param filter a {@link BloomFilter} object
+     * @param updateFlag one of the {@code BLOOM_UPDATE_*} flags of {@link BloomFilter}
+     */
+    public PeerFilter(BloomFilter filter, int updateFlag) {
+        this.filter = filter;
+        this.updateFlag = updateFlag;
+    }
+
+    /**
+     * Parses the payload of a filterload message
+     *
+     * @param s the {@link ByteArrayInputStream} containing the payload
+     * @return a {@link PeerFilter} object
+     * @throws IllegalArgumentException if the filter exceeds the BIP37 limits
+     */
+    public static PeerFilter parse(ByteArrayInputStream s) {
+        // the filter is a varint length followed by the filter bytes
+        var size = Helper.readVarint(s).intValue();
+        if (size > BloomFilter.MAX_FILTER_SIZE) {
+            throw new IllegalArgumentException("Filter too large: " + size);
+        }
+        var filterBytes = Bytes.read(s, size);
+        // number of hash functions is 4 bytes little endian
+        var functionCount = Helper.littleEndianToInt(Bytes.read(s, 4)).intValue();
+        if (functionCount > BloomFilter.MAX_FUNCTION_COUNT) {
+            throw new IllegalArgumentException("Too many hash functions: " + functionCount);
+        }
+        // tweak is 4 bytes little endian
+        var tweak = (int) Helper.littleEndianToInt(Bytes.read(s, 4)).longValue();
+        // flag is 1 byte
+        var updateFlag = Bytes.read(s, 1)[0];
+        return new PeerFilter(BloomFilter.fromBytes(filterBytes, functionCount, tweak), updateFlag);
+    }
+
+    /**
+     * Adds an item sent in a filteradd message
+     *
+     * @param item a {@code byte} array
+     */
+    public void add(byte[] item) {
+        filter.add(item);
+    }
+
+    /**
+     * Filters a prepared block for this peer. Every transaction is matched with the BIP37 rules, updating
+     * this filter as it goes, so transactions later in the block that spend a matched output match as well.
+     *
+     * @param block a {@link PreparedBlock} object
+     * @return the {@link FilteredBlock} to send to the peer
+     */
+    public FilteredBlock filterBlock(PreparedBlock block) {
+        var matches = new boolean[block.size()];
+        var matched = new ArrayList<Tx>();
+        for (int i = 0; i < block.size(); i++) {
+            if (block.matchAndUpdate(i, filter, updateFlag)) {
+                matches[i] = true;
+                matched.add(block.getTxs().get(i));
+            }
+        }
+        return new FilteredBlock(block.getBlock().merkleBlock(matches), matched);
+    }
+
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    public int getUpdateFlag() {
+        return updateFlag;
+    }
+}
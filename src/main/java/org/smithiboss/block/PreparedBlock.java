@@ -0,0 +1,235 @@
+package org.smithiboss.block;
+
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.OpCodes;
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.tx.TxIn;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PreparedBlock {
+
+    private static final int HASH_LENGTH = 32;
+    private static final int OUTPOINT_LENGTH = 36;
+
+    private final Block block;
+    private final List<Tx> txs;
+    // every txid, outpoint and script data push of the block, one after the other
+    private final byte[] data;
+    private final int[] txIdOffsets;
+    private final int[] txOutStarts;
+    private final int[] txInStarts;
+    private final int[] outOutpointOffsets;
+    private final int[] outPushStarts;
+    private final int[] outPushEnds;
+    private final boolean[] outPubkeyOnly;
+    private final int[] inOutpointOffsets;
+    private final int[] inPushStarts;
+    private final int[] inPushEnds;
+    private final int[] pushOffsets;
+    private final int[] pushLengths;
+
+    /**
+     * Prepares a full block for BIP37 filtering. Everything a filter is matched against - the txids, the outpoints
+     * created by every output, the outpoints spent by every input and the data pushes of every script - is
+     * serialized once into a single buffer, so that any number of filters can be matched against the block
+     * without serializing or allocating anything. The transaction hashes of the block are set from the txids.
+     * <p>
+     * A prepared block is read only and can be shared by threads, as long as every filter is used by one thread.
+     *
+     * @param block the {@link Block} header
+     * @param txs the transactions of the block, coinbase first
+     */
+    public PreparedBlock(Block block, List<Tx> txs) {
+        this.block = block;
+        this.txs = txs;
+        // count the outputs, inputs and pushes first to size the index arrays
+        var outCount = 0;
+        var inCount = 0;
+        var pushCount = 0;
+        for (Tx tx : txs) {
+            outCount += tx.getTxOuts().size();
+            inCount += tx.getTxIns().size();
+            for (TxOut txOut : tx.getTxOuts()) pushCount += countPushes(txOut.scriptPubkey());
+            for (TxIn txIn : tx.getTxIns()) pushCount += countPushes(txIn.getScriptSig());
+        }
+        txIdOffsets = new int[txs.size()];
+        txOutStarts = new int[txs.size() + 1];
+        txInStarts = new int[txs.size() + 1];
+        outOutpointOffsets = new int[outCount];
+        outPushStarts = new int[outCount];
+        outPushEnds = new int[outCount];
+        outPubkeyOnly = new boolean[outCount];
+        inOutpointOffsets = new int[inCount];
+        inPushStarts = new int[inCount];
+        inPushEnds = new int[inCount];
+        pushOffsets = new int[pushCount];
+        pushLengths = new int[pushCount];
+
+        var buffer = new ByteArrayOutputStream();
+        var txHashes = new ArrayList<byte[]>(txs.size());
+        var out = 0;
+        var in = 0;
+        var push = 0;
+        for (int t = 0; t < txs.size(); t++) {
+            var tx = txs.get(t);
+            // the txid in internal byte order is what filters match against
+            var txId = Bytes.reverseOrder(tx.hash());
+            txHashes.add(tx.hash());
+            txIdOffsets[t] = buffer.size();
+            buffer.writeBytes(txId);
+
+            txOutStarts[t] = out;
+            for (int o = 0; o < tx.getTxOuts().size(); o++) {
+                var scriptPubkey = tx.getTxOuts().get(o).scriptPubkey();
+                // the outpoint an output creates is its txid followed by its index
+                outOutpointOffsets[out] = buffer.size();
+                buffer.writeBytes(txId);
+                buffer.writeBytes(new byte[]{(byte) o, (byte) (o >> 8), (byte) (o >> 16), (byte) (o >> 24)});
+                outPubkeyOnly[out] = isPubkeyOrMultisig(scriptPubkey);
+                outPushStarts[out] = push;
+                push = writePushes(scriptPubkey, buffer, push);
+                outPushEnds[out] = push;
+                out++;
+            }
+
+            txInStarts[t] = in;
+            for (TxIn txIn : tx.getTxIns()) {
+                inOutpointOffsets[in] = buffer.size();
+                buffer.writeBytes(txIn.getPrevTx().toBytesLittleEndian(HASH_LENGTH));
+                buffer.writeBytes(txIn.getPrevIndex().toBytesLittleEndian(4));
+                inPushStarts[in] = push;
+                push = writePushes(txIn.getScriptSig(), buffer, push);
+                inPushEnds[in] = push;
+                in++;
+            }
+        }
+        txOutStarts[txs.size()] = out;
+        txInStarts[txs.size()] = in;
+        this.data = buffer.toByteArray();
+        block.setTxHashes(txHashes);
+        // this also computes the merkle tree once for all filtered blocks built from it
+        if (!block.validateMerkleRoot()) {
+            throw new IllegalArgumentException("Transactions do not match the merkle root of the block");
+        }
+    }
+
+    /**
+     * Matches one transaction against the filter and updates the filter following BIP37. A transaction matches
+     * if the filter contains its txid, a data push of one of its output scripts, one of the outpoints it spends or
+     * a data push of one of its input scripts. For every output with a matching data push the created outpoint is
+     * added to the filter, always with {@link BloomFilter#BLOOM_UPDATE_ALL} and only for pay-to-pubkey and
+     * multisig outputs with {@link BloomFilter#BLOOM_UPDATE_P2PUBKEY_ONLY}, so that spends of it match later.
+     *
+     * @param index the position of the transaction in the block
+     * @param filter the {@link BloomFilter} to match against
+     * @param updateFlag the flag sent with the filterload message
+     * @return {@code true} if the transaction matches
+     */
+    public boolean matchAndUpdate(int index, BloomFilter filter, int updateFlag) {
+        var found = filter.contains(data, txIdOffsets[index], HASH_LENGTH);
+        // outputs are always checked completely, a match adds the outpoint to the filter
+        for (int o = txOutStarts[index]; o < txOutStarts[index + 1]; o++) {
+            for (int p = outPushStarts[o]; p < outPushEnds[o]; p++) {
+                if (!filter.contains(data, pushOffsets[p], pushLengths[p])) continue;
+                found = true;
+                if (updateFlag == BloomFilter.BLOOM_UPDATE_ALL
+                        || (updateFlag == BloomFilter.BLOOM_UPDATE_P2PUBKEY_ONLY && outPubkeyOnly[o])) {
+                    filter.add(data, outOutpointOffsets[o], OUTPOINT_LENGTH);
+                }
+                break;
+            }
+        }
+        if (found) return true;
+        // inputs match on the spent outpoint or on a data push of the script signature
+        for (int i = txInStarts[index]; i < txInStarts[index + 1]; i++) {
+            if (filter.contains(data, inOutpointOffsets[i], OUTPOINT_LENGTH)) return true;
+            for (int p = inPushStarts[i]; p < inPushEnds[i]; p++) {
+                if (filter.contains(data, pushOffsets[p], pushLengths[p])) return true;
+            }
+        }
+        return false;
+    }
+
+    public Block getBlock() {
+        return block;
+    }
+
+    public List<Tx> getTxs() {
+        return txs;
+    }
+
+    public int size() {
+        return txs.size();
+    }
+
+    private static int countPushes(Script script) {
+        var count = 0;
+        for (Cmd cmd : script.getCmds()) {
+            if (cmd.isElement()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Appends every data push of the script to the buffer and records its position
+     *
+     * @return the index of the next push
+     */
+    private int writePushes(Script script, ByteArrayOutputStream buffer, int push) {
+        for (Cmd cmd : script.getCmds()) {
+            if (!cmd.isElement()) continue;
+            pushOffsets[push] = buffer.size();
+            pushLengths[push] = cmd.getElement().length;
+            buffer.writeBytes(cmd.getElement());
+            push++;
+        }
+        return push;
+    }
+
+    /**
+     * Returns whether the script is a pay-to-pubkey ({@code <pubkey> OP_CHECKSIG}) or a bare multisig
+     * ({@code OP_m <pubkey>... OP_n OP_CHECKMULTISIG}) script, matching the templates of Bitcoin Core's solver:
+     * keys must have a valid size for their prefix, m and n must be small integers with 1 &lt;= m &lt;= n and n must
+     * be the number of keys
+     */
+    private static boolean isPubkeyOrMultisig(Script script) {
+        var cmds = script.getCmds();
+        if (cmds.size() == 2 && isPubkey(cmds.getFirst()) && OpCodes.OP_172_CHECKSIG.equals(cmds.getLast().getOpCode())) {
+            return true;
+        }
+        if (cmds.size() >= 4 && OpCodes.OP_174_CHECKMULTISIG.equals(cmds.getLast().getOpCode())) {
+            var m = smallInt(cmds.getFirst());
+            var n = smallInt(cmds.get(cmds.size() - 2));
+            if (m < 1 || n < m || n != cmds.size() - 3) return false;
+            for (int i = 1; i < cmds.size() - 2; i++) {
+                if (!isPubkey(cmds.get(i))) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // a push of 33 bytes starting with 02 or 03, or of 65 bytes starting with 04, 06 or 07
+    private static boolean isPubkey(Cmd cmd) {
+        if (!cmd.isElement() || cmd.getElement().length == 0) return false;
+        var element = cmd.getElement();
+        return switch (element[0]) {
+            case 2, 3 -> element.length == 33;
+            case 4, 6, 7 -> element.length == 65;
+            default -> false;
+        };
+    }
+
+    // the value of OP_1 to OP_16, -1 for anything else
+    private static int smallInt(Cmd cmd) {
+        if (!cmd.isOpCode()) return -1;
+        var code = cmd.getOpCode().getCode().intValue();
+        return code >= 0x51 && code <= 0x60 ? code - 0x50 : -1;
+    }
+}
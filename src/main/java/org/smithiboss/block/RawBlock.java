@@ -0,0 +1,352 @@
+package org.smithiboss.block;
+
+import org.smithiboss.tx.Tx;
+import org.smithiboss.utils.Bytes;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class RawBlock implements Iterable<Tx> {
+
+    private static final int HEADER_LENGTH = 80;
+
+    private final ByteBuffer data;
+    private final boolean testnet;
+    private final Block header;
+    // offset, length and witness offset of every transaction, see TxSpan
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] witnessOffsets;
+
+    private RawBlock(ByteBuffer data, boolean testnet) {
+        this.data = data;
+        this.testnet = testnet;
+        try {
+            var headerBytes = new byte[HEADER_LENGTH];
+            data.get(0, headerBytes);
+            this.header = Block.parse(headerBytes);
+            var s = data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(HEADER_LENGTH);
+            var txCount = readCount(s);
+            offsets = new int[txCount];
+            lengths = new int[txCount];
+            witnessOffsets = new int[txCount];
+            for (int i = 0; i < txCount; i++) {
+                offsets[i] = s.position();
+                witnessOffsets[i] = skipTx(s);
+                lengths[i] = s.position() - offsets[i];
+            }
+            if (s.hasRemaining()) {
+                throw new IllegalStateException("Unexpected data after the last transaction");
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IllegalStateException("Unexpected end of block", e);
+        }
+    }
+
+    /**
+     * Parses a full block: the header, the transaction count and the position of every transaction. The
+     * transactions themselves are only walked over, they are parsed one at a time as the block is iterated, so a
+     * block of several megabytes takes no more memory than its bytes and its largest transaction.
+     *
+     * @param bytes the serialized block
+     * @param testnet a {@code boolean}
+     * @return a {@link RawBlock} object
+     * @throws IllegalStateException if the block is truncated or has data after its last transaction
+     */
+    public static RawBlock parse(byte[] bytes, boolean testnet) {
+        return wrap(ByteBuffer.wrap(bytes), testnet);
+    }
+
+    /**
+     * Parses a full block from a buffer without copying it, for example a memory mapped part of a block file. The
+     * block keeps using the buffer, which must not change.
+     *
+     * @param buffer the serialized block from its position to its limit
+     * @param testnet a {@code boolean}
+     * @return a {@link RawBlock} object
+     * @throws IllegalStateException if the block is truncated or has data after its last transaction
+     */
+    public static RawBlock wrap(ByteBuffer buffer, boolean testnet) {
+        return new RawBlock(buffer.slice(), testnet);
+    }
+
+    /**
+     * Returns the header, without transaction hashes
+     *
+     * @return a {@link Block} object
+     */
+    public Block getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the header with the txids of the transactions set, ready for {@link Block#validateMerkleRoot()}
+     *
+     * @return a new {@link Block} object
+     */
+    public Block toBlock() {
+        var block = Block.parse(header.serialize());
+        block.setTxHashes(txIds());
+        return block;
+    }
+
+    public int getTxCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the size of the serialized block
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        return data.limit();
+    }
+
+    /**
+     * Returns the position of a transaction in the block
+     *
+     * @param index the index of the transaction
+     * @return a {@link TxSpan} object
+     */
+    public TxSpan span(int index) {
+        return new TxSpan(offsets[index], lengths[index], witnessOffsets[index]);
+    }
+
+    /**
+     * Parses one transaction of the block
+     *
+     * @param index the index of the transaction
+     * @return a new {@link Tx} object
+     */
+    public Tx tx(int index) {
+        var bytes = new byte[lengths[index]];
+        data.get(offsets[index], bytes);
+        return Tx.parse(bytes, testnet);
+    }
+
+    /**
+     * Returns the serialized transaction as a view of the block, without copying
+     *
+     * @param index the index of the transaction
+     * @return a read only {@link ByteBuffer}
+     */
+    public ByteBuffer rawTx(int index) {
+        return data.slice(offsets[index], lengths[index]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Computes the txid of a transaction from its bytes in the block, leaving out the marker, flag and witnesses
+     * of a segwit transaction, without parsing it
+     *
+     * @param index the index of the transaction
+     * @return the txid as {@link Tx#hash()} returns it
+     */
+    public byte[] txId(int index) {
+        var sha256 = sha256();
+        var offset = offsets[index];
+        var end = offset + lengths[index];
+        if (witnessOffsets[index] < 0) {
+            sha256.update(data.slice(offset, lengths[index]));
+        } else {
+            // version, inputs and outputs without the marker and flag, then the locktime
+            sha256.update(data.slice(offset, 4));
+            sha256.update(data.slice(offset + 6, witnessOffsets[index] - offset - 6));
+            sha256.update(data.slice(end - 4, 4));
+        }
+        return Bytes.reverseOrder(sha256.digest(sha256.digest()));
+    }
+
+    /**
+     * Computes the wtxid of a transaction from its bytes in the block, without parsing it
+     *
+     * @param index the index of the transaction
+     * @return the wtxid as {@link Tx#witnessHash()} returns it
+     */
+    public byte[] witnessId(int index) {
+        var sha256 = sha256();
+        sha256.update(data.slice(offsets[index], lengths[index]));
+        return Bytes.reverseOrder(sha256.digest(sha256.digest()));
+    }
+
+    /**
+     * Returns the txids of all transactions
+     *
+     * @return a {@link List} of txids
+     */
+    public List<byte[]> txIds() {
+        var txIds = new ArrayList<byte[]>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            txIds.add(txId(i));
+        }
+        return txIds;
+    }
+
+    /**
+     * Returns the wtxids of all transactions
+     *
+     * @return a {@link List} of wtxids
+     */
+    public List<byte[]> witnessIds() {
+        var witnessIds = new ArrayList<byte[]>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            witnessIds.add(witnessId(i));
+        }
+        return witnessIds;
+    }
+
+    /**
+     * Returns an iterator that parses each transaction when it is reached
+     *
+     * @return an {@link Iterator}
+     */
+    @Override
+    public Iterator<Tx> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < offsets.length;
+            }
+
+            @Override
+            public Tx next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return tx(next++);
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator that parses each transaction when it is reached. As the positions of all
+     * transactions are known, it splits evenly for parallel streams.
+     *
+     * @return a {@link Spliterator}
+     */
+    @Override
+    public Spliterator<Tx> spliterator() {
+        return new TxSpliterator(0, offsets.length);
+    }
+
+    /**
+     * Returns a stream of the transactions, parsed lazily
+     *
+     * @return a {@link Stream}
+     */
+    public Stream<Tx> txs() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private class TxSpliterator implements Spliterator<Tx> {
+
+        private int index;
+        private final int end;
+
+        TxSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Tx> action) {
+            if (index >= end) return false;
+            action.accept(tx(index++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Tx> trySplit() {
+            var middle = (index + end) >>> 1;
+            if (middle <= index) return null;
+            var prefix = new TxSpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Skips over a transaction
+     *
+     * @return the offset of the witnesses, or -1 for a transaction without
+     */
+    private static int skipTx(ByteBuffer s) {
+        skip(s, 4);
+        // a zero input count is the segwit marker, followed by the flag
+        var segwit = s.get(s.position()) == 0;
+        if (segwit) skip(s, 2);
+        var inputNum = readCount(s);
+        for (int i = 0; i < inputNum; i++) {
+            // outpoint, scriptSig and sequence
+            skip(s, 36);
+            skip(s, readCount(s));
+            skip(s, 4);
+        }
+        var outputNum = readCount(s);
+        for (int i = 0; i < outputNum; i++) {
+            // amount and scriptPubkey
+            skip(s, 8);
+            skip(s, readCount(s));
+        }
+        var witnessOffset = -1;
+        if (segwit) {
+            witnessOffset = s.position();
+            for (int i = 0; i < inputNum; i++) {
+                var itemNum = readCount(s);
+                for (int j = 0; j < itemNum; j++) {
+                    skip(s, readCount(s));
+                }
+            }
+        }
+        skip(s, 4);
+        return witnessOffset;
+    }
+
+    private static void skip(ByteBuffer s, int n) {
+        s.position(s.position() + n);
+    }
+
+    // a varint that counts something within the block, which can never exceed its size
+    private static int readCount(ByteBuffer s) {
+        var first = s.get() & 0xff;
+        long count = switch (first) {
+            case 0xfd -> s.getShort() & 0xffff;
+            case 0xfe -> s.getInt() & 0xffffffffL;
+            case 0xff -> s.getLong();
+            default -> first;
+        };
+        if (count < 0 || count > s.remaining()) {
+            throw new IllegalStateException("Unexpected end of block");
+        }
+        return (int) count;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.smithiboss.block;
+
+import org.smithiboss.tx.TxSize;
+
+/**
+ * Position of a transaction within a serialized block
+ *
+ * @param offset the offset of the transaction in the block
+ * @param length the length of the transaction including the segwit marker, flag and witnesses
+ * @param witnessOffset the offset of the witnesses in the block, or -1 for a transaction without witnesses
+ */
+public record TxSpan(int offset, int length, int witnessOffset) {
+
+    public boolean isSegwit() {
+        return witnessOffset >= 0;
+    }
+
+    /**
+     * Returns the offset after the transaction
+     *
+     * @return a {@code int}
+     */
+    public int end() {
+        return offset + length;
+    }
+
+    /**
+     * Returns the base and total size of the transaction
+     *
+     * @return a {@link TxSize} object
+     */
+    public TxSize size() {
+        if (!isSegwit()) return new TxSize(length, length);
+        // the marker, flag and witnesses do not count towards the base size
+        var witnessSize = end() - 4 - witnessOffset + 2;
+        return new TxSize(length - witnessSize, length);
+    }
+}
@@ -32,6 +32,16 @@ public class NetworkEnvelope {
         }
     }
 
+    /**
+     * Returns the network magic, which also frames every block in the block files of Bitcoin Core
+     *
+     * @param testnet a {@code boolean}
+     * @return a {@code byte} array
+     */
+    public static byte[] magic(boolean testnet) {
+        return (testnet ? TESTNET_NETWORK_MAGIC : NETWORK_MAGIC).clone();
+    }
+
     public static NetworkEnvelope parse(String raw, boolean testnet) {
         return parse(Bytes.hexStringToByteArray(raw), testnet);
     }
@@ -9,6 +9,7 @@ import org.smithiboss.ecc.S256Point;
 import org.smithiboss.ecc.Signature;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 public class Op {
@@ -30,6 +31,23 @@ public class Op {
      * @return a boolean indicating whether the operation was successfully executed
      */
     public static boolean operation(OpCodes opCode, Deque<byte[]> stack, Deque<byte[]> altStack, List<Cmd> cmds, Int z) {
+        return operation(opCode, stack, altStack, cmds, z == null ? null : hashType -> z);
+    }
+
+    /**
+     * Executes the operation associated with the provided opcode. The signature operations compute the signature
+     * hash of every signature from the hash type appended to it.
+     *
+     * @param opCode the operation code specifying the operation to be executed
+     * @param stack a stack structure used during operations
+     * @param altStack an alternate stack structure used for specific operations
+     * @param cmds a list of commands that may be modified or evaluated during specific operations
+     * @param sigHash a {@link Function} from the hash type of a signature to its signature hash, required for
+     *                certain cryptographic operations
+     * @return a boolean indicating whether the operation was successfully executed
+     */
+    public static boolean operation(OpCodes opCode, Deque<byte[]> stack, Deque<byte[]> altStack, List<Cmd> cmds,
+                                    Function<Int, Int> sigHash) {
         // OP_IF and OP_NOTIF require manipulation of the cmds array based on the top element of the stack
         if (Set.of(OpCodes.OP_99_IF.getCode(), OpCodes.OP_100_NOTIF.getCode()).contains(opCode.getCode())) {
             // terminate if cmds are missing
@@ -49,7 +67,7 @@ public class Op {
                 OpCodes.OP_174_CHECKMULTISIG.getCode(), OpCodes.OP_175_CHECKMULTISIGVERIFY.getCode())
                 .contains(opCode.getCode())) {
             // terminate if z is null
-            if (z == null) {
+            if (sigHash == null) {
                 log.warning(String.format("Bad op: %s - missing z", opCode));
                 return false;
             }
@@ -104,10 +122,10 @@ public class Op {
                 opResult = Op.opHash256(stack);
                 break;
             case OP_172_CHECKSIG:
-                opResult = Op.opCheckSig(stack, z);
+                opResult = Op.opCheckSig(stack, sigHash);
                 break;
             case OP_174_CHECKMULTISIG:
-                opResult = Op.opCheckMultiSig(stack, z);
+                opResult = Op.opCheckMultiSig(stack, sigHash);
                 break;
             default:
                 log.severe(String.format("opcode %s not implemented.", opCode));
@@ -436,6 +454,17 @@ public class Op {
      * @return a {@code boolean}
      */
     static boolean opCheckSig(Deque<byte[]> stack, Int z) {
+        return opCheckSig(stack, hashType -> z);
+    }
+
+    /**
+     * OP_CHECKSIG verifies the signature against the signature hash of its own hash type
+     *
+     * @param stack a {@link Deque} object
+     * @param sigHash a {@link Function} from a hash type to the signature hash
+     * @return a {@code boolean}
+     */
+    static boolean opCheckSig(Deque<byte[]> stack, Function<Int, Int> sigHash) {
         // a stack needs two elements at least
         if (stack.size() < 2) {
             return false;
@@ -454,8 +483,8 @@ public class Op {
             log.severe(String.format("Exception %s", e.getMessage()));
             return false;
         }
-        // verify the signature
-        if (point.verify(z, sig)) {
+        // verify the signature against the hash of the type appended to it
+        if (point.verify(sigHash.apply(hashType(derSigWithHashType)), sig)) {
             stack.push(encodeNum(1));
         } else {
             stack.push(encodeNum(0));
@@ -472,52 +501,81 @@ public class Op {
      * @return a {@code boolean}
      */
     static boolean opCheckMultiSig(Deque<byte[]> stack, Int z) {
+        return opCheckMultiSig(stack, hashType -> z);
+    }
+
+    /**
+     * OP_CHECKMULTISIG as Bitcoin Core runs it: the signatures are matched against the pubkeys in order, a pubkey
+     * that does not match the current signature is skipped, and every signature is verified against the signature
+     * hash of its own hash type
+     *
+     * @param stack a {@link Deque} object
+     * @param sigHash a {@link Function} from a hash type to the signature hash
+     * @return a {@code boolean}
+     */
+    static boolean opCheckMultiSig(Deque<byte[]> stack, Function<Int, Int> sigHash) {
         if (stack.isEmpty()) return false;
         // check that stack size matches n + 1 at least
         var n = decodeNum(stack.pop());
-        if (stack.size() < n + 1) return false;
-        // get all pubkeys from the stack
+        if (n < 0 || stack.size() < n + 1) return false;
+        // get all pubkeys from the stack, the first one in the script is popped last
         var secPubKeys = new ArrayList<byte[]>();
         for (int i = 0; i < n; i++) {
-            secPubKeys.add(stack.pop());
+            secPubKeys.addFirst(stack.pop());
         }
         // check if the stack size matches m + 1 at least
         var m = decodeNum(stack.pop());
-        if (stack.size() < m + 1) return false;
-        // get all signatures from the stack
+        if (m < 0 || m > n || stack.size() < m + 1) return false;
+        // get all signatures from the stack in script order
         var derSignatures = new ArrayList<byte[]>();
         for (int i = 0; i < m; i++) {
-            var derSignature = stack.pop();
-            derSignatures.add(Arrays.copyOf(derSignature, derSignature.length - 1));
+            derSignatures.addFirst(stack.pop());
         }
         // OP_CHECKMULTISIG Bug
         stack.pop();
-        // parse all points
-        var points = new ArrayList<S256Point>();
-        for (byte[] secPubKey : secPubKeys) {
-            points.add(S256Point.parse(secPubKey));
-        }
-        // parse all signatures
-        var sigs = new ArrayList<Signature>();
-        for (byte[] derSignature : derSignatures) {
-            sigs.add(Signature.parse(derSignature));
-        }
-        // loop over every signature
-        for (Signature sig : sigs) {
-            if (points.isEmpty()) return false;
-            // check if the current point works with the signature
-            for (S256Point point : points) {
-                points.remove(point);
-                if (point.verify(z, sig)) {
-                    break;
-                }
+        var sig = 0;
+        var key = 0;
+        var success = true;
+        while (success && sig < m) {
+            // a pubkey that does not match the current signature is not tried again
+            if (verify(secPubKeys.get(key), derSignatures.get(sig), sigHash)) {
+                sig++;
             }
+            key++;
+            // fail once there are more signatures left than pubkeys
+            success = m - sig <= n - key;
         }
-        // the signatures are valid, push a 1 to the stack
-        stack.push(encodeNum(1));
+        stack.push(encodeNum(success ? 1 : 0));
         return true;
     }
 
+    /**
+     * Verifies a DER signature with its hash type appended against a SEC pubkey
+     *
+     * @return {@code false} if the signature does not match, or the pubkey or signature cannot be parsed
+     */
+    private static boolean verify(byte[] secPubKey, byte[] derSigWithHashType, Function<Int, Int> sigHash) {
+        if (derSigWithHashType.length == 0) return false;
+        var derSig = Arrays.copyOf(derSigWithHashType, derSigWithHashType.length - 1);
+        S256Point point;
+        Signature sig;
+        try {
+            point = S256Point.parse(secPubKey);
+            sig = Signature.parse(derSig);
+        } catch (Exception e) {
+            log.severe(String.format("Exception %s", e.getMessage()));
+            return false;
+        }
+        return point.verify(sigHash.apply(hashType(derSigWithHashType)), sig);
+    }
+
+    /**
+     * Returns the hash type of a signature, the byte appended to the DER signature
+     */
+    private static Int hashType(byte[] derSigWithHashType) {
+        return Int.parse(derSigWithHashType[derSigWithHashType.length - 1] & 0xff);
+    }
+
     /**
      * Prints the stack
      *
@@ -12,7 +12,9 @@ import java.io.ByteArrayOutputStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 public class Script {
@@ -20,6 +22,8 @@ public class Script {
     private static final Logger log = Logger.getLogger(Op.class.getSimpleName());
 
     private List<Cmd> cmds = new ArrayList<>();
+    // the bytes a parsed script was read from, which a non-minimal push makes differ from the encoded commands
+    private byte[] raw = null;
 
     public Script(List<Cmd> cmds) {
         if (cmds != null) this.cmds = cmds;
@@ -92,27 +96,29 @@ public class Script {
         // get the length of the entire script
         Int length = Helper.readVarint(s);
         var cmds = new ArrayList<Cmd>();
+        // the script as it is read, kept to serialize it back to the same bytes
+        var raw = new ByteArrayOutputStream();
         // keep track of the current position inside the stream
         var count = 0;
         // loop until we've read the entire script
         while (count < length.intValue()) {
             // the byte determines if we have an opcode or an element
-            var currentByte = Hex.parse(Bytes.read(s, 1));
+            var currentByte = Hex.parse(read(s, 1, raw));
             count++;
             // if the byte is between 1 and 75 inclusive
             if (currentByte.ge(Int.parse(1)) && currentByte.le(Int.parse(75))) {
                 var n = currentByte.intValue();
-                cmds.add(new Cmd(Bytes.read(s, n)));
+                cmds.add(new Cmd(read(s, n, raw)));
                 count += n;
             } else if (currentByte.eq(Int.parse(76))) {
                 // OP_PUSHDATA1
-                var dataLength = Helper.littleEndianToInt(Bytes.read(s, 1));
-                cmds.add(new Cmd(Bytes.read(s, dataLength.intValue())));
+                var dataLength = Helper.littleEndianToInt(read(s, 1, raw));
+                cmds.add(new Cmd(read(s, dataLength.intValue(), raw)));
                 count += dataLength.intValue() + 1;
             } else if (currentByte.eq(Int.parse(77))) {
                 // OP_PUSHDATA2
-                var dataLength = Helper.littleEndianToInt(Bytes.read(s, 2));
-                cmds.add(new Cmd(Bytes.read(s, dataLength.intValue())));
+                var dataLength = Helper.littleEndianToInt(read(s, 2, raw));
+                cmds.add(new Cmd(read(s, dataLength.intValue(), raw)));
                 count += dataLength.intValue() + 2;
             } else {
                 // it is an opcode
@@ -122,16 +128,28 @@ public class Script {
         if (count != length.intValue()) {
             throw new IllegalArgumentException("Parsing script failed");
         }
-    return new Script(cmds);
+        // the commands of a parsed script cannot change, so they always match the raw bytes
+        var script = new Script(Collections.unmodifiableList(cmds));
+        script.raw = raw.toByteArray();
+        return script;
+    }
+
+    // reads n bytes and appends them to the raw script
+    private static byte[] read(ByteArrayInputStream s, int n, ByteArrayOutputStream raw) {
+        var bytes = Bytes.read(s, n);
+        raw.writeBytes(bytes);
+        return bytes;
     }
 
     /**
-     * Serializes a script into its raw byte representation.
+     * Serializes a script into its raw byte representation. A parsed script returns the exact bytes it was parsed
+     * from, so a script with a non-minimal push keeps its txid and its BIP158 filter element.
      *
      * @return a byte array representing the raw serialized script
-     * @throws IllegalStateException if an element's length exceeds the allowable maximum (520 bytes)
+     * @throws IllegalStateException if an element is longer than OP_PUSHDATA2 can push (65535 bytes)
      */
     public byte[] rawSerialize() {
+        if (raw != null) return raw.clone();
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         // iterate over the command set
         for (Cmd cmd : this.cmds) {
@@ -141,14 +159,15 @@ public class Script {
             } else {
                 // if the cmd is an element, get its length
                 var length = cmd.getElement().length;
-                if (length < 75) {
-                    // if the length is less than 75, write the length as a byte array
+                if (length <= 75) {
+                    // if the length is at most 75, write the length as a byte array
                     result.writeBytes(Int.parse(length).toBytesLittleEndian(1));
-                } else if (length > 75 && length < 0x100) {
+                } else if (length < 0x100) {
                     // OP_PUSHDATA1
                     result.writeBytes(Int.parse(76).toBytesLittleEndian(1));
                     result.writeBytes(Int.parse(length).toBytesLittleEndian(1));
-                } else if (length >= 0x100 && length <= 520) {
+                } else if (length <= 0xffff) {
+                    // an output script can hold pushes longer than the 520 bytes a running script may push
                     // OP_PUSHDATA2
                     result.writeBytes(Int.parse(77).toBytesLittleEndian(1));
                     result.writeBytes(Int.parse(length).toBytesLittleEndian(2));
@@ -178,6 +197,57 @@ public class Script {
         return Bytes.concat(varInt, result);
     }
 
+    /**
+     * Returns the length of the raw serialization, computed from the commands without serializing them
+     *
+     * @return a {@code int}
+     */
+    public int rawSize() {
+        if (raw != null) return raw.length;
+        var size = 0;
+        for (Cmd cmd : cmds) {
+            if (cmd.isOpCode()) {
+                size++;
+            } else {
+                var length = cmd.getElement().length;
+                // direct push, OP_PUSHDATA1 or OP_PUSHDATA2 followed by the element
+                if (length <= 75) size += 1 + length;
+                else if (length < 0x100) size += 2 + length;
+                else size += 3 + length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the length of the serialization, the raw length as varint followed by the raw script
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        var rawSize = rawSize();
+        return Helper.varIntSize(rawSize) + rawSize;
+    }
+
+    /**
+     * Returns the length of the script serialized as a witness stack, the number of items as varint followed by
+     * every item with its length as varint
+     *
+     * @return a {@code int}
+     */
+    public int witnessSize() {
+        var size = Helper.varIntSize(cmds.size());
+        for (Cmd item : cmds) {
+            if (item.isOpCode()) {
+                // an empty item is parsed as OP_0 and written as a single zero byte
+                size++;
+            } else {
+                size += Helper.varIntSize(item.getElement().length) + item.getElement().length;
+            }
+        }
+        return size;
+    }
+
     /**
      * Evaluates the combined command set. Returns true if the script succeeds, else false.
      *
@@ -185,6 +255,17 @@ public class Script {
      * @return a {@code boolean}
      */
     public boolean evaluate(Int z, Script witness) {
+        return evaluate(z == null ? null : hashType -> z, witness);
+    }
+
+    /**
+     * Evaluates the combined command set, computing the signature hash of every signature from its own hash type.
+     * Returns true if the script succeeds, else false.
+     *
+     * @param sigHash a {@link Function} from the hash type of a signature to its signature hash
+     * @return a {@code boolean}
+     */
+    public boolean evaluate(Function<Int, Int> sigHash, Script witness) {
         var cmdsCopy = new ArrayList<>(this.cmds);
         var stack = new ArrayDeque<byte[]>();
         var altStack = new ArrayDeque<byte[]>();
@@ -196,7 +277,7 @@ public class Script {
             // check if cmd is an opcode
             if (cmd.isOpCode()) {
                 // call operation method will return a boolean
-                var operationResult = Op.operation(cmd.getOpCode(), stack, altStack, cmdsCopy, z);
+                var operationResult = Op.operation(cmd.getOpCode(), stack, altStack, cmdsCopy, sigHash);
                 // terminate if false
                 if (!operationResult) {
                     log.warning(String.format("bad op: %s", cmd.getOpCode()));
@@ -0,0 +1,202 @@
+package org.smithiboss.spv;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+public class FlatMerkleTree {
+
+    private static final int HASH_LENGTH = 32;
+
+    private final int total;
+    private final int maxDepth;
+    private final int[] levelOffsets;
+    private final int[] levelSizes;
+    private final byte[] nodes;
+    private final boolean[] known;
+    private final MessageDigest sha256;
+    private final byte[] scratch = new byte[HASH_LENGTH];
+
+    /**
+     * Constructs a Merkle tree with the given number of total transactions. All nodes share one
+     * contiguous buffer of 32 bytes per node, level by level starting at the root.
+     *
+     * @param total a {@code int}
+     */
+    public FlatMerkleTree(int total) {
+        if (total < 1) {
+            throw new IllegalArgumentException("A merkle tree needs at least one transaction");
+        }
+        this.total = total;
+        // calculate max depth, the number of times total can be halved (rounding up) until 1 is reached
+        this.maxDepth = 32 - Integer.numberOfLeadingZeros(total - 1);
+        this.levelOffsets = new int[maxDepth + 1];
+        this.levelSizes = new int[maxDepth + 1];
+        var count = 0;
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            // number of nodes at this depth is total / 2^(maxDepth - depth) rounded up
+            var shift = maxDepth - depth;
+            levelSizes[depth] = (int) ((total + (1L << shift) - 1) >> shift);
+            levelOffsets[depth] = count;
+            count += levelSizes[depth];
+        }
+        this.nodes = new byte[count * HASH_LENGTH];
+        this.known = new boolean[count];
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Populates the tree with given hashes, reading the flag bits directly from the packed flag bytes
+     * (least significant bit first, as sent in a merkleblock message).
+     *
+     * @param flagBytes a {@code byte} array
+     * @param hashes a {@link List} of {@code byte} arrays
+     * @param reversed whether the hashes are in reversed (display) byte order
+     */
+    public void populateTree(byte[] flagBytes, List<byte[]> hashes, boolean reversed) {
+        Arrays.fill(known, false);
+        var flagCount = flagBytes.length * 8;
+        var flagCursor = 0;
+        var hashCursor = 0;
+        var depth = 0;
+        var index = 0;
+
+        // populate the tree until we have the root
+        while (!known[0]) {
+            if (depth == maxDepth) {
+                // a leaf consumes a flag bit and takes the next hash
+                if (flagCursor++ >= flagCount || hashCursor >= hashes.size()) {
+                    throw new IllegalStateException("Ran out of flag bits or hashes");
+                }
+                setNode(depth, index, hashes.get(hashCursor++), reversed);
+                // go up a level
+                depth--;
+                index >>= 1;
+                continue;
+            }
+            var left = index * 2;
+            if (!isKnown(depth + 1, left)) {
+                if (flagCursor >= flagCount) {
+                    throw new IllegalStateException("Ran out of flag bits");
+                }
+                var bit = (flagBytes[flagCursor >> 3] >> (flagCursor & 7)) & 1;
+                flagCursor++;
+                if (bit == 0) {
+                    // the subtree does not need calculation, the next hash is the current node
+                    if (hashCursor >= hashes.size()) {
+                        throw new IllegalStateException("Ran out of hashes");
+                    }
+                    setNode(depth, index, hashes.get(hashCursor++), reversed);
+                    depth--;
+                    index >>= 1;
+                } else {
+                    // go to the left child of the current node
+                    depth++;
+                    index = left;
+                }
+            } else if (left + 1 < levelSizes[depth + 1]) {
+                if (!isKnown(depth + 1, left + 1)) {
+                    // go to the right child
+                    depth++;
+                    index = left + 1;
+                } else {
+                    // combine the left and right hashes
+                    hashChildren(depth, index, left + 1);
+                    depth--;
+                    index >>= 1;
+                }
+            } else {
+                // there is no right node, so we combine the left hash twice
+                hashChildren(depth, index, left);
+                depth--;
+                index >>= 1;
+            }
+        }
+        if (hashCursor != hashes.size()) {
+            throw new IllegalStateException("Not all hashes were consumed");
+        }
+        for (int i = flagCursor; i < flagCount; i++) {
+            if (((flagBytes[i >> 3] >> (i & 7)) & 1) != 0) {
+                throw new IllegalStateException("Not all flag bits were consumed");
+            }
+        }
+    }
+
+    /**
+     * Returns the root of the tree
+     *
+     * @return a {@code byte} array
+     */
+    public byte[] root() {
+        return known[0] ? Arrays.copyOf(nodes, HASH_LENGTH) : null;
+    }
+
+    /**
+     * Compares the root of the tree with the given hash without copying the root
+     *
+     * @param hash a {@code byte} array
+     * @param reversed whether the given hash is in reversed (display) byte order
+     * @return a {@code boolean}
+     */
+    public boolean rootEquals(byte[] hash, boolean reversed) {
+        if (!known[0] || hash.length != HASH_LENGTH) return false;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (nodes[i] != hash[reversed ? HASH_LENGTH - 1 - i : i]) return false;
+        }
+        return true;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    private int position(int depth, int index) {
+        return levelOffsets[depth] + index;
+    }
+
+    private boolean isKnown(int depth, int index) {
+        return known[position(depth, index)];
+    }
+
+    /**
+     * Copies a hash into the node buffer, reversing it on the fly if needed
+     */
+    private void setNode(int depth, int index, byte[] hash, boolean reversed) {
+        var pos = position(depth, index);
+        var offset = pos * HASH_LENGTH;
+        if (reversed) {
+            for (int i = 0; i < HASH_LENGTH; i++) {
+                nodes[offset + i] = hash[HASH_LENGTH - 1 - i];
+            }
+        } else {
+            System.arraycopy(hash, 0, nodes, offset, HASH_LENGTH);
+        }
+        known[pos] = true;
+    }
+
+    /**
+     * Sets a node to the hash256 of the concatenation of its left child and the given right child,
+     * hashing straight out of and into the node buffer
+     */
+    private void hashChildren(int depth, int index, int right) {
+        var pos = position(depth, index);
+        var leftOffset = position(depth + 1, index * 2) * HASH_LENGTH;
+        var rightOffset = position(depth + 1, right) * HASH_LENGTH;
+        try {
+            sha256.update(nodes, leftOffset, HASH_LENGTH);
+            sha256.update(nodes, rightOffset, HASH_LENGTH);
+            sha256.digest(scratch, 0, HASH_LENGTH);
+            sha256.update(scratch, 0, HASH_LENGTH);
+            sha256.digest(nodes, pos * HASH_LENGTH, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        known[pos] = true;
+    }
+}
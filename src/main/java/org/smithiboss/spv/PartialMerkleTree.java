@@ -0,0 +1,109 @@
+package org.smithiboss.spv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PartialMerkleTree {
+
+    private final int total;
+    private final List<byte[]> hashes;
+    private final byte[] flags;
+
+    /**
+     * Constructs a partial merkle tree as it is sent in a merkleblock message
+     *
+     * @param total a {@code int}
+     * @param hashes a {@link List} of {@code byte} arrays
+     * @param flags a {@code byte} array
+     */
+    public PartialMerkleTree(int total, List<byte[]> hashes, byte[] flags) {
+        this.total = total;
+        this.hashes = hashes;
+        this.flags = flags;
+    }
+
+    /**
+     * Builds the minimal partial merkle tree (BIP37) proving the matched transactions. The tree is walked depth
+     * first from the root. Every visited node emits one flag bit, which is 1 if a matched transaction lies below it.
+     * A node stops the descent and emits its hash if it is a leaf or nothing below it matched.
+     * <p>
+     * All interior hashes are taken from the given levels (see {@code Helper.merkleLevels}), so nothing is
+     * hashed again, and whether a subtree contains a match is computed bottom up in a single pass.
+     *
+     * @param levels the levels of the full merkle tree, leaves first and root last
+     * @param matches a {@code boolean} per leaf, {@code true} if the transaction matched
+     * @return a {@link PartialMerkleTree} object
+     */
+    public static PartialMerkleTree build(List<List<byte[]>> levels, boolean[] matches) {
+        var leaves = levels.getFirst();
+        if (matches.length != leaves.size()) {
+            throw new IllegalArgumentException("Expected " + leaves.size() + " match flags, got " + matches.length);
+        }
+        // mark every node that has a matched leaf below it, level by level
+        var matched = new boolean[levels.size()][];
+        matched[0] = matches;
+        for (int height = 1; height < levels.size(); height++) {
+            var below = matched[height - 1];
+            var current = new boolean[levels.get(height).size()];
+            for (int i = 0; i < current.length; i++) {
+                current[i] = below[2 * i] || (2 * i + 1 < below.length && below[2 * i + 1]);
+            }
+            matched[height] = current;
+        }
+        var builder = new Builder(levels, matched);
+        builder.traverse(levels.size() - 1, 0);
+        return new PartialMerkleTree(leaves.size(), builder.hashes, Arrays.copyOf(builder.flags, (builder.bitCount + 7) / 8));
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public List<byte[]> getHashes() {
+        return hashes;
+    }
+
+    public byte[] getFlags() {
+        return flags;
+    }
+
+    /**
+     * Collects the hashes and the packed flag bits while walking the tree
+     */
+    private static class Builder {
+
+        private final List<List<byte[]>> levels;
+        private final boolean[][] matched;
+        private final List<byte[]> hashes = new ArrayList<>();
+        private final byte[] flags;
+        private int bitCount = 0;
+
+        private Builder(List<List<byte[]>> levels, boolean[][] matched) {
+            this.levels = levels;
+            this.matched = matched;
+            // every node is visited at most once, so there are at most as many flag bits as nodes
+            var nodeCount = levels.stream().mapToInt(List::size).sum();
+            this.flags = new byte[(nodeCount + 7) / 8];
+        }
+
+        private void traverse(int height, int index) {
+            var parentOfMatch = matched[height][index];
+            // flag bits are packed least significant bit first
+            if (parentOfMatch) {
+                flags[bitCount / 8] |= (byte) (1 << (bitCount % 8));
+            }
+            bitCount++;
+            if (height == 0 || !parentOfMatch) {
+                // leaf or a subtree without matches, emit the hash
+                hashes.add(levels.get(height).get(index));
+            } else {
+                // descend into the left child and into the right child if it exists
+                traverse(height - 1, index * 2);
+                if (index * 2 + 1 < levels.get(height - 1).size()) {
+                    traverse(height - 1, index * 2 + 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.utils.Helper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+public class AsyncTxFetcher {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 16;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final Duration DEFAULT_BACKOFF = Duration.ofMillis(200);
+    private static final Pattern TX_ID = Pattern.compile("[0-9a-fA-F]{1,64}");
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final String baseUrl;
+    private final boolean testnet;
+    private final int maxRetries;
+    private final long backoffMillis;
+    // requests in flight by txid, callers asking for the same transaction share one request
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a fetcher for the Blockstream API of the network with the default limits
+     *
+     * @param testnet a {@code boolean}
+     */
+    public AsyncTxFetcher(boolean testnet) {
+        this(TxFetcher.getUrl(testnet), testnet, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Constructs a fetcher that downloads transactions without blocking. Concurrent requests for the same txid are
+     * collapsed into one, at most {@code maxConcurrent} requests run at the same time and failed requests are
+     * retried with exponential backoff. Downloaded transactions go into the cache and store of {@link TxFetcher}.
+     *
+     * @param baseUrl the API url, transactions are requested from {@code baseUrl/tx/<txid>/hex}
+     * @param testnet a {@code boolean}
+     * @param maxConcurrent the maximum number of requests in flight
+     * @param maxRetries the number of retries after a network error, a server error or rate limiting
+     * @param backoff the delay before the first retry, doubled for every further retry
+     */
+    public AsyncTxFetcher(String baseUrl, boolean testnet, int maxConcurrent, int maxRetries, Duration backoff) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + maxConcurrent);
+        }
+        this.baseUrl = baseUrl;
+        this.testnet = testnet;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoff.toMillis();
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Fetches a transaction, from the cache if possible. Every caller gets its own {@link Tx} object.
+     *
+     * @param txId the transaction ID as a hex {@link String}
+     * @return a {@link CompletableFuture} completed with the transaction, or exceptionally if the txid is not
+     *         at most 64 hex characters, or the transaction could not be downloaded or does not match the txid
+     */
+    public CompletableFuture<Tx> fetch(String txId) {
+        // checked before padding, which turns spaces into zeros, and before the request is registered
+        if (!TX_ID.matcher(txId).matches()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Not a txid: " + txId));
+        }
+        var txId64 = Helper.zfill(64, txId);
+        var raw = TxFetcher.cached(txId64);
+        if (raw != null) {
+            return CompletableFuture.completedFuture(Tx.parseOwned(raw, testnet));
+        }
+        var future = new CompletableFuture<byte[]>();
+        var existing = inFlight.putIfAbsent(txId64, future);
+        if (existing != null) {
+            return existing.thenApply(bytes -> Tx.parseOwned(bytes, testnet));
+        }
+        attempt(txId64, future, 0);
+        return future.thenApply(bytes -> Tx.parseOwned(bytes, testnet));
+    }
+
+    /**
+     * Fetches all transactions concurrently
+     *
+     * @param txIds a {@link Collection} of transaction IDs, duplicates are fetched once
+     * @return a {@link CompletableFuture} completed with a {@link Map} from txid to transaction in the given order,
+     *         or exceptionally if any transaction could not be fetched
+     */
+    public CompletableFuture<Map<String, Tx>> fetchAll(Collection<String> txIds) {
+        var distinct = new ArrayList<>(new LinkedHashSet<>(txIds));
+        var futures = new ArrayList<CompletableFuture<Tx>>(distinct.size());
+        for (String txId : distinct) {
+            futures.add(fetch(txId));
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            var result = new LinkedHashMap<String, Tx>();
+            for (int i = 0; i < distinct.size(); i++) {
+                result.put(distinct.get(i), futures.get(i).join());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Returns the number of transactions currently being downloaded
+     *
+     * @return a {@code int}
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private void attempt(String txId64, CompletableFuture<byte[]> future, int attempt) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/tx/" + txId64 + "/hex"))
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            // a base url that does not make a valid http url
+            fail(txId64, future, e);
+            return;
+        }
+        schedule(() -> send(request).whenComplete((response, error) -> {
+            release();
+            if (error == null && response.statusCode() == 200) {
+                try {
+                    var raw = TxFetcher.decode(response.body());
+                    TxFetcher.parseChecked(raw, txId64, testnet);
+                    TxFetcher.remember(txId64, raw);
+                    inFlight.remove(txId64, future);
+                    future.complete(raw);
+                } catch (RuntimeException e) {
+                    // a malformed or wrong transaction does not get better by asking again
+                    fail(txId64, future, e);
+                }
+            } else if (attempt < maxRetries && (error != null || retryable(response.statusCode()))) {
+                var delay = backoffMillis << attempt;
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(txId64, future, attempt + 1));
+            } else if (error != null) {
+                fail(txId64, future, error);
+            } else {
+                fail(txId64, future, new IOException("HTTP error " + response.statusCode() + ": "
+                        + new String(response.body(), StandardCharsets.UTF_8)));
+            }
+        }));
+    }
+
+    // a request that cannot be sent fails like one without a response, and gives back its permit the same way
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest request) {
+        try {
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // the request is no longer in flight before anyone waiting on it continues
+    private void fail(String txId64, CompletableFuture<byte[]> future, Throwable error) {
+        inFlight.remove(txId64, future);
+        future.completeExceptionally(error);
+    }
+
+    // server errors and rate limiting are worth retrying, other client errors are not
+    private static boolean retryable(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    /**
+     * Runs the request now if a permit is free, otherwise queues it until a running request completes
+     */
+    private void schedule(Runnable request) {
+        waiting.add(request);
+        drain();
+    }
+
+    private void release() {
+        permits.release();
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            var request = waiting.poll();
+            if (request == null) {
+                permits.release();
+                return;
+            }
+            request.run();
+        }
+    }
+}
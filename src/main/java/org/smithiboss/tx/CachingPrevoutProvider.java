@@ -0,0 +1,54 @@
+package org.smithiboss.tx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CachingPrevoutProvider implements PrevoutProvider {
+
+    private final PrevoutProvider delegate;
+    private final Map<OutPoint, TxOut> cache;
+
+    /**
+     * Constructs a provider that keeps the most recently used outputs of another provider, so that inputs looked
+     * up several times - for the fee, the signature hash and the script - are resolved only once
+     *
+     * @param delegate the {@link PrevoutProvider} to look up missing outputs in
+     * @param maxSize the maximum number of cached outputs, the least recently used ones are evicted
+     */
+    public CachingPrevoutProvider(PrevoutProvider delegate, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.delegate = delegate;
+        // an access ordered map drops the least recently used entry
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<OutPoint, TxOut> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TxOut prevout(OutPoint outPoint) {
+        synchronized (cache) {
+            var txOut = cache.get(outPoint);
+            if (txOut != null) return txOut;
+        }
+        // look up without holding the lock, a slow delegate must not block other lookups
+        var txOut = delegate.prevout(outPoint);
+        if (txOut != null) {
+            synchronized (cache) {
+                cache.put(outPoint, txOut);
+            }
+        }
+        return txOut;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.smithiboss.tx;
+
+public class FetcherPrevoutProvider implements PrevoutProvider {
+
+    private final boolean testnet;
+
+    /**
+     * Constructs a provider that downloads every previous transaction with {@link TxFetcher}. Every lookup may
+     * block on the network, wrap it in a {@link CachingPrevoutProvider} or resolve the prevouts up front where
+     * that matters.
+     *
+     * @param testnet a {@code boolean}
+     */
+    public FetcherPrevoutProvider(boolean testnet) {
+        this.testnet = testnet;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TxOut prevout(OutPoint outPoint) {
+        var tx = TxFetcher.fetch(outPoint.txId().toHex().toString(), testnet);
+        if (tx == null || outPoint.index() >= tx.getTxOuts().size()) return null;
+        return tx.getTxOuts().get(outPoint.index());
+    }
+}
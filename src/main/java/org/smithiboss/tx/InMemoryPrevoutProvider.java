@@ -0,0 +1,74 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.ecc.Hex;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryPrevoutProvider implements PrevoutProvider {
+
+    private final Map<OutPoint, TxOut> outputs = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a single output
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @param txOut a {@link TxOut} object
+     */
+    public void put(OutPoint outPoint, TxOut txOut) {
+        outputs.put(outPoint, txOut);
+    }
+
+    /**
+     * Adds every output of the transaction, for example the previous transactions of a transaction to verify
+     *
+     * @param tx a {@link Tx} object
+     */
+    public void add(Tx tx) {
+        var txId = Hex.parse(tx.hash());
+        for (int i = 0; i < tx.getTxOuts().size(); i++) {
+            outputs.put(new OutPoint(txId, i), tx.getTxOuts().get(i));
+        }
+    }
+
+    /**
+     * Removes a single output
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @return the removed {@link TxOut}, or {@code null} if the output is unknown
+     */
+    public TxOut remove(OutPoint outPoint) {
+        return outputs.remove(outPoint);
+    }
+
+    /**
+     * Applies the transaction as a UTXO set does: the outputs spent by its inputs are removed, its own outputs
+     * are added. Applying the transactions of a chain in order keeps exactly the unspent outputs.
+     *
+     * @param tx a {@link Tx} object
+     * @throws IllegalStateException if an input spends an unknown output, nothing is changed in that case
+     */
+    public void connect(Tx tx) {
+        if (!tx.isCoinBase()) {
+            for (TxIn txIn : tx.getTxIns()) {
+                if (!outputs.containsKey(OutPoint.of(txIn))) {
+                    throw new IllegalStateException("Unknown prevout " + OutPoint.of(txIn));
+                }
+            }
+            for (TxIn txIn : tx.getTxIns()) {
+                outputs.remove(OutPoint.of(txIn));
+            }
+        }
+        add(tx);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TxOut prevout(OutPoint outPoint) {
+        return outputs.get(outPoint);
+    }
+
+    public int size() {
+        return outputs.size();
+    }
+}
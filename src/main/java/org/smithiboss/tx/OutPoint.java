@@ -0,0 +1,31 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.utils.Helper;
+
+/**
+ * Reference to a transaction output, the txid of its transaction and its index
+ *
+ * @param txId the txid as shown in block explorers
+ * @param index the index of the output
+ */
+public record OutPoint(Int txId, int index) {
+
+    /**
+     * Returns the outpoint spent by the input
+     *
+     * @param txIn a {@link TxIn} object
+     * @return a {@link OutPoint} object
+     */
+    public static OutPoint of(TxIn txIn) {
+        return new OutPoint(txIn.getPrevTx(), txIn.getPrevIndex().intValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return Helper.zfill(64, txId.toHex().toString()) + ":" + index;
+    }
+}
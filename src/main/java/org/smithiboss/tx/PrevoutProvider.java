@@ -0,0 +1,39 @@
+package org.smithiboss.tx;
+
+public interface PrevoutProvider {
+
+    /**
+     * Returns the output the outpoint refers to, with the amount and script pubkey needed to compute fees and
+     * signature hashes and to verify the input spending it
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @return a {@link TxOut} object, or {@code null} if the output is unknown
+     */
+    TxOut prevout(OutPoint outPoint);
+
+    /**
+     * Returns the output spent by the input
+     *
+     * @param txIn a {@link TxIn} object
+     * @return a {@link TxOut} object
+     * @throws IllegalStateException if the output is unknown
+     */
+    default TxOut resolve(TxIn txIn) {
+        var outPoint = OutPoint.of(txIn);
+        var txOut = prevout(outPoint);
+        if (txOut == null) {
+            throw new IllegalStateException("Unknown prevout " + outPoint);
+        }
+        return txOut;
+    }
+
+    /**
+     * Returns a provider that downloads the previous transactions with {@link TxFetcher}
+     *
+     * @param testnet a {@code boolean}
+     * @return a {@link PrevoutProvider} object
+     */
+    static PrevoutProvider fetcher(boolean testnet) {
+        return new FetcherPrevoutProvider(testnet);
+    }
+}
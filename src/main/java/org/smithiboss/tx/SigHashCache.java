@@ -0,0 +1,230 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.Helper;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+public class SigHashCache {
+
+    private static final int OUTPOINT_LENGTH = 32 + 4;
+    // outpoint, empty script and sequence
+    private static final int EMPTY_INPUT_LENGTH = OUTPOINT_LENGTH + 1 + 4;
+    private static final byte[] ZERO_HASH = new byte[32];
+    // an output with an amount of -1 and an empty script, for the outputs before the signed one with SIGHASH_SINGLE
+    private static final byte[] BLANK_OUTPUT = {-1, -1, -1, -1, -1, -1, -1, -1, 0};
+    // the value signed for SIGHASH_SINGLE without a matching output (the uint256 one in Bitcoin Core)
+    private static final byte[] ONE;
+
+    static {
+        ONE = new byte[32];
+        ONE[0] = 1;
+    }
+
+    private final int inputCount;
+    private final int outputCount;
+    private final byte[] version;
+    private final byte[] inputCountBytes;
+    // every input serialized with an empty script, one after the other
+    private final byte[] emptyInputs;
+    // the same with the sequences set to zero, for SIGHASH_NONE and SIGHASH_SINGLE
+    private final byte[] emptyInputsNoSequence;
+    // output count and outputs
+    private final byte[] outputs;
+    // the start of every output in outputs, and the end of the last one
+    private final int[] outputOffsets;
+    private final byte[] lockTime;
+    // BIP143 hashes over all inputs and outputs
+    private final byte[] hashPrevouts;
+    private final byte[] hashSequence;
+    private final byte[] hashOutputs;
+
+    /**
+     * Serializes the parts of the transaction every signature hash is built from once: the version, the outpoint
+     * and sequence of every input, the outputs and the locktime, as well as the BIP143 hashes of the outpoints,
+     * sequences and outputs. A signature hash then only serializes the script code of the signed input and streams
+     * the rest from these buffers into the hash, which makes signing or verifying all inputs linear in the size of
+     * the transaction instead of quadratic, for every hash type.
+     * <p>
+     * The cache is read only after construction and can be shared by threads.
+     *
+     * @param tx a {@link Tx} object
+     */
+    public SigHashCache(Tx tx) {
+        var txIns = tx.getTxIns();
+        var txOuts = tx.getTxOuts();
+        this.inputCount = txIns.size();
+        this.outputCount = txOuts.size();
+        this.version = tx.getVersion().toBytesLittleEndian(4);
+        this.inputCountBytes = Helper.encodeVarInt(Int.parse(inputCount));
+
+        var inputs = new ByteArrayOutputStream(inputCount * EMPTY_INPUT_LENGTH);
+        var prevouts = new ByteArrayOutputStream(inputCount * OUTPOINT_LENGTH);
+        var sequences = new ByteArrayOutputStream(inputCount * 4);
+        for (TxIn txIn : txIns) {
+            var outpoint = new byte[OUTPOINT_LENGTH];
+            System.arraycopy(txIn.getPrevTx().toBytesLittleEndian(32), 0, outpoint, 0, 32);
+            System.arraycopy(txIn.getPrevIndex().toBytesLittleEndian(4), 0, outpoint, 32, 4);
+            var sequence = txIn.getSequence().toBytesLittleEndian(4);
+            inputs.writeBytes(outpoint);
+            inputs.write(0);
+            inputs.writeBytes(sequence);
+            prevouts.writeBytes(outpoint);
+            sequences.writeBytes(sequence);
+        }
+        this.emptyInputs = inputs.toByteArray();
+        this.emptyInputsNoSequence = emptyInputs.clone();
+        for (int i = 0; i < inputCount; i++) {
+            Arrays.fill(emptyInputsNoSequence, i * EMPTY_INPUT_LENGTH + OUTPOINT_LENGTH + 1, (i + 1) * EMPTY_INPUT_LENGTH, (byte) 0);
+        }
+
+        var stream = new ByteArrayOutputStream();
+        stream.writeBytes(Helper.encodeVarInt(Int.parse(outputCount)));
+        this.outputOffsets = new int[outputCount + 1];
+        for (int i = 0; i < outputCount; i++) {
+            outputOffsets[i] = stream.size();
+            stream.writeBytes(txOuts.get(i).serialize());
+        }
+        outputOffsets[outputCount] = stream.size();
+        this.outputs = stream.toByteArray();
+        this.lockTime = tx.getLockTime().toBytesLittleEndian(4);
+
+        this.hashPrevouts = Hash.hash256(prevouts.toByteArray());
+        this.hashSequence = Hash.hash256(sequences.toByteArray());
+        this.hashOutputs = Hash.hash256(Arrays.copyOfRange(outputs, outputOffsets[0], outputs.length));
+    }
+
+    /**
+     * Returns the legacy signature hash of an input, the hash256 of the transaction with the script code in place
+     * of the script of the signed input, empty scripts for all other inputs and the hash type appended.
+     * <p>
+     * With {@link Hash#SIGHASH_ANYONECANPAY} only the signed input is included. With {@link Hash#SIGHASH_NONE} no
+     * outputs are included, with {@link Hash#SIGHASH_SINGLE} only the output at the index of the signed input, and
+     * in both cases the sequences of the other inputs are set to zero. Signing with {@link Hash#SIGHASH_SINGLE}
+     * an input without a matching output signs the value one, as Bitcoin Core does.
+     *
+     * @param inputIndex the index of the signed input
+     * @param scriptCode the script pubkey of the previous output, or the redeem script for p2sh
+     * @param hashType the hash type
+     * @return a {@link Int} object
+     */
+    public Int legacySigHash(int inputIndex, Script scriptCode, Int hashType) {
+        checkIndex(inputIndex);
+        var type = hashType.intValue();
+        var anyoneCanPay = (type & Hash.SIGHASH_ANYONECANPAY.intValue()) != 0;
+        var baseType = type & 0x1f;
+        var none = baseType == Hash.SIGHASH_NONE.intValue();
+        var single = baseType == Hash.SIGHASH_SINGLE.intValue();
+        if (single && inputIndex >= outputCount) {
+            return Hex.parse(ONE);
+        }
+
+        var sha256 = sha256();
+        sha256.update(version);
+        var offset = inputIndex * EMPTY_INPUT_LENGTH;
+        if (anyoneCanPay) {
+            // only the signed input
+            sha256.update((byte) 1);
+            sha256.update(emptyInputs, offset, OUTPOINT_LENGTH);
+            sha256.update(scriptCode.serialize());
+            sha256.update(emptyInputs, offset + OUTPOINT_LENGTH + 1, 4);
+        } else {
+            // the inputs before, the outpoint of the signed input, its script code and sequence and the inputs after
+            var others = none || single ? emptyInputsNoSequence : emptyInputs;
+            sha256.update(inputCountBytes);
+            sha256.update(others, 0, offset);
+            sha256.update(emptyInputs, offset, OUTPOINT_LENGTH);
+            sha256.update(scriptCode.serialize());
+            sha256.update(emptyInputs, offset + OUTPOINT_LENGTH + 1, 4);
+            sha256.update(others, offset + EMPTY_INPUT_LENGTH, others.length - offset - EMPTY_INPUT_LENGTH);
+        }
+
+        if (none) {
+            sha256.update((byte) 0);
+        } else if (single) {
+            // blank outputs up to the signed index, then the output itself
+            sha256.update(Helper.encodeVarInt(Int.parse(inputIndex + 1)));
+            for (int i = 0; i < inputIndex; i++) {
+                sha256.update(BLANK_OUTPUT);
+            }
+            sha256.update(outputs, outputOffsets[inputIndex], outputOffsets[inputIndex + 1] - outputOffsets[inputIndex]);
+        } else {
+            sha256.update(outputs);
+        }
+        sha256.update(lockTime);
+        sha256.update(hashType.toBytesLittleEndian(4));
+        return Hex.parse(sha256.digest(sha256.digest()));
+    }
+
+    /**
+     * Returns the BIP143 signature hash of a segwit input. The shared hashes of the outpoints, sequences and outputs
+     * were computed when the cache was created; each hash type only selects which of them are used.
+     *
+     * @param inputIndex the index of the signed input
+     * @param scriptCode the serialized script code of the input
+     * @param value the amount of the spent output in satoshi
+     * @param hashType the hash type
+     * @return a {@link Int} object
+     */
+    public Int bip143SigHash(int inputIndex, byte[] scriptCode, Int value, Int hashType) {
+        checkIndex(inputIndex);
+        var type = hashType.intValue();
+        var anyoneCanPay = (type & Hash.SIGHASH_ANYONECANPAY.intValue()) != 0;
+        var baseType = type & 0x1f;
+        var none = baseType == Hash.SIGHASH_NONE.intValue();
+        var single = baseType == Hash.SIGHASH_SINGLE.intValue();
+
+        var sha256 = sha256();
+        sha256.update(version);
+        sha256.update(anyoneCanPay ? ZERO_HASH : hashPrevouts);
+        sha256.update(anyoneCanPay || none || single ? ZERO_HASH : hashSequence);
+        var offset = inputIndex * EMPTY_INPUT_LENGTH;
+        sha256.update(emptyInputs, offset, OUTPOINT_LENGTH);
+        sha256.update(scriptCode);
+        sha256.update(value.toBytesLittleEndian(8));
+        sha256.update(emptyInputs, offset + OUTPOINT_LENGTH + 1, 4);
+        if (!none && !single) {
+            sha256.update(hashOutputs);
+        } else if (single && inputIndex < outputCount) {
+            var start = outputOffsets[inputIndex];
+            sha256.update(Hash.hash256(Arrays.copyOfRange(outputs, start, outputOffsets[inputIndex + 1])));
+        } else {
+            sha256.update(ZERO_HASH);
+        }
+        sha256.update(lockTime);
+        sha256.update(hashType.toBytesLittleEndian(4));
+        return Hex.parse(sha256.digest(sha256.digest()));
+    }
+
+    public byte[] getHashPrevouts() {
+        return hashPrevouts;
+    }
+
+    public byte[] getHashSequence() {
+        return hashSequence;
+    }
+
+    public byte[] getHashOutputs() {
+        return hashOutputs;
+    }
+
+    private void checkIndex(int inputIndex) {
+        if (inputIndex < 0 || inputIndex >= inputCount) {
+            throw new IllegalArgumentException("Input index out of range: " + inputIndex);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -13,10 +13,12 @@ import org.smithiboss.script.Script;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
-public class Tx {
+public final class Tx {
 
     private final Int version;
     private final List<TxIn> txIns;
@@ -24,17 +26,27 @@ public class Tx {
     private Int lockTime;
     private Boolean testnet;
     private Boolean segwit;
-    private byte[] _hashPrevouts = null;
-    private byte[] _hashSequence = null;
-    private byte[] _hashOutputs = null;
+    private byte[] _serializedLegacy = null;
+    private byte[] _serializedSegwit = null;
+    private byte[] _hash = null;
+    private byte[] _witnessHash = null;
+    private String _id = null;
+    private SigHashCache _sigHashCache = null;
 
     public Tx(Int version, List<TxIn> txIns, List<TxOut> txOuts, Int lockTime, Boolean testnet, Boolean segwit) {
         this.version = version;
-        this.txIns = txIns;
+        this.txIns = new ArrayList<>(txIns.size());
         this.txOuts = txOuts;
         this.lockTime = lockTime;
         this.testnet = Objects.requireNonNullElse(testnet, false);
         this.segwit = Objects.requireNonNullElse(segwit, false);
+        // inputs report changes to their scripts so the cached serializations can be dropped; an input can report
+        // to one transaction only, so one that belongs to another transaction already is copied
+        for (TxIn txIn : txIns) {
+            var input = txIn.getTx() == null ? txIn : txIn.copy();
+            input.setTx(this);
+            this.txIns.add(input);
+        }
     }
 
     /**
@@ -77,6 +89,27 @@ public class Tx {
         }
     }
 
+    /**
+     * Parses a transaction that makes up the whole array and keeps the array as its cached serialization, so that
+     * the txid is hashed from it without serializing again. The array must not be modified afterward.
+     *
+     * @param raw a {@code byte} array holding exactly one legacy or segwit transaction
+     * @param testnet a {@code Boolean} indicating whether the transaction is for the testnet
+     * @return a {@code Tx} object representing the parsed transaction
+     */
+    static Tx parseOwned(byte[] raw, Boolean testnet) {
+        var s = new ByteArrayInputStream(raw);
+        var tx = parse(s, testnet);
+        if (s.available() == 0) {
+            if (tx.segwit) {
+                tx._serializedSegwit = raw;
+            } else {
+                tx._serializedLegacy = raw;
+            }
+        }
+        return tx;
+    }
+
     /**
      * Parses a legacy Bitcoin transaction from the given input stream.
      *
@@ -162,11 +195,22 @@ public class Tx {
     }
 
     /**
-     * Returns the byte serialization of the transaction
+     * Returns the byte serialization of the transaction, a copy of the one cached until the transaction changes
      *
      * @return a {@code byte} array
      */
     public byte[] serializeLegacy() {
+        return serializedLegacy().clone();
+    }
+
+    private byte[] serializedLegacy() {
+        if (_serializedLegacy == null) {
+            _serializedLegacy = computeSerializeLegacy();
+        }
+        return _serializedLegacy;
+    }
+
+    private byte[] computeSerializeLegacy() {
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         // serializeLegacy version
         result.writeBytes(version.toBytesLittleEndian(4));
@@ -191,11 +235,23 @@ public class Tx {
     }
 
     /**
-     * Returns the byte serialization of the transaction in segwit format.
+     * Returns the byte serialization of the transaction in segwit format, a copy of the one cached until the
+     * transaction changes
      *
      * @return a {@code byte} array
      */
     public byte[] serializeSegwit() {
+        return serializedSegwit().clone();
+    }
+
+    private byte[] serializedSegwit() {
+        if (_serializedSegwit == null) {
+            _serializedSegwit = computeSerializeSegwit();
+        }
+        return _serializedSegwit;
+    }
+
+    private byte[] computeSerializeSegwit() {
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         result.writeBytes(version.toBytesLittleEndian(4));
         result.writeBytes(new byte[]{0x00, 0x01});
@@ -229,87 +285,54 @@ public class Tx {
      * @return a {@link Int} object
      */
     public Int sigHash(int inputIndex, Script redeemScript) {
-        var stream = new ByteArrayOutputStream();
-        // serialize version
-        stream.writeBytes(version.toBytesLittleEndian(4));
-        // encode the number of inputs as a varint
-        stream.writeBytes(Helper.encodeVarInt(Int.parse(txIns.size())));
-        // iterate over all txInputs
-        for (int i = 0; i < txIns.size(); i++) {
-            var txIn = txIns.get(i);
-            Script scriptSig;
-            // check if the input index is reached
-            if (i == inputIndex) {
-                // copy scriptPubKey from output of previous transaction
-                if (redeemScript != null) {
-                    // p2sh, replace scriptSig with the redeem script
-                    scriptSig = redeemScript;
-                } else {
-                    scriptSig = txIn.scriptPubkey(testnet);
-                }
-            } else {
-                // remove scriptSig
-                scriptSig = null;
-            }
-            // add the serialization of the input with the correct scriptSig
-            stream.writeBytes(new TxIn(txIn.getPrevTx(), txIn.getPrevIndex(), scriptSig, txIn.getSequence()).serialize());
-        }
-        // encode the number of outputs as a varint
-        stream.writeBytes(Helper.encodeVarInt(Int.parse(txOuts.size())));
-        // add the serialization of every output
-        for (TxOut txOut : txOuts) {
-            stream.writeBytes(txOut.serialize());
-        }
-        // serialize locktime
-        stream.writeBytes(lockTime.toBytesLittleEndian(4));
-        // add SIGHASH_ALL
-        stream.writeBytes(Hash.SIGHASH_ALL.toBytesLittleEndian(4));
-        // hash256 the serialized transaction
-        return Hex.parse(Hash.hash256(stream.toByteArray()));
+        return sigHash(inputIndex, redeemScript, Hash.SIGHASH_ALL);
     }
 
     /**
-     * Computes and returns the hash of all the previous transaction outputs (Prevouts)
-     * used as inputs in the current transaction. The hash is calculated using the
-     * double SHA-256 (hash256) function on the concatenated data of previous transaction hashes
-     * and their respective indices in little-endian format.
-     * <p>
-     * If the hash is already computed (cached), it returns the cached value directly.
-     * Otherwise, it processes all the transaction inputs to compute the hash,
-     * caches it, and then returns the result.
+     * Returns the hash that needs to be signed for the given input index and hash type as a {@link Int} object.
      *
-     * @return a {@code byte} array containing the double SHA-256 hash of all previous inputs.
+     * @param inputIndex a {@code int}
+     * @param redeemScript the redeem script for p2sh, can be null if not applicable
+     * @param hashType one of {@link Hash#SIGHASH_ALL}, {@link Hash#SIGHASH_NONE} or {@link Hash#SIGHASH_SINGLE},
+     *                 optionally combined with {@link Hash#SIGHASH_ANYONECANPAY}
+     * @return a {@link Int} object
      */
-    private byte[] hashPrevouts() {
-        if (_hashPrevouts == null) {
-            var allPrevouts = new byte[0];
-            var allSequence = new byte[0];
-            for (TxIn txIn : txIns) {
-                allPrevouts = Bytes.concat(allPrevouts, Bytes.reverseOrder(txIn.getPrevTx().toBytes()), txIn.getPrevIndex().toBytesLittleEndian(4));
-                allSequence = Bytes.concat(allSequence, txIn.getSequence().toBytesLittleEndian(4));
-            }
-            _hashPrevouts = Hash.hash256(allPrevouts);
-            _hashSequence = Hash.hash256(allSequence);
-        }
-        return _hashPrevouts;
+    public Int sigHash(int inputIndex, Script redeemScript, Int hashType) {
+        return sigHash(inputIndex, redeemScript, hashType, PrevoutProvider.fetcher(testnet));
     }
 
-    private byte[] hashSequence() {
-        if (_hashSequence == null) {
-            hashPrevouts();
+    /**
+     * Returns the hash that needs to be signed for the given input index and hash type as a {@link Int} object,
+     * looking up the spent output in the given provider.
+     *
+     * @param inputIndex a {@code int}
+     * @param redeemScript the redeem script for p2sh, can be null if not applicable
+     * @param hashType the hash type
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@link Int} object
+     */
+    public Int sigHash(int inputIndex, Script redeemScript, Int hashType, PrevoutProvider prevouts) {
+        Script scriptCode;
+        if (redeemScript != null) {
+            // p2sh, replace scriptSig with the redeem script
+            scriptCode = redeemScript;
+        } else {
+            // copy scriptPubKey from output of previous transaction
+            scriptCode = txIns.get(inputIndex).scriptPubkey(prevouts);
         }
-        return _hashSequence;
+        return sigHashCache().legacySigHash(inputIndex, scriptCode, hashType);
     }
 
-    private byte[] hashOutputs() {
-        if (_hashOutputs == null) {
-            var allOutputs = new byte[0];
-            for (TxOut txOut : txOuts) {
-                allOutputs = Bytes.concat(allOutputs, txOut.serialize());
-            }
-            _hashOutputs = Hash.hash256(allOutputs);
+    /**
+     * Returns the serialized parts shared by the signature hashes of all inputs, created on first use
+     *
+     * @return a {@link SigHashCache} object
+     */
+    public SigHashCache sigHashCache() {
+        if (_sigHashCache == null) {
+            _sigHashCache = new SigHashCache(this);
         }
-        return _hashOutputs;
+        return _sigHashCache;
     }
 
     /**
@@ -322,29 +345,44 @@ public class Tx {
      * @return a {@link Int} object representing the computed SigHash as an integer
      */
     public Int sigHashBip143(int inputIndex, Script redeemScript, Script witnessScript) {
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        var txIn = txIns.get(inputIndex);
+        return sigHashBip143(inputIndex, redeemScript, witnessScript, Hash.SIGHASH_ALL);
+    }
 
-        result.writeBytes(version.toBytesLittleEndian(4));
-        result.writeBytes(hashPrevouts());
-        result.writeBytes(hashSequence());
-        result.writeBytes(txIn.getPrevTx().toBytesLittleEndian());
-        result.writeBytes(txIn.getPrevIndex().toBytesLittleEndian(4));
+    /**
+     * Computes the SigHash (signature hash) for a given input index and hash type using the BIP-143 hashing scheme.
+     *
+     * @param inputIndex the index of the input for which the SigHash is being calculated
+     * @param redeemScript the redeem script used in the transaction, can be null if not applicable
+     * @param witnessScript the witness script used in the transaction, can be null if not applicable
+     * @param hashType the hash type
+     * @return a {@link Int} object representing the computed SigHash as an integer
+     */
+    public Int sigHashBip143(int inputIndex, Script redeemScript, Script witnessScript, Int hashType) {
+        return sigHashBip143(inputIndex, redeemScript, witnessScript, hashType, PrevoutProvider.fetcher(testnet));
+    }
+
+    /**
+     * Computes the SigHash (signature hash) for a given input index and hash type using the BIP-143 hashing scheme,
+     * looking up the spent output in the given provider.
+     *
+     * @param inputIndex the index of the input for which the SigHash is being calculated
+     * @param redeemScript the redeem script used in the transaction, can be null if not applicable
+     * @param witnessScript the witness script used in the transaction, can be null if not applicable
+     * @param hashType the hash type
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@link Int} object representing the computed SigHash as an integer
+     */
+    public Int sigHashBip143(int inputIndex, Script redeemScript, Script witnessScript, Int hashType, PrevoutProvider prevouts) {
+        var txIn = txIns.get(inputIndex);
         byte[] scriptCode;
         if (witnessScript != null) {
             scriptCode = witnessScript.serialize();
         } else if (redeemScript != null) {
             scriptCode = Script.p2pkhScript(redeemScript.getCmds().getLast().getElement()).serialize();
         } else {
-            scriptCode = Script.p2pkhScript(txIn.scriptPubkey(testnet).getCmds().get(1).getElement()).serialize();
+            scriptCode = Script.p2pkhScript(txIn.scriptPubkey(prevouts).getCmds().get(1).getElement()).serialize();
         }
-        result.writeBytes(scriptCode);
-        result.writeBytes(txIn.value(testnet).toBytesLittleEndian(8));
-        result.writeBytes(txIn.getSequence().toBytesLittleEndian(4));
-        result.writeBytes(hashOutputs());
-        result.writeBytes(lockTime.toBytesLittleEndian(4));
-        result.writeBytes(Hash.SIGHASH_ALL.toBytesLittleEndian(4));
-        return Hex.parse(Hash.hash256(result.toByteArray()));
+        return sigHashCache().bip143SigHash(inputIndex, scriptCode, txIn.value(prevouts), hashType);
     }
 
     /**
@@ -353,11 +391,22 @@ public class Tx {
      * @return a {@code boolean}
      */
     public boolean verifyInput(int inputIndex) {
+        return verifyInput(inputIndex, PrevoutProvider.fetcher(testnet));
+    }
+
+    /**
+     * Validates the signature of the input at inputIndex, looking up the spent output in the given provider
+     *
+     * @param inputIndex a {@code int}
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@code boolean}
+     */
+    public boolean verifyInput(int inputIndex, PrevoutProvider prevouts) {
         var txIn = txIns.get(inputIndex);
         // get the script pubkey of previous output
-        var scriptPubKey = txIn.scriptPubkey(this.testnet);
-        Script redeemScript = null;
-        Int z = null;
+        var scriptPubKey = txIn.scriptPubkey(prevouts);
+        // the signature hash of each hash type, every signature is checked against the hash of its own type
+        Function<Int, Int> sigHash;
         Script witness = null;
         // check whether the ScriptPubKey is a p2sh script pubkey
         if (scriptPubKey.isP2shScriptPubkey()) {
@@ -366,10 +415,10 @@ public class Tx {
             // add a varint
             var rawRedeem = Bytes.concat(Helper.encodeVarInt(Int.parse(cmd.getElement().length)), cmd.getElement());
             // parse the redeem script
-            redeemScript = Script.parse(new ByteArrayInputStream(rawRedeem));
+            var redeemScript = Script.parse(new ByteArrayInputStream(rawRedeem));
             if (redeemScript.isP2wpkhScriptPubkey()) {
                 // generate the signature hash according to BIP-143 with the redeem script
-                z = sigHashBip143(inputIndex, redeemScript, null);
+                sigHash = hashType -> sigHashBip143(inputIndex, redeemScript, null, hashType, prevouts);
                 // get the witness
                 witness = txIn.getWitness();
             } else if (redeemScript.isP2wshScriptPubkey()) {
@@ -380,15 +429,15 @@ public class Tx {
                 // parse the witness script
                 var witnessScript = Script.parse(new ByteArrayInputStream(rawWitness));
                 // generate the signature hash according to BIP-143 with the witness script
-                z = sigHashBip143(inputIndex, null, witnessScript);
+                sigHash = hashType -> sigHashBip143(inputIndex, null, witnessScript, hashType, prevouts);
                 witness = txIn.getWitness();
             } else {
-                z = sigHash(inputIndex, redeemScript);
+                sigHash = hashType -> sigHash(inputIndex, redeemScript, hashType, prevouts);
             }
         } else {
             if (scriptPubKey.isP2wpkhScriptPubkey()) {
                 // generate the signature hash according to BIP-143
-                z = sigHashBip143(inputIndex, null, null);
+                sigHash = hashType -> sigHashBip143(inputIndex, null, null, hashType, prevouts);
                 // get the witness
                 witness = txIn.getWitness();
             } else if (scriptPubKey.isP2wshScriptPubkey()) {
@@ -399,32 +448,44 @@ public class Tx {
                 // parse the witness script
                 var witnessScript = Script.parse(new ByteArrayInputStream(rawWitness));
                 // generate the signature hash according to BIP-143 with the witness script
-                z = sigHashBip143(inputIndex, null, witnessScript);
+                sigHash = hashType -> sigHashBip143(inputIndex, null, witnessScript, hashType, prevouts);
                 witness = txIn.getWitness();
             } else {
                 // generate the signature hash with the legacy sigHash function
-                z = sigHash(inputIndex, null);
+                sigHash = hashType -> sigHash(inputIndex, null, hashType, prevouts);
             }
         }
         // combine the script signature and the script pubKey
         var combined = txIn.getScriptSig().add(scriptPubKey);
-        // evaluate the combined script
-        return combined.evaluate(z, witness);
+        // evaluate the combined script, hashing once per hash type
+        var hashes = new HashMap<Int, Int>();
+        return combined.evaluate(hashType -> hashes.computeIfAbsent(hashType, sigHash), witness);
     }
 
     /**
-     * Verifies this transaction
+     * Verifies this transaction. The spent outputs are downloaded once, in parallel, before any check runs.
      *
      * @return a {@code boolean}
      */
     public boolean verify() {
+        if (isCoinBase()) return false;
+        return VerificationContext.resolveParallel(this, PrevoutProvider.fetcher(testnet)).verify();
+    }
+
+    /**
+     * Verifies this transaction, looking up the spent outputs in the given provider
+     *
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@code boolean}
+     */
+    public boolean verify(PrevoutProvider prevouts) {
         // check that the transaction is not creating coins
-        if (fee().lt(Int.parse(0))) {
+        if (fee(prevouts).lt(Int.parse(0))) {
             return false;
         }
         // check that every input has a valid scriptSig
         for (int i = 0; i < txIns.size(); i++) {
-            if (!this.verifyInput(i)) {
+            if (!this.verifyInput(i, prevouts)) {
                 return false;
             }
         }
@@ -439,11 +500,36 @@ public class Tx {
      * @return a {@code boolean}
      */
     public boolean signInput(int inputIndex, PrivateKey privateKey) {
-        var z = sigHash(inputIndex, null);
+        return signInput(inputIndex, privateKey, Hash.SIGHASH_ALL);
+    }
+
+    /**
+     * Signs the input with the provided private key and hash type
+     *
+     * @param inputIndex a {@code int}
+     * @param privateKey a {@link PrivateKey} object
+     * @param hashType the hash type
+     * @return a {@code boolean}
+     */
+    public boolean signInput(int inputIndex, PrivateKey privateKey, Int hashType) {
+        return signInput(inputIndex, privateKey, hashType, PrevoutProvider.fetcher(testnet));
+    }
+
+    /**
+     * Signs the input with the provided private key and hash type, looking up the spent output in the given provider
+     *
+     * @param inputIndex a {@code int}
+     * @param privateKey a {@link PrivateKey} object
+     * @param hashType the hash type
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@code boolean}
+     */
+    public boolean signInput(int inputIndex, PrivateKey privateKey, Int hashType, PrevoutProvider prevouts) {
+        var z = sigHash(inputIndex, null, hashType, prevouts);
         // create a signature of z and serialize with DER
         var der = privateKey.sign(z).der();
-        // append SIGHASH_ALL to der
-        var sig = Bytes.concat(der, Hash.SIGHASH_ALL.toBytes(1));
+        // append the hash type to der
+        var sig = Bytes.concat(der, hashType.toBytes(1));
         // get sec
         var sec = privateKey.getPublicKey().sec(true);
         // create a new script with [sig, sec] as cmds
@@ -451,7 +537,7 @@ public class Tx {
         // set inputs scriptSig to script
         this.txIns.get(inputIndex).setScriptSig(script);
         // validate signature
-        return verifyInput(inputIndex);
+        return verifyInput(inputIndex, prevouts);
     }
 
     /**
@@ -460,11 +546,21 @@ public class Tx {
      * @return a {@link Int} object
      */
     public Int fee() {
+        return fee(PrevoutProvider.fetcher(testnet));
+    }
+
+    /**
+     * Calculates the fee, looking up the spent outputs in the given provider
+     *
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@link Int} object
+     */
+    public Int fee(PrevoutProvider prevouts) {
         var inputSum = Int.parse(0);
         var outputSum = Int.parse(0);
         // add all inputs to inputSum
         for (TxIn txIn : txIns) {
-            inputSum = inputSum.add(txIn.value(this.testnet));
+            inputSum = inputSum.add(txIn.value(prevouts));
         }
         // add all outputs to outputSum
         for (TxOut txOut : txOuts) {
@@ -509,16 +605,139 @@ public class Tx {
      * @return a {@link String} object
      */
     public String getId() {
-        return Bytes.byteArrayToHexString(hash());
+        if (_id == null) {
+            _id = Bytes.byteArrayToHexString(hash());
+        }
+        return _id;
     }
 
     /**
-     * Returns a binary hash of the legacy serialization
+     * Returns a binary hash of the legacy serialization, the txid. The result is cached until the transaction
+     * changes and must not be modified.
      *
      * @return a {@code byte} array
      */
-    private byte[] hash() {
-        return Bytes.reverseOrder(Hash.hash256(serializeLegacy()));
+    public byte[] hash() {
+        if (_hash == null) {
+            _hash = Bytes.reverseOrder(Hash.hash256(serializedLegacy()));
+        }
+        return _hash;
+    }
+
+    /**
+     * Returns a binary hash of the full serialization including witnesses, the wtxid (BIP141).
+     * For a transaction without witnesses it equals the txid.
+     *
+     * @return a {@code byte} array
+     */
+    public byte[] witnessHash() {
+        if (!segwit) return hash();
+        if (_witnessHash == null) {
+            _witnessHash = Bytes.reverseOrder(Hash.hash256(serializedSegwit()));
+        }
+        return _witnessHash;
+    }
+
+    /**
+     * Returns a human-readable hexadecimal of the witness transaction hash
+     *
+     * @return a {@link String} object
+     */
+    public String getWitnessId() {
+        return Bytes.byteArrayToHexString(witnessHash());
+    }
+
+    /**
+     * Returns the size of the serialization without witness data, computed from the inputs and outputs
+     * without serializing
+     *
+     * @return a {@code int}
+     */
+    public int legacySize() {
+        // version, input count, inputs, output count, outputs and locktime
+        var size = 4 + Helper.varIntSize(txIns.size()) + Helper.varIntSize(txOuts.size()) + 4;
+        for (TxIn txIn : txIns) {
+            size += txIn.size();
+        }
+        for (TxOut txOut : txOuts) {
+            size += txOut.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of the full serialization, including the marker, flag and witnesses for segwit
+     * transactions, computed without serializing
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        var size = legacySize();
+        if (segwit) {
+            size += 2;
+            for (TxIn txIn : txIns) {
+                size += txIn.witnessSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the base and total size of the transaction
+     *
+     * @return a {@link TxSize} object
+     */
+    public TxSize measure() {
+        return new TxSize(legacySize(), size());
+    }
+
+    /**
+     * Returns the weight (BIP141)
+     *
+     * @return a {@code int}
+     */
+    public int weight() {
+        return measure().weight();
+    }
+
+    /**
+     * Returns the virtual size, the weight divided by four and rounded up
+     *
+     * @return a {@code int}
+     */
+    public int vsize() {
+        return measure().vsize();
+    }
+
+    /**
+     * Returns the fee rate in satoshi per virtual byte
+     *
+     * @param fee the fee in satoshi, see {@link #fee()}
+     * @return a {@code double}
+     */
+    public double feeRate(Int fee) {
+        return measure().feeRate(fee);
+    }
+
+    /**
+     * Drops the cached serializations, hashes and signature hash parts. Called when the locktime changes.
+     * Changes to the input and output lists themselves are not tracked and need a call to this method.
+     */
+    public void invalidate() {
+        invalidateSerialization();
+        _sigHashCache = null;
+    }
+
+    /**
+     * Drops the cached serializations and hashes, but keeps the signature hash parts, which do not depend on the
+     * scripts and witnesses of the inputs. Called when a script of an input changes.
+     */
+    void invalidateSerialization() {
+        _serializedLegacy = null;
+        _serializedSegwit = null;
+        _hash = null;
+        _witnessHash = null;
+        _id = null;
     }
 
     /**
@@ -559,7 +778,10 @@ public class Tx {
     /**
      * Sets the locktime
      */
-    public void setLockTime(Int lockTime) {this.lockTime = lockTime;}
+    public void setLockTime(Int lockTime) {
+        this.lockTime = lockTime;
+        invalidate();
+    }
 
     /**
      * Sets the testnet value
@@ -0,0 +1,80 @@
+package org.smithiboss.tx;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TxCache {
+
+    private final long maxBytes;
+    // access ordered, the first entry is the least recently used one
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    /**
+     * Constructs a cache of raw transactions bounded by their total size. Entries are stored as bytes, which takes
+     * half the memory of hex strings and can be parsed directly. All methods are thread-safe.
+     *
+     * @param maxBytes the maximum total size of the cached transactions, the least recently used ones are evicted
+     */
+    public TxCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the raw transaction
+     *
+     * @param txId the txid as 64 hex characters
+     * @return a {@code byte} array, or {@code null} if the transaction is not cached
+     */
+    public synchronized byte[] get(String txId) {
+        return entries.get(txId);
+    }
+
+    /**
+     * Adds a raw transaction and evicts the least recently used ones until the cache fits its size again.
+     * A transaction larger than the whole cache is not added.
+     *
+     * @param txId the txid as 64 hex characters
+     * @param raw the serialized transaction
+     */
+    public synchronized void put(String txId, byte[] raw) {
+        if (raw.length > maxBytes) return;
+        var previous = entries.put(txId, raw);
+        bytes += raw.length - (previous == null ? 0 : previous.length);
+        Iterator<byte[]> iterator = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns a copy of all entries, from least to most recently used
+     *
+     * @return a {@link Map} from txid to raw transaction
+     */
+    public synchronized Map<String, byte[]> entries() {
+        return new LinkedHashMap<>(entries);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
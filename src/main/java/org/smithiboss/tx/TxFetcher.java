@@ -1,28 +1,36 @@
 package org.smithiboss.tx;
 
-import org.smithiboss.utils.Bytes;
 import org.smithiboss.utils.Helper;
-import org.smithiboss.ecc.Hex;
+import org.smithiboss.utils.HexDecoder;
 import org.smithiboss.script.Op;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 public class TxFetcher {
 
-    // TODO: Finish cache implementation
-
     private static final Logger log = Logger.getLogger(Op.class.getSimpleName());
 
-    private static final Map<String, String> cache = new HashMap<>();
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final TxCache cache = new TxCache(DEFAULT_CACHE_BYTES);
+    // optional persistent store behind the cache
+    private static volatile TxStore store = null;
+    private static AsyncTxFetcher mainnetFetcher = null;
+    private static AsyncTxFetcher testnetFetcher = null;
     private static final HttpClient httpClient = HttpClient.newHttpClient();
+    // hex decoding buffers, one per fetching thread
+    private static final ThreadLocal<HexDecoder> decoders = ThreadLocal.withInitial(() -> new HexDecoder(4096));
 
     /**
      * Retrieves the API URL for Blockstream based on the network type.
@@ -38,7 +46,8 @@ public class TxFetcher {
     /**
      * Fetches a transaction from the network or cache based on its transaction ID.
      * If the transaction is not found in the local cache, it is retrieved from the appropriate network
-     * (testnet or mainnet) using the Blockstream API.
+     * (testnet or mainnet) using the Blockstream API. The hex response is decoded while it is read into a buffer
+     * reused by the thread and the transaction is parsed once, legacy or segwit.
      *
      * @param txId the transaction ID as a String, expected to be in hexadecimal format.
      * @param testnet a boolean indicating whether to fetch the transaction from testnet (true)
@@ -47,93 +56,203 @@ public class TxFetcher {
      *         or parsing, an exception may be thrown or the returned result may be null.
      */
     public static Tx fetch(String txId, boolean testnet) {
+        return fetch(getUrl(testnet), txId, testnet);
+    }
+
+    static Tx fetch(String baseUrl, String txId, boolean testnet) {
         String txId64 = Helper.zfill(64, txId);
-        String rawTx = null;
-        if (!cache.containsKey(txId64)) {
-            String url = getUrl(testnet) + "/tx/" + txId64 + "/hex";
+        byte[] rawBytes = cached(txId64);
+        if (rawBytes != null) {
+            return Tx.parseOwned(rawBytes, testnet);
+        }
+        String url = baseUrl + "/tx/" + txId64 + "/hex";
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .GET()
+                .build();
 
-            try {
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
 
+            try (var body = response.body()) {
                 if (response.statusCode() != 200) {
-                    throw new IOException("HTTP error " + response.statusCode() + ": " + response.body());
+                    throw new IOException("HTTP error " + response.statusCode() + ": "
+                            + new String(body.readAllBytes(), StandardCharsets.UTF_8));
                 }
+                var decoder = decoder();
+                decoder.readFrom(body);
+                rawBytes = decoder.toByteArray();
+            }
+            var tx = parseChecked(rawBytes, txId64, testnet);
+            remember(txId64, rawBytes);
+            return tx;
+        } catch (Exception e) {
+            log.severe("Error fetching transaction: " + e.getMessage());
+            return null;
+        }
+    }
 
-                try {
-                    rawTx = response.body().trim();
-                } catch (IllegalArgumentException e) {
-                    log.severe("Invalid response body: " + response.body() + "\n" + e.getMessage());
-                    return null;
-                }
+    /**
+     * Fetches a transaction without blocking, see {@link AsyncTxFetcher}
+     *
+     * @param txId the transaction ID as a hex {@link String}
+     * @param testnet a {@code boolean}
+     * @return a {@link CompletableFuture} completed with the transaction
+     */
+    public static CompletableFuture<Tx> fetchAsync(String txId, boolean testnet) {
+        return asyncFetcher(testnet).fetch(txId);
+    }
+
+    /**
+     * Fetches many transactions concurrently, see {@link AsyncTxFetcher}
+     *
+     * @param txIds a {@link Collection} of transaction IDs
+     * @param testnet a {@code boolean}
+     * @return a {@link CompletableFuture} completed with a {@link Map} from txid to transaction
+     */
+    public static CompletableFuture<Map<String, Tx>> fetchAll(Collection<String> txIds, boolean testnet) {
+        return asyncFetcher(testnet).fetchAll(txIds);
+    }
 
-                Tx tx;
-                byte[] rawBytes = Bytes.hexStringToByteArray(rawTx);
-                if (rawBytes[4] == 0) {
-                    rawBytes = Bytes.concat(Arrays.copyOfRange(rawBytes, 0, 4), Arrays.copyOfRange(rawBytes, 6, rawBytes.length));
+    // one shared fetcher per network, so that requests are collapsed and limited across all callers
+    private static synchronized AsyncTxFetcher asyncFetcher(boolean testnet) {
+        if (testnet) {
+            if (testnetFetcher == null) testnetFetcher = new AsyncTxFetcher(true);
+            return testnetFetcher;
+        }
+        if (mainnetFetcher == null) mainnetFetcher = new AsyncTxFetcher(false);
+        return mainnetFetcher;
+    }
 
-                    tx = Tx.parse(new ByteArrayInputStream(rawBytes), testnet);
-                    var locktime = Hex.parse(Bytes.reverseOrder(Arrays.copyOfRange(rawBytes, rawBytes.length - 4, rawBytes.length)));
-                    tx.setLockTime(locktime);
-                } else {
-                    tx = Tx.parse(new ByteArrayInputStream(rawBytes), testnet);
-                }
+    /**
+     * Decodes a hex response body with the buffer of the calling thread
+     *
+     * @param body the ASCII hex characters of the response
+     * @return the decoded {@code byte} array
+     * @throws IllegalArgumentException if the body is not hex
+     */
+    static byte[] decode(byte[] body) {
+        var decoder = decoder();
+        decoder.update(body, 0, body.length);
+        return decoder.toByteArray();
+    }
 
-                if (!tx.getId().equals(txId64)) {
-                    log.severe("Transaction ID mismatch: " + tx.getId() + " != " + txId64);
-                    return null;
-                }
-                // cache not yet fully implemented
-                if (cache != null) {
-                    cache.put(txId64, rawTx);
-                }
-            } catch (Exception e) {
-                log.severe("Error fetching transaction: " + e.getMessage());
-                return null;
-            }
-        } else {
-            rawTx = cache.get(txId64);
+    // the decoder of the calling thread, emptied for the next response
+    private static HexDecoder decoder() {
+        var decoder = decoders.get();
+        decoder.reset();
+        return decoder;
+    }
+
+    /**
+     * Parses a downloaded transaction and checks that it has the requested txid. The array is kept as the
+     * serialization of the returned transaction and must not be modified afterward.
+     *
+     * @param rawBytes the serialized transaction
+     * @param txId64 the txid as 64 hex characters
+     * @param testnet a {@code boolean}
+     * @return a {@link Tx} object
+     * @throws IllegalStateException if the txid does not match
+     */
+    static Tx parseChecked(byte[] rawBytes, String txId64, boolean testnet) {
+        var tx = Tx.parseOwned(rawBytes, testnet);
+        if (!tx.getId().equals(txId64)) {
+            throw new IllegalStateException("Transaction ID mismatch: " + tx.getId() + " != " + txId64);
         }
-        var txBytes = Bytes.hexStringToByteArray(rawTx);
-        return Tx.parse(txBytes, testnet);
+        return tx;
     }
 
     /**
-     * Saves cache to a json file
+     * Adds a downloaded transaction to the cache and the store
+     *
+     * @param txId64 the txid as 64 hex characters
+     * @param rawBytes the serialized transaction
+     */
+    static void remember(String txId64, byte[] rawBytes) {
+        cache.put(txId64, rawBytes);
+        var store = TxFetcher.store;
+        if (store != null) {
+            store.put(txId64, rawBytes);
+        }
+    }
+
+    /**
+     * Looks up a raw transaction in the cache and then in the store, a hit in the store is added to the cache
+     *
+     * @param txId64 the txid as 64 hex characters
+     * @return a {@code byte} array, or {@code null} if the transaction is not known
+     */
+    static byte[] cached(String txId64) {
+        var raw = cache.get(txId64);
+        if (raw != null) return raw;
+        var store = TxFetcher.store;
+        if (store == null) return null;
+        raw = store.get(txId64);
+        if (raw != null) {
+            cache.put(txId64, raw);
+        }
+        return raw;
+    }
+
+    /**
+     * Keeps every fetched transaction in a persistent store and looks up transactions missing in the cache there,
+     * so a restarted process does not download them again. The previous store, if any, is closed.
+     *
+     * @param path the store file, it is created if it does not exist
+     */
+    public static synchronized void useStore(Path path) {
+        closeStore();
+        store = TxStore.open(path);
+    }
+
+    /**
+     * Flushes and closes the persistent store, fetched transactions are only cached in memory afterward
+     */
+    public static synchronized void closeStore() {
+        if (store == null) return;
+        try {
+            store.flush();
+            store.close();
+        } catch (IOException e) {
+            log.warning(e.getMessage());
+        }
+        store = null;
+    }
+
+    /**
+     * Returns the in-memory cache of raw transactions
+     *
+     * @return a {@link TxCache} object
+     */
+    public static TxCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Appends the cached transactions to a {@link TxStore} file
      *
      * @param filePath a {@link String} object
      */
     public static void dumpCache(String filePath) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (Map.Entry<String, String> entry : cache.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue());
-                writer.newLine();
-            }
-        } catch (IOException e) {
+        try (var file = TxStore.open(Path.of(filePath))) {
+            cache.entries().forEach(file::put);
+            file.flush();
+        } catch (IOException | IllegalStateException e) {
             log.warning(e.getMessage());
         }
     }
 
     /**
-     * Loads cache from a json file
+     * Replaces the cached transactions with the ones of a {@link TxStore} file, as far as they fit
      *
      * @param filePath a {@link String} object
      */
     public static void loadCache(String filePath) {
         cache.clear();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 2);
-                if (parts.length == 2) {
-                    cache.put(parts[0], parts[1]);
-                }
-            }
-        } catch (IOException e) {
+        try (var file = TxStore.open(Path.of(filePath))) {
+            file.forEach(cache::put);
+        } catch (IOException | IllegalStateException e) {
             log.warning(e.getMessage());
         }
     }
@@ -16,6 +16,7 @@ public class TxIn {
     private Script scriptSig;            // variable
     private final Int sequence;          // 4 bytes
     private Script witness;
+    private Tx tx;
 
     public TxIn(Int prevTx, Int prevIndex, Script scriptSig, Int sequence) {
         this.prevTx = prevTx;
@@ -57,6 +58,25 @@ public class TxIn {
         return result.toByteArray();
     }
 
+    /**
+     * Returns the length of the serialization without witness, computed without serializing
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        // previous transaction, previous index and sequence
+        return 32 + 4 + scriptSig.size() + 4;
+    }
+
+    /**
+     * Returns the length of the serialized witness stack, a single zero byte if the input has no witness
+     *
+     * @return a {@code int}
+     */
+    public int witnessSize() {
+        return witness == null ? 1 : witness.witnessSize();
+    }
+
     /**
      * Fetches the transaction associated with this transaction input by looking up the
      * previous transaction hash.
@@ -75,8 +95,17 @@ public class TxIn {
      * @return a {@link Int} object
      */
     public Int value(boolean testnet) {
-        Tx tx = fetch(testnet);
-        return tx.getTxOuts().get((prevIndex.intValue())).amount();
+        return value(PrevoutProvider.fetcher(testnet));
+    }
+
+    /**
+     * Get the output value from the provider. Returns the amount in satoshi.
+     *
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@link Int} object
+     */
+    public Int value(PrevoutProvider prevouts) {
+        return prevouts.resolve(this).amount();
     }
 
     /**
@@ -86,8 +115,17 @@ public class TxIn {
      * @return a {@link Object} object
      */
     public Script scriptPubkey(boolean testnet) {
-        Tx tx = fetch(testnet);
-        return tx.getTxOuts().get(prevIndex.intValue()).scriptPubkey();
+        return scriptPubkey(PrevoutProvider.fetcher(testnet));
+    }
+
+    /**
+     * Get the ScriptPubKey from the provider. Returns a Script object.
+     *
+     * @param prevouts a {@link PrevoutProvider} object
+     * @return a {@link Script} object
+     */
+    public Script scriptPubkey(PrevoutProvider prevouts) {
+        return prevouts.resolve(this).scriptPubkey();
     }
 
     public Int getPrevTx() {
@@ -112,10 +150,36 @@ public class TxIn {
 
     public void setScriptSig(Script scriptSig) {
         this.scriptSig = scriptSig;
+        if (tx != null) tx.invalidateSerialization();
     }
 
     public void setWitness(Script witness) {
         this.witness = witness;
+        if (tx != null) tx.invalidateSerialization();
+    }
+
+    /**
+     * Sets the transaction this input belongs to, which is notified when a script changes
+     *
+     * @param tx a {@link Tx} object
+     */
+    void setTx(Tx tx) {
+        this.tx = tx;
+    }
+
+    Tx getTx() {
+        return tx;
+    }
+
+    /**
+     * Returns a copy of this input that belongs to no transaction yet
+     *
+     * @return a {@link TxIn} object
+     */
+    TxIn copy() {
+        var copy = new TxIn(prevTx, prevIndex, scriptSig, sequence);
+        copy.witness = witness;
+        return copy;
     }
 
     @Override
@@ -39,6 +39,16 @@ public record TxOut(Int amount, Script scriptPubkey) {
         return result.toByteArray();
     }
 
+    /**
+     * Returns the length of the serialization, computed without serializing
+     *
+     * @return a {@code int}
+     */
+    public int size() {
+        // amount and scriptPubkey
+        return 8 + scriptPubkey.size();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,111 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.utils.Helper;
+
+import java.io.ByteArrayInputStream;
+
+public record TxSize(int baseSize, int totalSize) {
+
+    public static final int WITNESS_SCALE_FACTOR = 4;
+
+    /**
+     * Measures a serialized transaction by walking over its fields, without parsing scripts or creating any
+     * objects. The stream is left positioned after the transaction, so a block can be measured transaction by
+     * transaction while it is read.
+     *
+     * @param s a {@link ByteArrayInputStream} positioned at the start of a legacy or segwit transaction
+     * @return a {@link TxSize} object
+     * @throws IllegalStateException if the stream ends within the transaction
+     */
+    public static TxSize scan(ByteArrayInputStream s) {
+        var start = s.available();
+        skip(s, 4);
+        // a zero input count is the segwit marker, followed by the flag
+        s.mark(1);
+        var segwit = s.read() == 0;
+        if (segwit) {
+            skip(s, 1);
+        } else {
+            s.reset();
+        }
+        var inputNum = readVarint(s);
+        for (long i = 0; i < inputNum; i++) {
+            // outpoint, scriptSig and sequence
+            skip(s, 36);
+            skip(s, readVarint(s));
+            skip(s, 4);
+        }
+        var outputNum = readVarint(s);
+        for (long i = 0; i < outputNum; i++) {
+            // amount and scriptPubkey
+            skip(s, 8);
+            skip(s, readVarint(s));
+        }
+        var witnessSize = 0;
+        if (segwit) {
+            var witnessStart = s.available();
+            for (long i = 0; i < inputNum; i++) {
+                var itemNum = readVarint(s);
+                for (long j = 0; j < itemNum; j++) {
+                    skip(s, readVarint(s));
+                }
+            }
+            // the marker and flag do not count towards the base size either
+            witnessSize = witnessStart - s.available() + 2;
+        }
+        skip(s, 4);
+        var totalSize = start - s.available();
+        return new TxSize(totalSize - witnessSize, totalSize);
+    }
+
+    /**
+     * Returns the size of the witness data including the segwit marker and flag
+     *
+     * @return a {@code int}
+     */
+    public int witnessSize() {
+        return totalSize - baseSize;
+    }
+
+    /**
+     * Returns the weight (BIP141), three times the base size plus the total size
+     *
+     * @return a {@code int}
+     */
+    public int weight() {
+        return baseSize * (WITNESS_SCALE_FACTOR - 1) + totalSize;
+    }
+
+    /**
+     * Returns the virtual size, the weight divided by four and rounded up
+     *
+     * @return a {@code int}
+     */
+    public int vsize() {
+        return (weight() + WITNESS_SCALE_FACTOR - 1) / WITNESS_SCALE_FACTOR;
+    }
+
+    /**
+     * Returns the fee rate in satoshi per virtual byte
+     *
+     * @param fee the fee in satoshi
+     * @return a {@code double}
+     */
+    public double feeRate(Int fee) {
+        return (double) fee.longValue() / vsize();
+    }
+
+    private static long readVarint(ByteArrayInputStream s) {
+        if (s.available() == 0) {
+            throw new IllegalStateException("Unexpected end of transaction");
+        }
+        return Helper.readVarint(s).longValue();
+    }
+
+    private static void skip(ByteArrayInputStream s, long n) {
+        if (s.skip(n) != n) {
+            throw new IllegalStateException("Unexpected end of transaction");
+        }
+    }
+}
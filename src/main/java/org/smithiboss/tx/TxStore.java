@@ -0,0 +1,192 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.utils.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+public class TxStore implements Closeable {
+
+    private static final Logger log = Logger.getLogger(TxStore.class.getSimpleName());
+
+    // txid, length and CRC32 of the transaction, little endian
+    private static final int HEADER_LENGTH = 32 + 4 + 4;
+    private static final Pattern TX_ID = Pattern.compile("[0-9a-fA-F]{64}");
+
+    private final FileChannel channel;
+    // txid to the offset of its record
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private long end = 0;
+
+    /**
+     * Opens an append only store of raw transactions and builds its index by scanning the file once. Every record
+     * is the txid, the length and the CRC32 of the transaction followed by the transaction itself. A record cut off
+     * or corrupted by a crash during a write is dropped together with everything after it.
+     * <p>
+     * Reads are thread-safe and can run in parallel, writes are serialized.
+     *
+     * @param path the file, it is created if it does not exist
+     * @return a {@link TxStore} object
+     */
+    public static TxStore open(Path path) {
+        try {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            var store = new TxStore(channel);
+            store.scan();
+            return store;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private TxStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    private void scan() throws IOException {
+        var size = channel.size();
+        var header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        var position = 0L;
+        while (position + HEADER_LENGTH <= size) {
+            header.clear();
+            readFully(header, position);
+            var txId = new byte[32];
+            header.get(0, txId);
+            var length = header.getInt(32);
+            var crc = header.getInt(36);
+            // zero bytes left by a crash read as an empty record, which is never written
+            if (length <= 0 || position + HEADER_LENGTH + length > size) break;
+            var raw = ByteBuffer.allocate(length);
+            readFully(raw, position + HEADER_LENGTH);
+            if (crc(raw.array()) != crc) break;
+            index.put(Bytes.byteArrayToHexString(txId), position);
+            position += HEADER_LENGTH + length;
+        }
+        if (position < size) {
+            log.warning(String.format("Dropping %d bytes of incomplete records at the end of the store", size - position));
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    /**
+     * Appends a raw transaction unless it is stored already
+     *
+     * @param txId the txid as 64 hex characters in either case
+     * @param raw the serialized transaction
+     * @throws IllegalArgumentException if the txid is not 64 hex characters or the transaction is empty
+     */
+    public synchronized void put(String txId, byte[] raw) {
+        if (raw.length == 0) {
+            throw new IllegalArgumentException("Empty transaction");
+        }
+        var key = key(txId);
+        if (index.containsKey(key)) return;
+        var record = ByteBuffer.allocate(HEADER_LENGTH + raw.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(Bytes.hexStringToByteArray(key));
+        record.putInt(raw.length);
+        record.putInt(crc(raw));
+        record.put(raw);
+        record.flip();
+        try {
+            var position = end;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            index.put(key, end);
+            end = position;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a raw transaction
+     *
+     * @param txId the txid as 64 hex characters in either case
+     * @return a {@code byte} array, or {@code null} if the transaction is not stored
+     */
+    public byte[] get(String txId) {
+        var position = index.get(key(txId));
+        if (position == null) return null;
+        try {
+            var length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(length, position + 32);
+            var raw = ByteBuffer.allocate(length.getInt(0));
+            readFully(raw, position + HEADER_LENGTH);
+            return raw.array();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean contains(String txId) {
+        return index.containsKey(key(txId));
+    }
+
+    /**
+     * Passes every stored transaction to the consumer
+     *
+     * @param consumer a {@link BiConsumer} of txid and raw transaction
+     */
+    public void forEach(BiConsumer<String, byte[]> consumer) {
+        for (String txId : index.keySet()) {
+            consumer.accept(txId, get(txId));
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Forces all appended transactions to the disk
+     */
+    public void flush() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the index holds lower case txids, as the scan reads them back from the file
+    private static String key(String txId) {
+        // a txid of another length would not fill the 32 bytes of its record
+        if (!TX_ID.matcher(txId).matches()) {
+            throw new IllegalArgumentException("Not a txid of 64 hex characters: " + txId);
+        }
+        return txId.toLowerCase(Locale.ROOT);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            var read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Unexpected end of store");
+        }
+    }
+
+    private static int crc(byte[] raw) {
+        var crc = new CRC32();
+        crc.update(raw);
+        return (int) crc.getValue();
+    }
+}
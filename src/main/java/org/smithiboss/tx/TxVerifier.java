@@ -0,0 +1,130 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.ecc.Int;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+public class TxVerifier {
+
+    private static final Logger log = Logger.getLogger(TxVerifier.class.getSimpleName());
+
+    // null verifies on the calling thread
+    private final ExecutorService executor;
+
+    private TxVerifier(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns a verifier that checks the inputs one after the other on the calling thread, in input order, and
+     * stops at the first invalid input. The results are deterministic, which helps debugging.
+     *
+     * @return a {@link TxVerifier} object
+     */
+    public static TxVerifier sequential() {
+        return new TxVerifier(null);
+    }
+
+    /**
+     * Returns a verifier that checks the inputs in parallel on the common work-stealing pool
+     *
+     * @return a {@link TxVerifier} object
+     */
+    public static TxVerifier parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a verifier that checks the inputs in parallel on the given executor, such as a {@link ForkJoinPool}
+     * or a virtual thread per task executor. Once an input is invalid, inputs that did not start yet are cancelled.
+     *
+     * @param executor an {@link ExecutorService}, it is not shut down by the verifier
+     * @return a {@link TxVerifier} object
+     */
+    public static TxVerifier parallel(ExecutorService executor) {
+        return new TxVerifier(executor);
+    }
+
+    /**
+     * Verifies the fee and the scripts of every input of the transaction against the resolved outputs. The
+     * signature hash cache of the transaction is built once up front and shared read only by all inputs.
+     *
+     * @param context a {@link VerificationContext} with the outputs spent by the transaction
+     * @return a {@link VerificationResult} object
+     */
+    public VerificationResult verify(VerificationContext context) {
+        var start = System.nanoTime();
+        var tx = context.getTx();
+        var count = tx.getTxIns().size();
+        var statuses = new VerificationResult.Status[count];
+        var nanos = new long[count];
+        var failed = new AtomicBoolean();
+
+        // check that the transaction is not creating coins
+        var feeValid = !context.fee().lt(Int.parse(0));
+        if (feeValid) {
+            tx.sigHashCache();
+            if (executor == null) {
+                for (int i = 0; i < count && !failed.get(); i++) {
+                    verifyInput(context, i, statuses, nanos, failed);
+                }
+            } else {
+                verifyParallel(context, statuses, nanos, failed);
+            }
+        }
+
+        var inputs = new ArrayList<VerificationResult.InputResult>(count);
+        for (int i = 0; i < count; i++) {
+            var status = statuses[i] == null ? VerificationResult.Status.CANCELLED : statuses[i];
+            inputs.add(new VerificationResult.InputResult(i, status, nanos[i]));
+        }
+        return new VerificationResult(feeValid, inputs, System.nanoTime() - start);
+    }
+
+    private void verifyParallel(VerificationContext context, VerificationResult.Status[] statuses, long[] nanos, AtomicBoolean failed) {
+        var futures = new ArrayList<Future<?>>(statuses.length);
+        for (int i = 0; i < statuses.length; i++) {
+            var index = i;
+            futures.add(executor.submit(() -> {
+                // skip the input if another one already failed
+                if (!failed.get()) verifyInput(context, index, statuses, nanos, failed);
+            }));
+        }
+        // wait for every task: once an input failed, the tasks that start later return at once, and running ones
+        // must finish before their results are read
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted while verifying", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // the arrays are written by one task per index and read after all tasks completed
+    private static void verifyInput(VerificationContext context, int index, VerificationResult.Status[] statuses,
+                                    long[] nanos, AtomicBoolean failed) {
+        var start = System.nanoTime();
+        boolean valid;
+        try {
+            valid = context.verifyInput(index);
+        } catch (RuntimeException e) {
+            // a malformed script is an invalid input
+            log.warning(String.format("Input %d failed: %s", index, e.getMessage()));
+            valid = false;
+        }
+        nanos[index] = System.nanoTime() - start;
+        statuses[index] = valid ? VerificationResult.Status.VALID : VerificationResult.Status.INVALID;
+        if (!valid) failed.set(true);
+    }
+}
@@ -0,0 +1,164 @@
+package org.smithiboss.tx;
+
+import org.smithiboss.ecc.Int;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+public class VerificationContext implements PrevoutProvider {
+
+    private final Tx tx;
+    private final TxOut[] spent;
+    private final Map<OutPoint, TxOut> snapshot;
+
+    private VerificationContext(Tx tx, TxOut[] spent, Map<OutPoint, TxOut> snapshot) {
+        this.tx = tx;
+        this.spent = spent;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Resolves every output spent by the transaction once, one after the other. The fee check, the signature
+     * hashes and the script evaluation of a verification then all read from this snapshot instead of looking up
+     * the same outputs again.
+     *
+     * @param tx the {@link Tx} to verify
+     * @param prevouts the {@link PrevoutProvider} to resolve the outputs with
+     * @return a {@link VerificationContext} object
+     * @throws IllegalStateException if an output is unknown
+     */
+    public static VerificationContext resolve(Tx tx, PrevoutProvider prevouts) {
+        var outPoints = outPoints(tx);
+        var snapshot = new HashMap<OutPoint, TxOut>();
+        for (OutPoint outPoint : outPoints) {
+            snapshot.put(outPoint, require(outPoint, prevouts.prevout(outPoint)));
+        }
+        return of(tx, snapshot);
+    }
+
+    /**
+     * Resolves every output spent by the transaction once, all lookups at the same time on the given executor.
+     * Meant for providers that block on the network, such as {@link FetcherPrevoutProvider}.
+     *
+     * @param tx the {@link Tx} to verify
+     * @param prevouts the {@link PrevoutProvider} to resolve the outputs with, it must be thread-safe
+     * @param executor the {@link Executor} to run the lookups on
+     * @return a {@link VerificationContext} object
+     * @throws IllegalStateException if an output is unknown
+     */
+    public static VerificationContext resolve(Tx tx, PrevoutProvider prevouts, Executor executor) {
+        var outPoints = outPoints(tx);
+        var futures = new ArrayList<CompletableFuture<TxOut>>(outPoints.size());
+        for (OutPoint outPoint : outPoints) {
+            futures.add(CompletableFuture.supplyAsync(() -> require(outPoint, prevouts.prevout(outPoint)), executor));
+        }
+        var snapshot = new HashMap<OutPoint, TxOut>();
+        var i = 0;
+        for (OutPoint outPoint : outPoints) {
+            try {
+                snapshot.put(outPoint, futures.get(i++).join());
+            } catch (CompletionException e) {
+                // rethrow what the lookup threw
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+        return of(tx, snapshot);
+    }
+
+    /**
+     * Resolves every output spent by the transaction once, each lookup on its own virtual thread
+     *
+     * @param tx the {@link Tx} to verify
+     * @param prevouts the {@link PrevoutProvider} to resolve the outputs with, it must be thread-safe
+     * @return a {@link VerificationContext} object
+     * @throws IllegalStateException if an output is unknown
+     */
+    public static VerificationContext resolveParallel(Tx tx, PrevoutProvider prevouts) {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            return resolve(tx, prevouts, executor);
+        }
+    }
+
+    /**
+     * Verifies the transaction against the resolved outputs
+     *
+     * @return a {@code boolean}
+     */
+    public boolean verify() {
+        return tx.verify(this);
+    }
+
+    /**
+     * Verifies one input against the resolved outputs
+     *
+     * @param inputIndex a {@code int}
+     * @return a {@code boolean}
+     */
+    public boolean verifyInput(int inputIndex) {
+        return tx.verifyInput(inputIndex, this);
+    }
+
+    /**
+     * Returns the fee, the resolved input amounts minus the output amounts
+     *
+     * @return a {@link Int} object
+     */
+    public Int fee() {
+        return tx.fee(this);
+    }
+
+    /**
+     * Returns the output spent by the input
+     *
+     * @param inputIndex a {@code int}
+     * @return a {@link TxOut} object
+     */
+    public TxOut getSpent(int inputIndex) {
+        return spent[inputIndex];
+    }
+
+    public Tx getTx() {
+        return tx;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TxOut prevout(OutPoint outPoint) {
+        return snapshot.get(outPoint);
+    }
+
+    // the distinct outpoints spent by the transaction, in input order
+    private static List<OutPoint> outPoints(Tx tx) {
+        if (tx.isCoinBase()) {
+            throw new IllegalArgumentException("A coinbase transaction spends no outputs");
+        }
+        var outPoints = new LinkedHashSet<OutPoint>();
+        for (TxIn txIn : tx.getTxIns()) {
+            outPoints.add(OutPoint.of(txIn));
+        }
+        return new ArrayList<>(outPoints);
+    }
+
+    private static TxOut require(OutPoint outPoint, TxOut txOut) {
+        if (txOut == null) {
+            throw new IllegalStateException("Unknown prevout " + outPoint);
+        }
+        return txOut;
+    }
+
+    private static VerificationContext of(Tx tx, Map<OutPoint, TxOut> snapshot) {
+        var spent = new TxOut[tx.getTxIns().size()];
+        for (int i = 0; i < spent.length; i++) {
+            spent[i] = snapshot.get(OutPoint.of(tx.getTxIns().get(i)));
+        }
+        return new VerificationContext(tx, spent, snapshot);
+    }
+}
@@ -0,0 +1,54 @@
+package org.smithiboss.tx;
+
+import java.util.List;
+
+/**
+ * Outcome of verifying a transaction with a {@link TxVerifier}
+ *
+ * @param feeValid whether the inputs are worth at least as much as the outputs
+ * @param inputs the result of every input, in input order
+ * @param nanos the time the whole verification took
+ */
+public record VerificationResult(boolean feeValid, List<InputResult> inputs, long nanos) {
+
+    public enum Status {
+        VALID,
+        INVALID,
+        // not verified because another check failed first
+        CANCELLED
+    }
+
+    /**
+     * Outcome of verifying one input
+     *
+     * @param index the index of the input
+     * @param status the {@link Status} of the input
+     * @param nanos the time the script verification took, zero if it was cancelled
+     */
+    public record InputResult(int index, Status status, long nanos) {}
+
+    /**
+     * Returns whether the fee and every input are valid
+     *
+     * @return a {@code boolean}
+     */
+    public boolean valid() {
+        if (!feeValid) return false;
+        for (InputResult input : inputs) {
+            if (input.status() != Status.VALID) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first invalid input
+     *
+     * @return a {@code int}, -1 if no input was found invalid
+     */
+    public int firstInvalidInput() {
+        for (InputResult input : inputs) {
+            if (input.status() == Status.INVALID) return input.index();
+        }
+        return -1;
+    }
+}
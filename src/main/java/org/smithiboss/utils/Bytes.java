@@ -6,9 +6,7 @@ import org.smithiboss.ecc.Int;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 public class Bytes {
 
@@ -206,20 +204,10 @@ public class Bytes {
      * @return a {@code byte} array where each element is a single bit (0 or 1)
      */
     public static byte[] bytesToBitField(byte[] someBytes) {
-        List<Byte> flagBits = new ArrayList<>();
-
-        for (byte b : someBytes) {
-            for (int i = 0; i < 8; i++) {
-                flagBits.add((byte) (b & 1));
-                b >>= 1;
-            }
+        var result = new byte[someBytes.length * 8];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) ((someBytes[i / 8] >> (i % 8)) & 1);
         }
-
-        var result = new byte[flagBits.size()];
-        for (int i = 0; i < flagBits.size(); i++) {
-            result[i] = flagBits.get(i);
-        }
-
         return result;
     }
 
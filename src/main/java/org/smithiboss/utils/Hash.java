@@ -8,6 +8,9 @@ import java.security.NoSuchAlgorithmException;
 public class Hash {
 
     public static final Int SIGHASH_ALL = Int.parse(1);
+    public static final Int SIGHASH_NONE = Int.parse(2);
+    public static final Int SIGHASH_SINGLE = Int.parse(3);
+    public static final Int SIGHASH_ANYONECANPAY = Int.parse(0x80);
 
     /**
      * Hashes the given {@code byte} array with SHA-1
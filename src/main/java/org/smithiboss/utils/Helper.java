@@ -66,6 +66,20 @@ public class Helper {
         }
     }
 
+    /**
+     * Returns the number of bytes {@link #encodeVarInt} uses for the given value, without encoding it
+     *
+     * @param i a {@code long}
+     * @return a {@code int}
+     */
+    public static int varIntSize(long i) {
+        if (i < 0) throw new IllegalArgumentException("Negative varint: " + i);
+        if (i < 0xfd) return 1;
+        else if (i < 0x10000) return 3;
+        else if (i < 0x100000000L) return 5;
+        else return 9;
+    }
+
     /**
      * Calculates the merkle parent hash with the given child hashes
      *
@@ -111,6 +125,34 @@ public class Helper {
         return currentLevel.getFirst();
     }
 
+    /**
+     * Computes every level of the merkle tree of given hashes without modifying them. The first level
+     * holds the hashes themselves and the last one holds only the merkle root.
+     *
+     * @param hashes {@link List} of {@code byte} arrays
+     * @return a {@link List} of levels, each a {@link List} of {@code byte} arrays
+     */
+    public static List<List<byte[]>> merkleLevels(List<byte[]> hashes) {
+        if (hashes.isEmpty()) throw new IllegalArgumentException("Cannot compute a merkle tree without hashes");
+
+        var levels = new ArrayList<List<byte[]>>();
+        List<byte[]> currentLevel = new ArrayList<>(hashes);
+        levels.add(currentLevel);
+
+        while (currentLevel.size() > 1) {
+            var parentLevel = new ArrayList<byte[]>((currentLevel.size() + 1) / 2);
+            for (int i = 0; i < currentLevel.size(); i += 2) {
+                var left = currentLevel.get(i);
+                // the last hash of an odd level is paired with itself
+                var right = i + 1 < currentLevel.size() ? currentLevel.get(i + 1) : left;
+                parentLevel.add(merkleParent(left, right));
+            }
+            levels.add(parentLevel);
+            currentLevel = parentLevel;
+        }
+        return levels;
+    }
+
     /**
      * Masks a string by keeping a specified number of characters at the beginning and at the end
      * and replaces the rest with a colon.
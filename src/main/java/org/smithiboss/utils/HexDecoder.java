@@ -0,0 +1,133 @@
+package org.smithiboss.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class HexDecoder {
+
+    private static final int CHUNK_SIZE = 8192;
+    // buffers grown beyond this are released on reset, so one large transaction does not pin memory
+    private static final int MAX_RETAINED = 1024 * 1024;
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < 10; i++) DIGITS['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++) {
+            DIGITS['a' + i] = (byte) (10 + i);
+            DIGITS['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final int initialCapacity;
+    private byte[] buffer;
+    private byte[] chunk = null;
+    private int length = 0;
+    // the high nibble waiting for its low nibble, or -1
+    private int pending = -1;
+    private long position = 0;
+
+    /**
+     * Constructs a decoder that turns ASCII hex into bytes as it arrives, without building a {@link String} first.
+     * The decoded bytes are written into a buffer that is reused after {@link #reset()}, so a decoder kept per
+     * thread decodes any number of transactions without allocating. Whitespace is skipped. Not thread-safe.
+     *
+     * @param initialCapacity the initial size of the buffer in bytes, it grows as needed
+     */
+    public HexDecoder(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Decodes hex characters and appends the bytes to the buffer
+     *
+     * @param chars a {@code byte} array of ASCII characters
+     * @param offset the index of the first character
+     * @param count the number of characters
+     * @throws IllegalArgumentException if a character is neither a hex digit nor whitespace
+     */
+    public void update(byte[] chars, int offset, int count) {
+        ensureCapacity(length + (count + 1) / 2);
+        for (int i = offset; i < offset + count; i++, position++) {
+            var c = chars[i];
+            var digit = c >= 0 ? DIGITS[c] : -1;
+            if (digit < 0) {
+                if (Character.isWhitespace(c)) continue;
+                throw new IllegalArgumentException("Invalid hex character at position " + position);
+            }
+            if (pending < 0) {
+                pending = digit;
+            } else {
+                buffer[length++] = (byte) ((pending << 4) | digit);
+                pending = -1;
+            }
+        }
+    }
+
+    /**
+     * Decodes a stream of hex characters until it ends
+     *
+     * @param in an {@link InputStream}, it is not closed
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if a character is neither a hex digit nor whitespace
+     */
+    public void readFrom(InputStream in) throws IOException {
+        if (chunk == null) chunk = new byte[CHUNK_SIZE];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            update(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Returns the number of decoded bytes
+     *
+     * @return a {@code int}
+     * @throws IllegalArgumentException if an odd number of hex digits was decoded
+     */
+    public int length() {
+        if (pending >= 0) {
+            throw new IllegalArgumentException("Hex string must have even length");
+        }
+        return length;
+    }
+
+    /**
+     * Returns the decoded bytes as a stream over the buffer, valid until the next {@link #reset()}
+     *
+     * @return a {@link ByteArrayInputStream} object
+     */
+    public ByteArrayInputStream stream() {
+        return new ByteArrayInputStream(buffer, 0, length());
+    }
+
+    /**
+     * Returns a copy of the decoded bytes
+     *
+     * @return a {@code byte} array
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length());
+    }
+
+    /**
+     * Empties the decoder for the next input, keeping the buffer unless it grew unusually large
+     */
+    public void reset() {
+        if (buffer.length > MAX_RETAINED) {
+            buffer = new byte[initialCapacity];
+        }
+        length = 0;
+        pending = -1;
+        position = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
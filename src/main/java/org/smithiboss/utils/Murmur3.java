@@ -12,15 +12,27 @@ public class Murmur3 {
      * @return 32-bit hash (as Java signed int)
      */
     public static int murmur3(byte[] data, int seed) {
+        return murmur3(data, 0, data.length, seed);
+    }
+
+    /**
+     * Implementation of Murmur3 x86_32 over a range of the given array, without copying it
+     *
+     * @param data input bytes
+     * @param offset index of the first byte to hash
+     * @param length number of bytes to hash
+     * @param seed 32-bit seed (unsigned behavior is achieved by & 0xffffffffL when needed)
+     * @return 32-bit hash (as Java signed int)
+     */
+    public static int murmur3(byte[] data, int offset, int length, int seed) {
         final int c1 = 0xcc9e2d51;
         final int c2 = 0x1b873593;
 
-        int length = data.length;
         int h1 = seed;
-        int roundedEnd = length & 0xfffffffc; // round down to 4 byte block
+        int roundedEnd = offset + (length & 0xfffffffc); // round down to 4 byte block
 
         // body - process 4 bytes at a time, little-endian load
-        for (int i = 0; i < roundedEnd; i += 4) {
+        for (int i = offset; i < roundedEnd; i += 4) {
             int k1 = (data[i] & 0xff)
                     | ((data[i + 1] & 0xff) << 8)
                     | ((data[i + 2] & 0xff) << 16)
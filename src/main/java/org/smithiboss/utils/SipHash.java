@@ -0,0 +1,196 @@
+package org.smithiboss.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+public class SipHash {
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long C0 = 0x736f6d6570736575L;
+    private static final long C1 = 0x646f72616e646f6dL;
+    private static final long C2 = 0x6c7967656e657261L;
+    private static final long C3 = 0x7465646279746573L;
+
+    private static final int HASH_LENGTH = 32;
+
+    private SipHash() {}
+
+    /**
+     * Implementation of SipHash-2-4 with a 128-bit key given as two 64-bit halves
+     *
+     * @param k0 the first 8 key bytes, read little endian
+     * @param k1 the last 8 key bytes, read little endian
+     * @param data input bytes
+     * @return 64-bit hash (as Java signed long)
+     */
+    public static long sipHash(long k0, long k1, byte[] data) {
+        return sipHash(k0, k1, data, 0, data.length);
+    }
+
+    /**
+     * Implementation of SipHash-2-4 over a range of the given array, without copying it
+     *
+     * @param k0 the first 8 key bytes, read little endian
+     * @param k1 the last 8 key bytes, read little endian
+     * @param data input bytes
+     * @param offset index of the first byte to hash
+     * @param length number of bytes to hash
+     * @return 64-bit hash (as Java signed long)
+     */
+    public static long sipHash(long k0, long k1, byte[] data, int offset, int length) {
+        if (length == HASH_LENGTH) return sipHash256(k0, k1, data, offset);
+
+        long v0 = C0 ^ k0;
+        long v1 = C1 ^ k1;
+        long v2 = C2 ^ k0;
+        long v3 = C3 ^ k1;
+
+        int roundedEnd = offset + (length & 0xfffffff8); // round down to 8 byte block
+
+        // body - process 8 bytes at a time, little-endian load
+        for (int i = offset; i < roundedEnd; i += 8) {
+            long m = (long) LONG_LE.get(data, i);
+            v3 ^= m;
+            // two compression rounds
+            for (int r = 0; r < 2; r++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+
+        // tail - the remaining bytes with the length in the most significant byte
+        long m = ((long) length) << 56;
+        for (int j = (length & 7) - 1; j >= 0; j--) {
+            m |= (data[roundedEnd + j] & 0xffL) << (8 * j);
+        }
+        v3 ^= m;
+        for (int r = 0; r < 2; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= m;
+
+        // finalization - four rounds
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * SipHash-2-4 of a 32-byte hash such as a txid. With the length known, the four words are loaded
+     * directly and the tail block is the constant {@code 32 << 56}.
+     *
+     * @param k0 the first 8 key bytes, read little endian
+     * @param k1 the last 8 key bytes, read little endian
+     * @param hash input bytes
+     * @param offset index of the first of the 32 bytes
+     * @return 64-bit hash (as Java signed long)
+     */
+    public static long sipHash256(long k0, long k1, byte[] hash, int offset) {
+        return sipHash256State(C0 ^ k0, C1 ^ k1, C2 ^ k0, C3 ^ k1, hash, offset);
+    }
+
+    /**
+     * Hashes many 32-byte hashes under one key. The keyed initial state is computed once for the whole batch.
+     *
+     * @param k0 the first 8 key bytes, read little endian
+     * @param k1 the last 8 key bytes, read little endian
+     * @param hashes the hashes, 32 bytes each, one after the other
+     * @param out receives one hash per 32 input bytes, its length is the number of hashes to process
+     */
+    public static void sipHash256(long k0, long k1, byte[] hashes, long[] out) {
+        if (hashes.length < out.length * HASH_LENGTH) {
+            throw new IllegalArgumentException("Expected " + out.length + " hashes, got " + hashes.length + " bytes");
+        }
+        long s0 = C0 ^ k0;
+        long s1 = C1 ^ k1;
+        long s2 = C2 ^ k0;
+        long s3 = C3 ^ k1;
+        for (int i = 0; i < out.length; i++) {
+            out[i] = sipHash256State(s0, s1, s2, s3, hashes, i * HASH_LENGTH);
+        }
+    }
+
+    /**
+     * Hashes many 32-byte hashes under one key
+     *
+     * @param k0 the first 8 key bytes, read little endian
+     * @param k1 the last 8 key bytes, read little endian
+     * @param hashes the hashes, 32 bytes each
+     * @return one hash per input hash
+     */
+    public static long[] sipHash256(long k0, long k1, byte[][] hashes) {
+        long s0 = C0 ^ k0;
+        long s1 = C1 ^ k1;
+        long s2 = C2 ^ k0;
+        long s3 = C3 ^ k1;
+        var result = new long[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i].length != HASH_LENGTH) {
+                throw new IllegalArgumentException("Expected a 32 byte hash at " + i + ", got " + hashes[i].length + " bytes");
+            }
+            result[i] = sipHash256State(s0, s1, s2, s3, hashes[i], 0);
+        }
+        return result;
+    }
+
+    private static long sipHash256State(long v0, long v1, long v2, long v3, byte[] hash, int offset) {
+        // four message words, each with two compression rounds
+        for (int i = 0; i < HASH_LENGTH; i += 8) {
+            long m = (long) LONG_LE.get(hash, offset + i);
+            v3 ^= m;
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+        }
+        // the tail block only holds the length
+        long m = ((long) HASH_LENGTH) << 56;
+        v3 ^= m;
+        for (int r = 0; r < 2; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= m;
+
+        // finalization - four rounds
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * Reads 8 bytes as a little endian {@code long}, used to split a 16 byte key into its halves
+     *
+     * @param bytes a {@code byte} array
+     * @param offset index of the first byte
+     * @return a {@code long}
+     */
+    public static long readLongLittleEndian(byte[] bytes, int offset) {
+        return (long) LONG_LE.get(bytes, offset);
+    }
+}
@@ -0,0 +1,10 @@
+package org.smithiboss.utxo;
+
+import java.util.List;
+
+/**
+ * What connecting a block removed from the UTXO set, needed to disconnect it again
+ *
+ * @param spent the outputs spent by the inputs of the block, in the order the inputs spend them
+ */
+public record BlockUndo(List<UtxoEntry> spent) {}
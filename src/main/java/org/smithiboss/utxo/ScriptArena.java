@@ -0,0 +1,63 @@
+package org.smithiboss.utxo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage for the scripts of a {@link UtxoSet}. Scripts are appended to direct buffers and addressed by
+ * the buffer index in the upper and the position in the lower 32 bits of a {@code long}. Space of removed scripts
+ * is only reclaimed by copying the live ones into a new arena. Not thread-safe.
+ */
+class ScriptArena {
+
+    static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current = null;
+    private long capacity = 0;
+    private long liveBytes = 0;
+
+    /**
+     * Appends a script
+     *
+     * @param script a {@code byte} array
+     * @return the address of the script
+     */
+    long append(byte[] script) {
+        if (current == null || current.remaining() < script.length) {
+            // a script larger than a chunk gets a chunk of its own
+            current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, script.length));
+            chunks.add(current);
+            capacity += current.capacity();
+        }
+        var address = ((long) (chunks.size() - 1) << 32) | current.position();
+        current.put(script);
+        liveBytes += script.length;
+        return address;
+    }
+
+    byte[] get(long address, int length) {
+        var script = new byte[length];
+        chunks.get((int) (address >>> 32)).get((int) address, script);
+        return script;
+    }
+
+    /**
+     * Marks the script as no longer used
+     */
+    void release(int length) {
+        liveBytes -= length;
+    }
+
+    /**
+     * Returns whether most of the arena is taken by removed scripts
+     */
+    boolean isFragmented() {
+        return capacity > CHUNK_SIZE && liveBytes < capacity / 2;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+}
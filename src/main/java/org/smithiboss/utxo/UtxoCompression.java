@@ -0,0 +1,197 @@
+package org.smithiboss.utxo;
+
+import org.smithiboss.ecc.S256Point;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The compact encodings Bitcoin Core uses for unspent outputs in its chainstate and UTXO snapshots
+ * (compressor.cpp and the VARINT of serialize.h)
+ */
+public class UtxoCompression {
+
+    // scripts with a special encoding, every other script is stored with its size plus this
+    private static final int SPECIAL_SCRIPTS = 6;
+
+    private UtxoCompression() {}
+
+    /**
+     * Compresses an amount: trailing decimal zeros are moved into the lowest digit, so round amounts take one or
+     * two bytes as VARINT
+     *
+     * @param amount the amount in satoshi
+     * @return the compressed amount
+     */
+    public static long compressAmount(long amount) {
+        if (amount == 0) return 0;
+        var exponent = 0;
+        while (amount % 10 == 0 && exponent < 9) {
+            amount /= 10;
+            exponent++;
+        }
+        if (exponent < 9) {
+            var lastDigit = amount % 10;
+            amount /= 10;
+            return 1 + (amount * 9 + lastDigit - 1) * 10 + exponent;
+        }
+        return 1 + (amount - 1) * 10 + 9;
+    }
+
+    /**
+     * Reverts {@link #compressAmount(long)}
+     *
+     * @param x the compressed amount
+     * @return the amount in satoshi
+     */
+    public static long decompressAmount(long x) {
+        if (x == 0) return 0;
+        x--;
+        var exponent = (int) (x % 10);
+        x /= 10;
+        long amount;
+        if (exponent < 9) {
+            var lastDigit = x % 9 + 1;
+            x /= 9;
+            amount = x * 10 + lastDigit;
+        } else {
+            amount = x + 1;
+        }
+        while (exponent > 0) {
+            amount *= 10;
+            exponent--;
+        }
+        return amount;
+    }
+
+    /**
+     * Writes a script in compressed form. Pay-to-pubkey-hash and pay-to-script-hash scripts are stored as their
+     * hash and pay-to-pubkey scripts as the x coordinate of the key, each behind a one byte type. Any other script
+     * is stored as its size plus six as VARINT followed by the script.
+     *
+     * @param script the raw script pubkey
+     * @param out the {@link ByteArrayOutputStream} to write to
+     */
+    public static void writeScript(byte[] script, ByteArrayOutputStream out) {
+        var length = script.length;
+        if (length == 25 && script[0] == 0x76 && script[1] == (byte) 0xa9 && script[2] == 20
+                && script[23] == (byte) 0x88 && script[24] == (byte) 0xac) {
+            // OP_DUP OP_HASH160 <20 bytes> OP_EQUALVERIFY OP_CHECKSIG
+            out.write(0);
+            out.write(script, 3, 20);
+        } else if (length == 23 && script[0] == (byte) 0xa9 && script[1] == 20 && script[22] == (byte) 0x87) {
+            // OP_HASH160 <20 bytes> OP_EQUAL
+            out.write(1);
+            out.write(script, 2, 20);
+        } else if (length == 35 && script[0] == 33 && script[34] == (byte) 0xac && (script[1] == 2 || script[1] == 3)) {
+            // <compressed pubkey> OP_CHECKSIG
+            out.write(script[1]);
+            out.write(script, 2, 32);
+        } else if (length == 67 && script[0] == 65 && script[66] == (byte) 0xac && script[1] == 4 && isOnCurve(script)) {
+            // <uncompressed pubkey> OP_CHECKSIG, the parity of y selects the type
+            out.write(4 | (script[65] & 1));
+            out.write(script, 2, 32);
+        } else {
+            writeVarInt(length + SPECIAL_SCRIPTS, out);
+            out.writeBytes(script);
+        }
+    }
+
+    /**
+     * Reads a script written by {@link #writeScript(byte[], ByteArrayOutputStream)}
+     *
+     * @param in a {@link ByteBuffer} positioned at the script, it is left after it
+     * @return the raw script pubkey
+     */
+    public static byte[] readScript(ByteBuffer in) {
+        var type = readVarInt(in);
+        if (type == 0) {
+            var script = new byte[25];
+            script[0] = 0x76;
+            script[1] = (byte) 0xa9;
+            script[2] = 20;
+            in.get(script, 3, 20);
+            script[23] = (byte) 0x88;
+            script[24] = (byte) 0xac;
+            return script;
+        } else if (type == 1) {
+            var script = new byte[23];
+            script[0] = (byte) 0xa9;
+            script[1] = 20;
+            in.get(script, 2, 20);
+            script[22] = (byte) 0x87;
+            return script;
+        } else if (type == 2 || type == 3) {
+            var script = new byte[35];
+            script[0] = 33;
+            script[1] = (byte) type;
+            in.get(script, 2, 32);
+            script[34] = (byte) 0xac;
+            return script;
+        } else if (type == 4 || type == 5) {
+            // recover y from x and its parity
+            var compressed = new byte[33];
+            compressed[0] = (byte) (type - 2);
+            in.get(compressed, 1, 32);
+            var script = new byte[67];
+            script[0] = 65;
+            System.arraycopy(S256Point.parse(compressed).sec(false), 0, script, 1, 65);
+            script[66] = (byte) 0xac;
+            return script;
+        }
+        var script = new byte[(int) (type - SPECIAL_SCRIPTS)];
+        in.get(script);
+        return script;
+    }
+
+    /**
+     * Writes a VARINT as Bitcoin Core does for its own data: big endian groups of seven bits with the high bit
+     * set on all but the last, every group but the last minus one so that each number has exactly one encoding
+     *
+     * @param n a non-negative {@code long}
+     * @param out the {@link ByteArrayOutputStream} to write to
+     */
+    public static void writeVarInt(long n, ByteArrayOutputStream out) {
+        var tmp = new byte[10];
+        var length = 0;
+        while (true) {
+            tmp[length] = (byte) ((n & 0x7f) | (length > 0 ? 0x80 : 0));
+            if (n <= 0x7f) break;
+            n = (n >>> 7) - 1;
+            length++;
+        }
+        do {
+            out.write(tmp[length]);
+        } while (length-- > 0);
+    }
+
+    /**
+     * Reads a VARINT written by {@link #writeVarInt(long, ByteArrayOutputStream)}
+     *
+     * @param in a {@link ByteBuffer} positioned at the number, it is left after it
+     * @return a {@code long}
+     * @throws IllegalStateException if the number does not fit in 63 bits
+     */
+    public static long readVarInt(ByteBuffer in) {
+        long n = 0;
+        while (true) {
+            if (n > (Long.MAX_VALUE >>> 7)) {
+                throw new IllegalStateException("VARINT too large");
+            }
+            var b = in.get();
+            n = (n << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) return n;
+            n++;
+        }
+    }
+
+    private static boolean isOnCurve(byte[] script) {
+        try {
+            S256Point.parse(Arrays.copyOfRange(script, 1, 66));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.smithiboss.utxo;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Helper;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+/**
+ * An unspent output as the UTXO set keeps it
+ *
+ * @param amount the amount in satoshi
+ * @param scriptPubkey the raw script pubkey, without its length
+ * @param height the height of the block that created the output
+ * @param coinbase whether the output was created by a coinbase transaction
+ */
+public record UtxoEntry(long amount, byte[] scriptPubkey, int height, boolean coinbase) {
+
+    // scripts longer than this can never be spent (MAX_SCRIPT_SIZE in Bitcoin Core)
+    public static final int MAX_SCRIPT_SIZE = 10000;
+    private static final byte OP_RETURN = 0x6a;
+
+    /**
+     * Creates the entry of an output
+     *
+     * @param txOut a {@link TxOut} object
+     * @param height the height of the block containing the transaction
+     * @param coinbase whether the transaction is a coinbase transaction
+     * @return a {@link UtxoEntry} object
+     */
+    public static UtxoEntry of(TxOut txOut, int height, boolean coinbase) {
+        return new UtxoEntry(txOut.amount().longValue(), txOut.scriptPubkey().rawSerialize(), height, coinbase);
+    }
+
+    /**
+     * Returns whether the output can never be spent, an {@code OP_RETURN} output or one with an oversized script.
+     * Such outputs are not added to the UTXO set.
+     *
+     * @return a {@code boolean}
+     */
+    public boolean isUnspendable() {
+        return isUnspendable(scriptPubkey);
+    }
+
+    static boolean isUnspendable(byte[] scriptPubkey) {
+        return (scriptPubkey.length > 0 && scriptPubkey[0] == OP_RETURN) || scriptPubkey.length > MAX_SCRIPT_SIZE;
+    }
+
+    /**
+     * Returns the output with the script parsed
+     *
+     * @return a {@link TxOut} object
+     */
+    public TxOut toTxOut() {
+        var serialized = Bytes.concat(Helper.encodeVarInt(Int.parse(scriptPubkey.length)), scriptPubkey);
+        return new TxOut(Int.parse(amount), Script.parse(new ByteArrayInputStream(serialized)));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UtxoEntry other)) return false;
+        return amount == other.amount && height == other.height && coinbase == other.coinbase
+                && Arrays.equals(scriptPubkey, other.scriptPubkey);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * Long.hashCode(amount) + height) + Boolean.hashCode(coinbase)) + Arrays.hashCode(scriptPubkey);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return amount + ":" + Bytes.byteArrayToHexString(scriptPubkey) + "@" + height + (coinbase ? " coinbase" : "");
+    }
+}
@@ -0,0 +1,531 @@
+package org.smithiboss.utxo;
+
+import org.smithiboss.tx.OutPoint;
+import org.smithiboss.tx.PrevoutProvider;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.tx.TxIn;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.SipHash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+public class UtxoSet implements PrevoutProvider {
+
+    // txid in internal byte order and output index, little endian
+    static final int KEY_LENGTH = 32 + 4;
+    // key, flags, height, script length, amount and script address
+    private static final int SLOT_SIZE = 64;
+    private static final int FLAGS = 36;
+    private static final int HEIGHT = 40;
+    private static final int SCRIPT_LENGTH = 44;
+    private static final int AMOUNT = 48;
+    private static final int SCRIPT_ADDRESS = 56;
+    private static final byte OCCUPIED = 1;
+    private static final byte COINBASE = 2;
+    // 2 MiB per page, so a table of tens of millions of slots does not need one huge buffer
+    private static final int PAGE_SHIFT = 15;
+    private static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // random key of the slot hash, so nobody can craft outpoints that collide
+    private final long k0;
+    private final long k1;
+    private ByteBuffer[] pages;
+    private int mask;
+    private int size = 0;
+    private ScriptArena arena = new ScriptArena();
+
+    /**
+     * Constructs an empty UTXO set with room for a million outputs before it grows
+     */
+    public UtxoSet() {
+        this(1 << 20);
+    }
+
+    /**
+     * Constructs an empty UTXO set. Entries are kept off the Java heap: the outpoint, amount, height and coinbase
+     * flag of every output in a slot of an open addressing hash table with linear probing made of direct buffers,
+     * and the script in an append only arena of direct buffers. The garbage collector only sees a few hundred
+     * buffer objects no matter how many outputs the set holds. Removing an entry shifts the following entries of
+     * its probe sequence back, so the table never fills up with deleted slots.
+     * <p>
+     * Reads can run in parallel, writes are exclusive.
+     *
+     * @param expectedSize the number of outputs the set is sized for, it grows beyond that as needed
+     */
+    public UtxoSet(int expectedSize) {
+        var random = new SecureRandom();
+        this.k0 = random.nextLong();
+        this.k1 = random.nextLong();
+        var capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the unspent output
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @return a {@link UtxoEntry} object, or {@code null} if the output is unknown or spent
+     */
+    public UtxoEntry get(OutPoint outPoint) {
+        return get(key(outPoint));
+    }
+
+    /**
+     * Returns the unspent output
+     *
+     * @param key the txid in internal byte order followed by the output index, little endian
+     * @return a {@link UtxoEntry} object, or {@code null} if the output is unknown or spent
+     */
+    public UtxoEntry get(byte[] key) {
+        lock.readLock().lock();
+        try {
+            var slot = find(key);
+            return slot < 0 ? null : read(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(OutPoint outPoint) {
+        return get(key(outPoint)) != null;
+    }
+
+    /**
+     * Adds an unspent output or replaces the entry of the outpoint
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @param entry a {@link UtxoEntry} object
+     */
+    public void put(OutPoint outPoint, UtxoEntry entry) {
+        put(key(outPoint), entry);
+    }
+
+    /**
+     * Adds an unspent output or replaces the entry of the outpoint
+     *
+     * @param key the txid in internal byte order followed by the output index, little endian
+     * @param entry a {@link UtxoEntry} object
+     */
+    public void put(byte[] key, UtxoEntry entry) {
+        lock.writeLock().lock();
+        try {
+            insert(key, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an unspent output
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @return the removed {@link UtxoEntry}, or {@code null} if the output is unknown or spent
+     */
+    public UtxoEntry remove(OutPoint outPoint) {
+        return remove(key(outPoint));
+    }
+
+    /**
+     * Removes an unspent output
+     *
+     * @param key the txid in internal byte order followed by the output index, little endian
+     * @return the removed {@link UtxoEntry}, or {@code null} if the output is unknown or spent
+     */
+    public UtxoEntry remove(byte[] key) {
+        lock.writeLock().lock();
+        try {
+            var entry = delete(key);
+            compactIfFragmented();
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the transactions of a block in order: the outputs spent by every input are removed and the outputs
+     * of every transaction are added, except for unspendable ones. Outputs created earlier in the block can be
+     * spent by later transactions. The outputs are serialized before the set is changed, and if an input spends
+     * an unknown output, everything done so far is undone, so a block that fails leaves the set as it was.
+     *
+     * @param txs the transactions of the block, coinbase first
+     * @param height the height of the block
+     * @return the {@link BlockUndo} to disconnect the block with
+     * @throws IllegalStateException if an input spends an output that is not in the set, or the script of an
+     *         output cannot be serialized
+     */
+    public BlockUndo connectBlock(List<Tx> txs, int height) {
+        // whatever can fail on a malformed transaction is done before the set is changed
+        var txIds = new ArrayList<byte[]>(txs.size());
+        var created = new ArrayList<List<UtxoEntry>>(txs.size());
+        for (Tx tx : txs) {
+            txIds.add(Bytes.reverseOrder(tx.hash()));
+            var entries = new ArrayList<UtxoEntry>(tx.getTxOuts().size());
+            for (TxOut txOut : tx.getTxOuts()) {
+                entries.add(UtxoEntry.of(txOut, height, tx.isCoinBase()));
+            }
+            created.add(entries);
+        }
+        var spent = new ArrayList<UtxoEntry>();
+        lock.writeLock().lock();
+        try {
+            for (int t = 0; t < txs.size(); t++) {
+                var tx = txs.get(t);
+                if (!tx.isCoinBase()) {
+                    var spentBefore = spent.size();
+                    for (TxIn txIn : tx.getTxIns()) {
+                        var entry = delete(key(txIn));
+                        if (entry == null) {
+                            // put back what this transaction spent, then undo the transactions before it
+                            restore(tx, spent.subList(spentBefore, spent.size()));
+                            disconnect(txs.subList(0, t), spent.subList(0, spentBefore));
+                            throw new IllegalStateException("Missing or spent prevout " + OutPoint.of(txIn));
+                        }
+                        spent.add(entry);
+                    }
+                }
+                var entries = created.get(t);
+                for (int i = 0; i < entries.size(); i++) {
+                    if (!entries.get(i).isUnspendable()) {
+                        insert(key(txIds.get(t), i), entries.get(i));
+                    }
+                }
+            }
+            compactIfFragmented();
+            return new BlockUndo(spent);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reverts {@link #connectBlock(List, int)}: the outputs of the transactions are removed and the outputs they
+     * spent are restored, in reverse order
+     *
+     * @param txs the transactions of the block, coinbase first
+     * @param undo the {@link BlockUndo} returned when the block was connected
+     * @return {@code false} if an output of the block was missing, the set was not in the state after the block
+     * @throws IllegalArgumentException if the undo data does not match the inputs of the block
+     */
+    public boolean disconnectBlock(List<Tx> txs, BlockUndo undo) {
+        var inputs = 0;
+        for (Tx tx : txs) {
+            if (!tx.isCoinBase()) inputs += tx.getTxIns().size();
+        }
+        if (inputs != undo.spent().size()) {
+            throw new IllegalArgumentException("Undo data has " + undo.spent().size() + " outputs for " + inputs + " inputs");
+        }
+        lock.writeLock().lock();
+        try {
+            return disconnect(txs, undo.spent());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Calls the consumer with every unspent output, in no particular order. The set must not be changed by the
+     * consumer.
+     *
+     * @param consumer receives the key, the txid in internal byte order followed by the output index, and the entry
+     */
+    public void forEach(BiConsumer<byte[], UtxoEntry> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot <= mask; slot++) {
+                if (occupied(slot)) {
+                    consumer.accept(readKey(slot), read(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calls the consumer with every unspent output ordered by {@link #prefix(byte[])}, the order of a snapshot.
+     * Outputs with the same prefix come in no particular order.
+     */
+    void forEachSorted(BiConsumer<byte[], UtxoEntry> consumer) {
+        lock.readLock().lock();
+        try {
+            var order = new long[size];
+            var n = 0;
+            for (int slot = 0; slot <= mask; slot++) {
+                if (!occupied(slot)) continue;
+                // the prefix with its sign bit flipped sorts as unsigned in the upper half, the slot in the lower
+                var prefix = Integer.reverseBytes(page(slot).getInt(offset(slot)));
+                order[n++] = ((long) (prefix ^ Integer.MIN_VALUE) << 32) | slot;
+            }
+            Arrays.sort(order);
+            for (long sortKey : order) {
+                var slot = (int) sortKey;
+                consumer.accept(readKey(slot), read(slot));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TxOut prevout(OutPoint outPoint) {
+        var entry = get(outPoint);
+        return entry == null ? null : entry.toTxOut();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the memory held off the heap by the table and the scripts
+     *
+     * @return the number of bytes
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) pages.length * pages[0].capacity() + arena.getCapacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all entries and releases the memory they took
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            allocate(MIN_CAPACITY);
+            arena = new ScriptArena();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the key of an outpoint, the txid in internal byte order followed by the output index, little endian
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @return a {@code byte} array
+     */
+    public static byte[] key(OutPoint outPoint) {
+        return key(outPoint.txId().toBytesLittleEndian(32), outPoint.index());
+    }
+
+    /**
+     * Returns the first four bytes of the key as an unsigned number, snapshots are sorted by it
+     *
+     * @param key the txid in internal byte order followed by the output index
+     * @return a {@code long}
+     */
+    static long prefix(byte[] key) {
+        return (key[0] & 0xffL) << 24 | (key[1] & 0xff) << 16 | (key[2] & 0xff) << 8 | (key[3] & 0xff);
+    }
+
+    private static byte[] key(TxIn txIn) {
+        return key(txIn.getPrevTx().toBytesLittleEndian(32), txIn.getPrevIndex().intValue());
+    }
+
+    private static byte[] key(byte[] txId, int index) {
+        var key = new byte[KEY_LENGTH];
+        System.arraycopy(txId, 0, key, 0, 32);
+        key[32] = (byte) index;
+        key[33] = (byte) (index >> 8);
+        key[34] = (byte) (index >> 16);
+        key[35] = (byte) (index >> 24);
+        return key;
+    }
+
+    /**
+     * Puts the outputs spent by the inputs of the transaction back, as many as given
+     */
+    private void restore(Tx tx, List<UtxoEntry> spent) {
+        for (int i = 0; i < spent.size(); i++) {
+            insert(key(tx.getTxIns().get(i)), spent.get(i));
+        }
+    }
+
+    private boolean disconnect(List<Tx> txs, List<UtxoEntry> spent) {
+        var clean = true;
+        var next = spent.size();
+        for (int t = txs.size() - 1; t >= 0; t--) {
+            var tx = txs.get(t);
+            var txId = Bytes.reverseOrder(tx.hash());
+            for (int i = 0; i < tx.getTxOuts().size(); i++) {
+                var script = tx.getTxOuts().get(i).scriptPubkey().rawSerialize();
+                if (!UtxoEntry.isUnspendable(script) && delete(key(txId, i)) == null) {
+                    clean = false;
+                }
+            }
+            if (!tx.isCoinBase()) {
+                next -= tx.getTxIns().size();
+                restore(tx, spent.subList(next, next + tx.getTxIns().size()));
+            }
+        }
+        return clean;
+    }
+
+    private void allocate(int capacity) {
+        var pageSlots = Math.min(capacity, PAGE_SLOTS);
+        pages = new ByteBuffer[capacity / pageSlots];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = ByteBuffer.allocateDirect(pageSlots * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mask = capacity - 1;
+    }
+
+    private ByteBuffer page(int slot) {
+        return pages[slot >>> PAGE_SHIFT];
+    }
+
+    private static int offset(int slot) {
+        return (slot & (PAGE_SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    private boolean occupied(int slot) {
+        return (page(slot).get(offset(slot) + FLAGS) & OCCUPIED) != 0;
+    }
+
+    private int home(byte[] key) {
+        return (int) SipHash.sipHash(k0, k1, key, 0, KEY_LENGTH) & mask;
+    }
+
+    /**
+     * Returns the slot holding the key, or the complement of the empty slot where it would go
+     */
+    private int find(byte[] key) {
+        var key0 = SipHash.readLongLittleEndian(key, 0);
+        var key1 = SipHash.readLongLittleEndian(key, 8);
+        var key2 = SipHash.readLongLittleEndian(key, 16);
+        var key3 = SipHash.readLongLittleEndian(key, 24);
+        var index = (key[32] & 0xff) | (key[33] & 0xff) << 8 | (key[34] & 0xff) << 16 | (key[35] & 0xff) << 24;
+        var slot = home(key);
+        while (occupied(slot)) {
+            var page = page(slot);
+            var offset = offset(slot);
+            if (page.getLong(offset) == key0 && page.getLong(offset + 8) == key1 && page.getLong(offset + 16) == key2
+                    && page.getLong(offset + 24) == key3 && page.getInt(offset + 32) == index) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    private void insert(byte[] key, UtxoEntry entry) {
+        var slot = find(key);
+        if (slot >= 0) {
+            arena.release(page(slot).getInt(offset(slot) + SCRIPT_LENGTH));
+        } else {
+            if ((size + 1) > (mask + 1) * 3L / 4 && mask + 1 < MAX_CAPACITY) {
+                grow();
+                slot = find(key);
+            }
+            slot = ~slot;
+            size++;
+        }
+        var page = page(slot);
+        var offset = offset(slot);
+        page.put(offset, key);
+        page.put(offset + FLAGS, (byte) (OCCUPIED | (entry.coinbase() ? COINBASE : 0)));
+        page.putInt(offset + HEIGHT, entry.height());
+        page.putInt(offset + SCRIPT_LENGTH, entry.scriptPubkey().length);
+        page.putLong(offset + AMOUNT, entry.amount());
+        page.putLong(offset + SCRIPT_ADDRESS, arena.append(entry.scriptPubkey()));
+    }
+
+    private UtxoEntry delete(byte[] key) {
+        var slot = find(key);
+        if (slot < 0) return null;
+        var entry = read(slot);
+        arena.release(entry.scriptPubkey().length);
+        size--;
+        // move every following entry of the probe sequence that may live in the hole into it
+        var hole = slot;
+        var next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (!occupied(next)) break;
+            var home = home(readKey(next));
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                page(hole).put(offset(hole), page(next), offset(next), SLOT_SIZE);
+                hole = next;
+            }
+        }
+        page(hole).put(offset(hole) + FLAGS, (byte) 0);
+        return entry;
+    }
+
+    private byte[] readKey(int slot) {
+        var key = new byte[KEY_LENGTH];
+        page(slot).get(offset(slot), key);
+        return key;
+    }
+
+    private UtxoEntry read(int slot) {
+        var page = page(slot);
+        var offset = offset(slot);
+        var flags = page.get(offset + FLAGS);
+        var script = arena.get(page.getLong(offset + SCRIPT_ADDRESS), page.getInt(offset + SCRIPT_LENGTH));
+        return new UtxoEntry(page.getLong(offset + AMOUNT), script, page.getInt(offset + HEIGHT), (flags & COINBASE) != 0);
+    }
+
+    /**
+     * Doubles the table and inserts every entry again, the scripts stay where they are
+     */
+    private void grow() {
+        var oldPages = pages;
+        var oldCapacity = mask + 1;
+        allocate(oldCapacity * 2);
+        var pageSlots = Math.min(oldCapacity, PAGE_SLOTS);
+        for (ByteBuffer oldPage : oldPages) {
+            for (int offset = 0; offset < pageSlots * SLOT_SIZE; offset += SLOT_SIZE) {
+                if ((oldPage.get(offset + FLAGS) & OCCUPIED) == 0) continue;
+                var key = new byte[KEY_LENGTH];
+                oldPage.get(offset, key);
+                var slot = ~find(key);
+                page(slot).put(offset(slot), oldPage, offset, SLOT_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Copies the live scripts into a new arena once removed ones take most of the space
+     */
+    private void compactIfFragmented() {
+        if (!arena.isFragmented()) return;
+        var compacted = new ScriptArena();
+        for (int slot = 0; slot <= mask; slot++) {
+            if (!occupied(slot)) continue;
+            var page = page(slot);
+            var offset = offset(slot);
+            var script = arena.get(page.getLong(offset + SCRIPT_ADDRESS), page.getInt(offset + SCRIPT_LENGTH));
+            page.putLong(offset + SCRIPT_ADDRESS, compacted.append(script));
+        }
+        arena = compacted;
+    }
+}
@@ -0,0 +1,548 @@
+package org.smithiboss.utxo;
+
+import org.smithiboss.tx.OutPoint;
+import org.smithiboss.tx.PrevoutProvider;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class UtxoSnapshot implements PrevoutProvider {
+
+    private static final byte[] MAGIC = {'U', 'T', 'X', 'S'};
+    private static final byte VERSION = 1;
+    private static final byte SNAPSHOT = 0;
+    private static final byte DIFF = 1;
+    // magic, version, kind, two reserved bytes, height and the checksum of the base snapshot of a diff
+    private static final int HEADER_LENGTH = 4 + 1 + 1 + 2 + 4 + 32;
+    // record count, index offset, index length and the SHA-256 of everything before the checksum
+    private static final int TRAILER_LENGTH = 8 + 8 + 4 + 32;
+    // every that many records of a snapshot are indexed by prefix and offset
+    private static final int INDEX_INTERVAL = 256;
+    private static final int INDEX_ENTRY_LENGTH = 4 + 8;
+    private static final byte REMOVE = 0;
+    private static final byte ADD = 1;
+    // a mapping covers this much of the file plus an overlap larger than any record, so no record is split
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int OVERLAP = 64 * 1024;
+
+    private final ByteBuffer[] segments;
+    private final long fileSize;
+    private final boolean diff;
+    private final int height;
+    private final byte[] base;
+    private final long count;
+    private final long indexOffset;
+    // prefix and offset of every indexed record, the prefixes compare unsigned
+    private final int[] indexPrefixes;
+    private final long[] indexOffsets;
+    private final byte[] checksum;
+
+    private UtxoSnapshot(ByteBuffer[] segments, long fileSize) {
+        this.segments = segments;
+        this.fileSize = fileSize;
+        var header = at(0);
+        var magic = new byte[4];
+        header.get(magic);
+        if (!Arrays.equals(MAGIC, magic) || header.get() != VERSION) {
+            throw new IllegalStateException("Not a UTXO snapshot");
+        }
+        this.diff = header.get() == DIFF;
+        header.getShort();
+        this.height = header.getInt();
+        this.base = new byte[32];
+        header.get(base);
+
+        var trailer = at(fileSize - TRAILER_LENGTH);
+        this.count = trailer.getLong();
+        this.indexOffset = trailer.getLong();
+        var indexLength = trailer.getInt();
+        this.checksum = new byte[32];
+        trailer.get(checksum);
+        if (indexOffset < HEADER_LENGTH || indexOffset + (long) indexLength * INDEX_ENTRY_LENGTH != fileSize - TRAILER_LENGTH) {
+            throw new IllegalStateException("Corrupt UTXO snapshot trailer");
+        }
+        this.indexPrefixes = new int[indexLength];
+        this.indexOffsets = new long[indexLength];
+        for (int i = 0; i < indexLength; i++) {
+            var entry = at(indexOffset + (long) i * INDEX_ENTRY_LENGTH);
+            indexPrefixes[i] = entry.getInt();
+            indexOffsets[i] = entry.getLong();
+        }
+    }
+
+    /**
+     * Maps a snapshot or diff file into memory. Only the header, the trailer and the small index are read here,
+     * records are paged in by the operating system as they are accessed, so {@link #get(OutPoint)} can serve
+     * lookups right away, for example while {@link #loadInto(UtxoSet)} runs on another thread. The checksum is
+     * only checked by {@link #verify()} and {@link #loadInto(UtxoSet)}.
+     * <p>
+     * A snapshot is read only and can be shared by threads.
+     *
+     * @param path the file
+     * @return a {@link UtxoSnapshot} object
+     * @throws IllegalStateException if the file cannot be read or is not a snapshot
+     */
+    public static UtxoSnapshot open(Path path) {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size < HEADER_LENGTH + TRAILER_LENGTH) {
+                throw new IllegalStateException("Not a UTXO snapshot: " + path);
+            }
+            var segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                var start = i * SEGMENT_SIZE;
+                var length = Math.min(SEGMENT_SIZE + OVERLAP, size - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new UtxoSnapshot(segments, size);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes every output of the set to a snapshot file. Outputs are written one by one in the order of the first
+     * bytes of their txid, compressed as Bitcoin Core does: the amount with {@link UtxoCompression#compressAmount}
+     * and standard scripts as their hash or key. Every 256th output is indexed for lookups. The file is written
+     * to a temporary file next to it first and then moved into place, so a crash never leaves a partial snapshot.
+     * Changes to the set wait until the snapshot is written.
+     *
+     * @param set the {@link UtxoSet} to write
+     * @param height the height of the last block connected to the set
+     * @param path the file, it is replaced if it exists
+     * @return the checksum of the snapshot, the base of diffs against it
+     */
+    public static byte[] write(UtxoSet set, int height, Path path) {
+        try (var writer = new Writer(path, SNAPSHOT, height, new byte[32])) {
+            set.forEachSorted(writer::add);
+            return writer.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the changes from a snapshot to the current state of the set, the outputs removed since and the ones
+     * added or changed. Loading the snapshot and then the diff restores the set; as the diff only holds the
+     * changes, it is much smaller and faster to write than a new snapshot.
+     *
+     * @param base the {@link UtxoSnapshot} the diff starts from, it must not be a diff itself
+     * @param set the {@link UtxoSet} in its current state
+     * @param height the height of the last block connected to the set
+     * @param path the file, it is replaced if it exists
+     * @return the checksum of the diff
+     */
+    public static byte[] writeDiff(UtxoSnapshot base, UtxoSet set, int height, Path path) {
+        if (base.diff) {
+            throw new IllegalArgumentException("A diff can only be taken against a snapshot");
+        }
+        try (var writer = new Writer(path, DIFF, height, base.checksum)) {
+            var merge = new DiffMerge(base, writer);
+            set.forEachSorted(merge::next);
+            merge.finish();
+            return writer.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads a snapshot into a new set and applies a diff taken against it
+     *
+     * @param snapshot the snapshot file
+     * @param diff the diff file, or {@code null}
+     * @return the restored {@link UtxoSet}
+     * @throws IllegalStateException if a checksum is wrong, a file is of the wrong kind or the diff belongs to
+     *                               another snapshot
+     */
+    public static UtxoSet restore(Path snapshot, Path diff) {
+        var full = open(snapshot);
+        if (full.diff) {
+            throw new IllegalStateException("Expected a full snapshot, got a diff: " + snapshot);
+        }
+        var set = new UtxoSet((int) Math.min(full.count, Integer.MAX_VALUE));
+        full.loadInto(set);
+        if (diff != null) {
+            var changes = open(diff);
+            if (!changes.diff) {
+                throw new IllegalStateException("Expected a diff, got a full snapshot: " + diff);
+            }
+            if (!Arrays.equals(full.checksum, changes.base)) {
+                throw new IllegalStateException("Diff was not taken against " + snapshot);
+            }
+            changes.loadInto(set);
+        }
+        return set;
+    }
+
+    /**
+     * Checks the SHA-256 checksum over the whole file, which reads it completely
+     *
+     * @return {@code true} if the file is intact
+     */
+    public boolean verify() {
+        var sha256 = sha256();
+        var end = fileSize - 32;
+        for (int i = 0; i < segments.length; i++) {
+            var start = i * SEGMENT_SIZE;
+            if (start >= end) break;
+            var segment = segments[i].duplicate();
+            segment.limit((int) Math.min(SEGMENT_SIZE, end - start));
+            sha256.update(segment);
+        }
+        return MessageDigest.isEqual(checksum, sha256.digest());
+    }
+
+    /**
+     * Adds every output of a snapshot to the set, or applies the changes of a diff to it
+     *
+     * @param set the {@link UtxoSet} to load into
+     * @throws IllegalStateException if the checksum is wrong, the set is left unchanged in that case
+     */
+    public void loadInto(UtxoSet set) {
+        if (!verify()) {
+            throw new IllegalStateException("UTXO snapshot checksum mismatch");
+        }
+        var position = (long) HEADER_LENGTH;
+        for (long i = 0; i < count; i++) {
+            var buffer = at(position);
+            var op = diff ? buffer.get() : ADD;
+            var key = readKey(buffer);
+            if (op == ADD) {
+                set.put(key, readEntry(buffer));
+            } else {
+                set.remove(key);
+            }
+            position += buffer.position() - offset(position);
+        }
+    }
+
+    /**
+     * Looks up an output in the snapshot by binary search over the index and a scan of at most a few hundred
+     * records
+     *
+     * @param outPoint a {@link OutPoint} object
+     * @return a {@link UtxoEntry} object, or {@code null} if the output is not in the snapshot
+     */
+    public UtxoEntry get(OutPoint outPoint) {
+        return get(UtxoSet.key(outPoint));
+    }
+
+    /**
+     * Looks up an output in the snapshot
+     *
+     * @param key the txid in internal byte order followed by the output index, little endian
+     * @return a {@link UtxoEntry} object, or {@code null} if the output is not in the snapshot
+     */
+    public UtxoEntry get(byte[] key) {
+        if (diff) {
+            throw new IllegalStateException("A diff cannot be queried, load it into a set");
+        }
+        var prefix = UtxoSet.prefix(key);
+        // start at the last indexed record before the prefix, records with the prefix can only come after it
+        var low = 0;
+        var high = indexPrefixes.length - 1;
+        var start = -1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            if (Integer.toUnsignedLong(indexPrefixes[mid]) < prefix) {
+                start = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        var position = start < 0 ? HEADER_LENGTH : indexOffsets[start];
+        while (position < indexOffset) {
+            var buffer = at(position);
+            var recordKey = readKey(buffer);
+            var recordPrefix = UtxoSet.prefix(recordKey);
+            if (recordPrefix > prefix) return null;
+            if (recordPrefix == prefix && Arrays.equals(key, recordKey)) {
+                return readEntry(buffer);
+            }
+            skipEntry(buffer);
+            position += buffer.position() - offset(position);
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TxOut prevout(OutPoint outPoint) {
+        var entry = get(outPoint);
+        return entry == null ? null : entry.toTxOut();
+    }
+
+    public boolean isDiff() {
+        return diff;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of outputs of a snapshot, or the number of changes of a diff
+     *
+     * @return a {@code long}
+     */
+    public long size() {
+        return count;
+    }
+
+    public byte[] getChecksum() {
+        return checksum.clone();
+    }
+
+    /**
+     * Returns the checksum of the snapshot a diff was taken against, all zeros for a snapshot
+     *
+     * @return a {@code byte} array
+     */
+    public byte[] getBase() {
+        return base.clone();
+    }
+
+    // a view of the mapping that holds the position, positioned at it
+    private ByteBuffer at(long position) {
+        var buffer = segments[(int) (position / SEGMENT_SIZE)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(offset(position));
+        return buffer;
+    }
+
+    private static int offset(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+
+    private static byte[] readKey(ByteBuffer buffer) {
+        var key = new byte[UtxoSet.KEY_LENGTH];
+        buffer.get(key, 0, 32);
+        var index = UtxoCompression.readVarInt(buffer);
+        key[32] = (byte) index;
+        key[33] = (byte) (index >> 8);
+        key[34] = (byte) (index >> 16);
+        key[35] = (byte) (index >> 24);
+        return key;
+    }
+
+    private static UtxoEntry readEntry(ByteBuffer buffer) {
+        var code = UtxoCompression.readVarInt(buffer);
+        var amount = UtxoCompression.decompressAmount(UtxoCompression.readVarInt(buffer));
+        var script = UtxoCompression.readScript(buffer);
+        return new UtxoEntry(amount, script, (int) (code >>> 1), (code & 1) != 0);
+    }
+
+    // skips an entry without decompressing its script, which for pay-to-pubkey means computing a square root
+    private static void skipEntry(ByteBuffer buffer) {
+        UtxoCompression.readVarInt(buffer);
+        UtxoCompression.readVarInt(buffer);
+        var type = UtxoCompression.readVarInt(buffer);
+        var length = type < 2 ? 20 : type < 6 ? 32 : type - 6;
+        buffer.position(buffer.position() + (int) length);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Streams records to a temporary file while hashing them and moves it into place when finished
+     */
+    private static class Writer implements AutoCloseable {
+
+        private final Path path;
+        private final Path temp;
+        private final OutputStream out;
+        private final MessageDigest sha256 = sha256();
+        private final boolean diff;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        private long position = 0;
+        private long count = 0;
+        private int[] indexPrefixes = new int[64];
+        private long[] indexOffsets = new long[64];
+        private int indexLength = 0;
+        private boolean finished = false;
+
+        Writer(Path path, byte kind, int height, byte[] base) throws IOException {
+            this.path = path;
+            this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16);
+            this.diff = kind == DIFF;
+            var header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).put(VERSION).put(kind).putShort((short) 0).putInt(height).put(base);
+            write(header.array());
+        }
+
+        void add(byte[] key, UtxoEntry entry) {
+            if (!diff && count % INDEX_INTERVAL == 0) {
+                if (indexLength == indexPrefixes.length) {
+                    indexPrefixes = Arrays.copyOf(indexPrefixes, indexLength * 2);
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexLength * 2);
+                }
+                indexPrefixes[indexLength] = (int) UtxoSet.prefix(key);
+                indexOffsets[indexLength++] = position;
+            }
+            record.reset();
+            if (diff) record.write(ADD);
+            writeKey(key);
+            UtxoCompression.writeVarInt((long) entry.height() << 1 | (entry.coinbase() ? 1 : 0), record);
+            UtxoCompression.writeVarInt(UtxoCompression.compressAmount(entry.amount()), record);
+            UtxoCompression.writeScript(entry.scriptPubkey(), record);
+            if (record.size() > OVERLAP) {
+                throw new IllegalArgumentException("Script too large for a snapshot: " + entry.scriptPubkey().length);
+            }
+            writeRecord();
+        }
+
+        void remove(byte[] key) {
+            record.reset();
+            record.write(REMOVE);
+            writeKey(key);
+            writeRecord();
+        }
+
+        private void writeKey(byte[] key) {
+            record.write(key, 0, 32);
+            var index = (key[32] & 0xff) | (key[33] & 0xff) << 8 | (key[34] & 0xff) << 16 | (key[35] & 0xff) << 24;
+            UtxoCompression.writeVarInt(Integer.toUnsignedLong(index), record);
+        }
+
+        private void writeRecord() {
+            try {
+                write(record.toByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            count++;
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            sha256.update(bytes);
+            position += bytes.length;
+        }
+
+        /**
+         * Writes the index and the trailer and moves the file into place
+         *
+         * @return the checksum
+         */
+        byte[] finish() throws IOException {
+            var index = ByteBuffer.allocate(indexLength * INDEX_ENTRY_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < indexLength; i++) {
+                index.putInt(indexPrefixes[i]).putLong(indexOffsets[i]);
+            }
+            var indexOffset = position;
+            write(index.array());
+            var trailer = ByteBuffer.allocate(TRAILER_LENGTH - 32).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putLong(count).putLong(indexOffset).putInt(indexLength);
+            write(trailer.array());
+            var checksum = sha256.digest();
+            out.write(checksum);
+            out.close();
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return checksum;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            out.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Compares the sorted outputs of the set with the sorted records of the base snapshot. Both are ordered by
+     * prefix only, so outputs sharing a prefix are matched within their group.
+     */
+    private static class DiffMerge {
+
+        private final UtxoSnapshot base;
+        private final Writer writer;
+        private long position = HEADER_LENGTH;
+        private long remaining;
+        private long groupPrefix = -1;
+        private final Map<String, UtxoEntry> group = new HashMap<>();
+        private final Map<String, byte[]> groupKeys = new HashMap<>();
+
+        DiffMerge(UtxoSnapshot base, Writer writer) {
+            this.base = base;
+            this.writer = writer;
+            this.remaining = base.count;
+        }
+
+        void next(byte[] key, UtxoEntry entry) {
+            var prefix = UtxoSet.prefix(key);
+            if (prefix != groupPrefix) {
+                flushGroup();
+                // base records before this prefix are gone from the set
+                while (remaining > 0 && UtxoSet.prefix(peekKey()) < prefix) {
+                    writer.remove(readBase().getKey());
+                }
+                while (remaining > 0 && UtxoSet.prefix(peekKey()) == prefix) {
+                    var record = readBase();
+                    var hex = Bytes.byteArrayToHexString(record.getKey());
+                    group.put(hex, record.getValue());
+                    groupKeys.put(hex, record.getKey());
+                }
+                groupPrefix = prefix;
+            }
+            var hex = Bytes.byteArrayToHexString(key);
+            var previous = group.remove(hex);
+            groupKeys.remove(hex);
+            if (!entry.equals(previous)) {
+                writer.add(key, entry);
+            }
+        }
+
+        void finish() {
+            flushGroup();
+            while (remaining > 0) {
+                writer.remove(readBase().getKey());
+            }
+        }
+
+        // the base records of the group the set does not have anymore
+        private void flushGroup() {
+            groupKeys.values().forEach(writer::remove);
+            group.clear();
+            groupKeys.clear();
+        }
+
+        private byte[] peekKey() {
+            return readKey(base.at(position));
+        }
+
+        private Map.Entry<byte[], UtxoEntry> readBase() {
+            var buffer = base.at(position);
+            var key = readKey(buffer);
+            var entry = readEntry(buffer);
+            position += buffer.position() - offset(position);
+            remaining--;
+            return Map.entry(key, entry);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.smithiboss.block;
+
+import org.junit.Test;
+import org.smithiboss.network.NetworkEnvelope;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockFileReaderTest {
+
+    private static void frame(ByteArrayOutputStream out, byte[] block) {
+        out.writeBytes(NetworkEnvelope.magic(false));
+        out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(block.length).array());
+        out.writeBytes(block);
+    }
+
+    private static List<byte[]> blocks() {
+        var txs = RawBlockTest.txs();
+        return List.of(RawBlockTest.block(List.of(txs.get(0))), RawBlockTest.block(List.of(txs.get(1))),
+                RawBlockTest.block(txs));
+    }
+
+    /**
+     * blk00000.dat with two blocks, garbage between them and preallocated zeros at the end, blk00001.dat with one
+     * block followed by a block that was cut off
+     */
+    private static Path blocksDir() throws IOException {
+        var dir = Files.createTempDirectory("blocks");
+        var blocks = blocks();
+        var out = new ByteArrayOutputStream();
+        frame(out, blocks.get(0));
+        out.writeBytes(new byte[]{1, 2, 3});
+        frame(out, blocks.get(1));
+        out.writeBytes(new byte[1000]);
+        Files.write(dir.resolve("blk00000.dat"), out.toByteArray());
+        out.reset();
+        frame(out, blocks.get(2));
+        out.writeBytes(NetworkEnvelope.magic(false));
+        out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(500).array());
+        out.writeBytes(new byte[100]);
+        Files.write(dir.resolve("blk00001.dat"), out.toByteArray());
+        Files.write(dir.resolve("rev00000.dat"), new byte[10]);
+        return dir;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        var dir = blocksDir();
+        try {
+            var blocks = blocks();
+            var file = BlockFile.open(dir.resolve("blk00000.dat"), false);
+            assertEquals(0, file.getNumber());
+            var locations = file.scan();
+            assertEquals(2, locations.size());
+            assertEquals(new BlockLocation(0, 8, blocks.get(0).length), locations.get(0));
+            assertEquals(new BlockLocation(0, 8 + blocks.get(0).length + 3 + 8, blocks.get(1).length), locations.get(1));
+            var raw = new byte[locations.get(1).length()];
+            file.slice(locations.get(1)).get(raw);
+            assertArrayEquals(blocks.get(1), raw);
+            assertArrayEquals(RawBlock.parse(blocks.get(1), false).getHeader().hash(), file.hash(locations.get(1)));
+            // the wrong network finds nothing
+            assertTrue(BlockFile.open(dir.resolve("blk00000.dat"), true).scan().isEmpty());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testPartialBlock() throws IOException {
+        var dir = Files.createTempDirectory("blocks");
+        try {
+            var blocks = blocks();
+            // a block cut off by a crash within the preallocated zeros, its length covers the next block
+            var out = new ByteArrayOutputStream();
+            out.writeBytes(NetworkEnvelope.magic(false));
+            out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(2000).array());
+            out.write(blocks.get(2), 0, 100);
+            out.writeBytes(new byte[50]);
+            frame(out, blocks.get(0));
+            out.writeBytes(new byte[3000]);
+            Files.write(dir.resolve("blk00000.dat"), out.toByteArray());
+
+            var file = BlockFile.open(dir.resolve("blk00000.dat"), false);
+            var locations = file.scan();
+            assertEquals(List.of(new BlockLocation(0, 8 + 100 + 50 + 8, blocks.get(0).length)), locations);
+            var txCounts = new ArrayList<Integer>();
+            file.forEach((location, block) -> txCounts.add(block.getTxCount()));
+            assertEquals(List.of(1), txCounts);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testForEach() throws IOException {
+        var dir = blocksDir();
+        try {
+            var reader = new BlockFileReader(dir, false);
+            assertEquals(List.of(dir.resolve("blk00000.dat"), dir.resolve("blk00001.dat")), reader.files());
+            var txCounts = new ArrayList<Integer>();
+            reader.forEach((location, block) -> txCounts.add(block.getTxCount()));
+            assertEquals(List.of(1, 1, 3), txCounts);
+            var parallel = Collections.synchronizedList(new ArrayList<Integer>());
+            reader.forEachParallel((location, block) -> parallel.add(block.getTxCount()));
+            Collections.sort(parallel);
+            assertEquals(List.of(1, 1, 3), parallel);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        var dir = blocksDir();
+        try {
+            var reader = new BlockFileReader(dir, false);
+            var index = reader.buildIndex();
+            assertEquals(3, index.size());
+            for (byte[] bytes : blocks()) {
+                var hash = RawBlock.parse(bytes, false).getHeader().hash();
+                var block = reader.read(index.get(hash));
+                assertArrayEquals(hash, block.getHeader().hash());
+                assertEquals(bytes.length, block.size());
+            }
+            var path = dir.resolve("index.dat");
+            index.save(path);
+            var loaded = BlockIndex.load(path);
+            assertEquals(index.size(), loaded.size());
+            index.forEach((hash, location) -> assertEquals(location, loaded.get(hash)));
+            assertNull(loaded.get(new byte[32]));
+
+            var bytes = Files.readAllBytes(path);
+            bytes[20] ^= 1;
+            Files.write(path, bytes);
+            assertThrows(IllegalStateException.class, () -> BlockIndex.load(path));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testObfuscated() throws IOException {
+        var dir = blocksDir();
+        try {
+            Files.write(dir.resolve("xor.dat"), new byte[8]);
+            new BlockFileReader(dir, false);
+            Files.write(dir.resolve("xor.dat"), new byte[]{0, 0, 0, 1, 0, 0, 0, 0});
+            assertThrows(IllegalStateException.class, () -> new BlockFileReader(dir, false));
+        } finally {
+            delete(dir);
+        }
+    }
+}
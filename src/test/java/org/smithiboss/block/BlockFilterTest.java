@@ -0,0 +1,104 @@
+package org.smithiboss.block;
+
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.SipHash;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockFilterTest {
+
+    private static final String GENESIS_HEADER = "0100000000000000000000000000000000000000000000000000000000000000000000003ba3edfd7a7b12b27ac72c3e67768f617fc81bc3888a51323a9fb8aa4b1e5e4adae5494dffff001d1aa4ae18";
+    private static final String GENESIS_COINBASE = "01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff4d04ffff001d0104455468652054696d65732030332f4a616e2f32303039204368616e63656c6c6f72206f6e206272696e6b206f66207365636f6e64206261696c6f757420666f722062616e6b73ffffffff0100f2052a01000000434104678afdb0fe5548271967f1a67130b7105cd6a828e03909a67962e0ea1f61deb649f6bc3f4cef38c4f35504e51ec112de5c384df7ba0b8d578a4c702b6bf11d5fac00000000";
+
+    @Test
+    public void testBuild() {
+        var block = Block.parse(GENESIS_HEADER);
+        var coinbase = Tx.parse(GENESIS_COINBASE, true);
+        var filter = BlockFilter.build(block, List.of(coinbase), List.of());
+        assertArrayEquals(Bytes.hexStringToByteArray("019dfca8"), filter.serialize());
+        var header = Bytes.reverseOrder(filter.header(new byte[32]));
+        assertEquals("21584579b7eb08997773e5aeff3a7f932700042d0ed2a6129012b7d7ae81b750", Bytes.byteArrayToHexString(header));
+    }
+
+    @Test
+    public void testBuildRawScripts() {
+        // a non-minimal push, a 75 byte push, a 600 byte push and an OP_RETURN output, none of which the
+        // commands encode back to the same bytes
+        var scripts = List.of("4c03aabbcc", "4b" + "11".repeat(75), "4d5802" + "22".repeat(600), "6a03aabbcc");
+        var raw = new StringBuilder("01000000" + "01" + "33".repeat(32) + "00000000" + "00" + "ffffffff" + "04");
+        for (String script : scripts) {
+            var length = script.length() / 2;
+            raw.append("e803000000000000").append(length < 0xfd ? String.format("%02x", length)
+                    : String.format("fd%02x%02x", length & 0xff, length >> 8)).append(script);
+        }
+        raw.append("00000000");
+        var tx = Tx.parse(raw.toString(), false);
+        assertEquals(raw.toString(), Bytes.byteArrayToHexString(tx.serialize()));
+        var spent = Script.parse(new ByteArrayInputStream(Bytes.hexStringToByteArray("044c0251ac")));
+
+        var block = new Block(Int.parse(1), new byte[32], tx.hash(), Int.parse(1700000000),
+                Bytes.hexStringToByteArray("ffff7f20"), new byte[4], null);
+        var filter = BlockFilter.build(block, List.of(tx), List.of(spent));
+        var elements = new ArrayList<byte[]>();
+        for (String script : scripts.subList(0, 3)) {
+            elements.add(Bytes.hexStringToByteArray(script));
+        }
+        elements.add(Bytes.hexStringToByteArray("4c0251ac"));
+        var blockHash = Hash.hash256(block.serialize());
+        var expected = GolombCodedSet.build(elements, BlockFilter.P, BlockFilter.M,
+                SipHash.readLongLittleEndian(blockHash, 0), SipHash.readLongLittleEndian(blockHash, 8));
+        assertEquals(4, filter.getSet().getN());
+        assertArrayEquals(expected.serialize(), filter.serialize());
+        assertTrue(filter.matchAny(List.of(Bytes.hexStringToByteArray("4c03aabbcc"))));
+        // the minimal encoding is another script
+        assertFalse(filter.matchAny(List.of(Bytes.hexStringToByteArray("03aabbcc"))));
+    }
+
+    @Test
+    public void testMatchAny() {
+        var block = Block.parse(GENESIS_HEADER);
+        var coinbase = Tx.parse(GENESIS_COINBASE, true);
+        var filter = BlockFilter.parse(block, Bytes.hexStringToByteArray("019dfca8"));
+        var script = coinbase.getTxOuts().getFirst().scriptPubkey().rawSerialize();
+        assertTrue(filter.matchAny(List.of(Bytes.hexStringToByteArray("0014"), script)));
+        assertFalse(filter.matchAny(List.of(Bytes.hexStringToByteArray("0014"))));
+    }
+
+    @Test
+    public void testGolombCodedSet() {
+        var elements = new java.util.ArrayList<byte[]>();
+        for (int i = 0; i < 500; i++) {
+            elements.add(new byte[]{(byte) i, (byte) (i >> 8), 7});
+        }
+        var set = GolombCodedSet.build(elements, BlockFilter.P, BlockFilter.M, 1, 2);
+        var parsed = GolombCodedSet.parse(set.serialize(), BlockFilter.P, BlockFilter.M, 1, 2);
+        assertEquals(500, parsed.getN());
+        for (byte[] element : elements) {
+            assertTrue(parsed.match(element));
+        }
+        assertFalse(parsed.match(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void testFilterHeaderChain() {
+        var block = Block.parse(GENESIS_HEADER);
+        var filter = BlockFilter.parse(block, Bytes.hexStringToByteArray("019dfca8"));
+        var chain = new FilterHeaderChain();
+        var expected = Bytes.reverseOrder(Bytes.hexStringToByteArray("21584579b7eb08997773e5aeff3a7f932700042d0ed2a6129012b7d7ae81b750"));
+        assertTrue(chain.addAndVerify(filter, expected));
+        assertEquals(0, chain.getHeight());
+        assertArrayEquals(expected, chain.getTip());
+        assertFalse(chain.addAndVerify(filter, expected));
+        assertEquals(0, chain.getHeight());
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.smithiboss.block;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockStoreTest {
+
+    private static List<byte[]> blocks() {
+        var txs = RawBlockTest.txs();
+        return List.of(RawBlockTest.block(List.of(txs.get(0))), RawBlockTest.block(List.of(txs.get(1))),
+                RawBlockTest.block(txs));
+    }
+
+    private static byte[] hash(byte[] block) {
+        return RawBlock.parse(block, false).getHeader().hash();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+        var dir = Files.createTempDirectory("store");
+        try {
+            var blocks = blocks();
+            try (var store = BlockStore.open(dir, false, 1000, 2)) {
+                for (int i = 0; i < blocks.size(); i++) {
+                    store.put(blocks.get(i), i);
+                }
+                assertEquals(3, store.size());
+                assertEquals(2, store.getTipHeight());
+                for (int i = 0; i < blocks.size(); i++) {
+                    var hash = hash(blocks.get(i));
+                    assertArrayEquals(blocks.get(i), bytes(store.getRaw(hash)));
+                    assertArrayEquals(hash, store.getHash(i));
+                    assertEquals(i, store.getHeight(hash));
+                    assertArrayEquals(hash, store.get(i).getHeader().hash());
+                }
+                // the last block does not fit behind the first two
+                assertEquals(1, store.getLocation(hash(blocks.get(2))).file());
+                assertSame(store.get(2), store.get(hash(blocks.get(2))));
+                assertEquals(store.getLocation(hash(blocks.get(0))), store.put(blocks.get(0), 0));
+                assertNull(store.get(new byte[32]));
+                assertNull(store.get(3));
+                store.flush();
+            }
+            try (var store = BlockStore.open(dir, false, 1000, 2)) {
+                assertEquals(3, store.size());
+                for (int i = 0; i < blocks.size(); i++) {
+                    assertArrayEquals(blocks.get(i), bytes(store.getRaw(hash(blocks.get(i)))));
+                    assertArrayEquals(hash(blocks.get(i)), store.getHash(i));
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testReorg() throws IOException {
+        var dir = Files.createTempDirectory("store");
+        try {
+            var blocks = blocks();
+            try (var store = BlockStore.open(dir, false)) {
+                store.put(blocks.get(0), 0);
+                store.put(blocks.get(1), 1);
+                store.put(blocks.get(2), 2);
+                store.truncate(0);
+                assertEquals(0, store.getTipHeight());
+                assertNull(store.getHash(1));
+                assertEquals(-1, store.getHeight(hash(blocks.get(1))));
+                // still readable by hash
+                assertNotNull(store.get(hash(blocks.get(1))));
+                // the other branch
+                store.put(blocks.get(2), 1);
+                assertEquals(1, store.getHeight(hash(blocks.get(2))));
+                assertNull(store.getHash(2));
+            }
+            try (var store = BlockStore.open(dir, false)) {
+                assertEquals(1, store.getTipHeight());
+                assertArrayEquals(hash(blocks.get(2)), store.getHash(1));
+                assertNull(store.getHash(2));
+                assertEquals(3, store.size());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        var dir = Files.createTempDirectory("store");
+        try {
+            var blocks = blocks();
+            try (var store = BlockStore.open(dir, false)) {
+                store.put(blocks.get(0), 0);
+                store.put(blocks.get(1), 1);
+            }
+            // a record cut off by a crash, and a block written without a record
+            Files.write(dir.resolve("index.dat"), new byte[20], StandardOpenOption.APPEND);
+            Files.write(dir.resolve("seg00000.dat"), blocks.get(2), StandardOpenOption.APPEND);
+            try (var store = BlockStore.open(dir, false)) {
+                assertEquals(2, store.size());
+                assertEquals(blocks.get(0).length + blocks.get(1).length, Files.size(dir.resolve("seg00000.dat")));
+                store.put(blocks.get(2), 2);
+                assertArrayEquals(blocks.get(2), bytes(store.getRaw(hash(blocks.get(2)))));
+            }
+            try (var store = BlockStore.open(dir, false)) {
+                assertEquals(3, store.size());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testShortSegment() throws IOException {
+        var dir = Files.createTempDirectory("store");
+        try {
+            var blocks = blocks();
+            try (var store = BlockStore.open(dir, false)) {
+                for (int i = 0; i < blocks.size(); i++) {
+                    store.put(blocks.get(i), i);
+                }
+            }
+            // the records reached the disk but the last block only partly
+            var segment = dir.resolve("seg00000.dat");
+            var size = blocks.get(0).length + blocks.get(1).length;
+            try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(size + 10);
+            }
+            try (var store = BlockStore.open(dir, false)) {
+                assertEquals(2, store.size());
+                assertEquals(1, store.getTipHeight());
+                assertNull(store.getRaw(hash(blocks.get(2))));
+                assertEquals(size, Files.size(segment));
+                assertEquals(2L * 52, Files.size(dir.resolve("index.dat")));
+                store.put(blocks.get(2), 2);
+                assertArrayEquals(blocks.get(2), bytes(store.getRaw(hash(blocks.get(2)))));
+            }
+            try (var store = BlockStore.open(dir, false)) {
+                assertEquals(3, store.size());
+                assertArrayEquals(blocks.get(2), bytes(store.getRaw(hash(blocks.get(2)))));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testInvalid() throws IOException {
+        var dir = Files.createTempDirectory("store");
+        try (var store = BlockStore.open(dir, false)) {
+            var block = blocks().getFirst();
+            assertThrows(IllegalStateException.class, () -> store.put(new byte[10], 0));
+            assertThrows(IllegalStateException.class, () -> store.put(Arrays.copyOf(block, block.length - 1), 0));
+            assertThrows(IllegalArgumentException.class, () -> store.put(block, -1));
+            assertEquals(0, store.size());
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -30,4 +30,46 @@ public class BloomFilterTest {
         assertArrayEquals(expected, bf.filterload(null).serialize());
     }
 
+    @Test
+    public void testContains() {
+        var bf = new BloomFilter(10, 5, 99);
+        var item = "Hello World".getBytes();
+        assertFalse(bf.contains(item));
+        bf.add(item);
+        assertTrue(bf.contains(item));
+        assertFalse(bf.contains("Goodbye!".getBytes()));
+        var padded = "xxHello Worldyy".getBytes();
+        assertTrue(bf.contains(padded, 2, item.length));
+        bf.add(padded, 2, 5);
+        assertTrue(bf.contains("Hello".getBytes()));
+    }
+
+    @Test
+    public void testCreate() {
+        var bf = BloomFilter.create(1000, 0.0001, 0);
+        assertEquals(2396, bf.getSize());
+        assertEquals(13, bf.getFunctionCount());
+        bf = BloomFilter.create(1_000_000, 0.0001, 0);
+        assertEquals(BloomFilter.MAX_FILTER_SIZE, bf.getSize());
+        assertTrue(bf.getFunctionCount() >= 1);
+        bf = BloomFilter.create(1, 0.1, 0);
+        assertTrue(bf.getFunctionCount() <= BloomFilter.MAX_FUNCTION_COUNT);
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        var bf = BloomFilter.create(100, 0.01, 7);
+        assertEquals(0.0, bf.fillRatio(), 0);
+        for (int i = 0; i < 100; i++) {
+            bf.add(new byte[]{(byte) i, 1});
+        }
+        assertEquals(100, bf.estimatedElementCount(), 10);
+        assertEquals(0.01, bf.falsePositiveRate(), 0.005);
+        assertFalse(bf.isSaturated(0.02));
+        for (int i = 0; i < 400; i++) {
+            bf.add(new byte[]{(byte) i, 2});
+        }
+        assertTrue(bf.isSaturated(0.02));
+    }
+
 }
@@ -0,0 +1,123 @@
+package org.smithiboss.block;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.utils.Bytes;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HeaderChainTest {
+
+    private static final String GENESIS = "0100000000000000000000000000000000000000000000000000000000000000000000003ba3edfd7a7b12b27ac72c3e67768f617fc81bc3888a51323a9fb8aa4b1e5e4a29ab5f49ffff001d1dac2b7c";
+    // 2^256 / (target + 1) for bits 1d00ffff
+    private static final BigInteger GENESIS_WORK = BigInteger.valueOf(0x100010001L);
+
+    /**
+     * Headers following the genesis block, linked but without proof of work
+     */
+    static List<Block> headers(int n) {
+        var headers = new ArrayList<Block>();
+        headers.add(Block.parse(GENESIS));
+        for (int i = 1; i < n; i++) {
+            var prev = headers.getLast();
+            headers.add(new Block(Int.parse(0x20000000), prev.hash(), new byte[32],
+                    Int.parse(1231006505 + i * 600), prev.getBits(), Int.parse(i).toBytesLittleEndian(4), null));
+        }
+        return headers;
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        var path = Files.createTempFile("headers", ".dat");
+        try {
+            var headers = headers(70000);
+            try (var chain = HeaderChain.open(path)) {
+                assertEquals(-1, chain.getHeight());
+                assertEquals(headers.size() - 1, chain.appendAll(headers.toArray(new Block[0])));
+                check(chain, headers);
+                // does not extend the tip
+                assertThrows(IllegalArgumentException.class, () -> chain.append(headers.get(5)));
+            }
+            assertEquals(70000L * 80, Files.size(path));
+            try (var chain = HeaderChain.open(path)) {
+                check(chain, headers);
+                var next = headers(70001).getLast();
+                assertEquals(70000, chain.append(next));
+                assertEquals(70000, chain.getHeight(next.hash()));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void check(HeaderChain chain, List<Block> headers) {
+        assertEquals(headers.size() - 1, chain.getHeight());
+        assertEquals("000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f",
+                Bytes.byteArrayToHexString(chain.getHash(0)));
+        for (int height : new int[]{0, 1, 1023, 1024, 65535, 65536, headers.size() - 1}) {
+            var hash = headers.get(height).hash();
+            assertArrayEquals(hash, chain.getHash(height));
+            assertEquals(height, chain.getHeight(hash));
+            assertArrayEquals(headers.get(height).serialize(), chain.getRaw(height));
+            assertEquals(GENESIS_WORK.multiply(BigInteger.valueOf(height + 1)),
+                    chain.getChainwork(height).getBigInteger());
+        }
+        assertEquals(-1, chain.getHeight(new byte[32]));
+        assertThrows(IllegalArgumentException.class, () -> chain.getHash(headers.size()));
+    }
+
+    @Test
+    public void testTruncate() throws IOException {
+        var path = Files.createTempFile("headers", ".dat");
+        try {
+            var headers = headers(100);
+            try (var chain = HeaderChain.open(path)) {
+                chain.appendAll(headers.toArray(new Block[0]));
+                chain.truncate(49);
+                assertEquals(49, chain.getHeight());
+                assertEquals(-1, chain.getHeight(headers.get(50).hash()));
+                assertEquals(-1, chain.getHeight(headers.get(99).hash()));
+                assertEquals(49, chain.getHeight(headers.get(49).hash()));
+                assertEquals(50, chain.append(headers.get(50)));
+            }
+            try (var chain = HeaderChain.open(path)) {
+                assertEquals(50, chain.getHeight());
+                assertArrayEquals(headers.get(50).hash(), chain.getHash(50));
+                chain.truncate(-1);
+                assertEquals(-1, chain.getHeight());
+                assertEquals(-1, chain.getHeight(headers.get(0).hash()));
+                // any header starts an empty chain
+                assertEquals(0, chain.append(headers.get(3)));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testPartialRecord() throws IOException {
+        var path = Files.createTempFile("headers", ".dat");
+        try {
+            var headers = headers(10);
+            try (var chain = HeaderChain.open(path)) {
+                chain.appendAll(headers.toArray(new Block[0]));
+            }
+            // a header cut off by a crash
+            Files.write(path, new byte[40], StandardOpenOption.APPEND);
+            try (var chain = HeaderChain.open(path)) {
+                assertEquals(9, chain.getHeight());
+                assertEquals(10, chain.append(headers(11).getLast()));
+            }
+            assertEquals(11L * 80, Files.size(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
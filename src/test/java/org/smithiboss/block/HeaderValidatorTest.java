@@ -0,0 +1,154 @@
+package org.smithiboss.block;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.utils.Bytes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class HeaderValidatorTest {
+
+    private static final String GENESIS = "0100000000000000000000000000000000000000000000000000000000000000000000003ba3edfd7a7b12b27ac72c3e67768f617fc81bc3888a51323a9fb8aa4b1e5e4a29ab5f49ffff001d1dac2b7c";
+    // the proof of work limit of regtest, every other hash is below it
+    private static final byte[] EASY_BITS = Bytes.hexStringToByteArray("ffff7f20");
+    private static final int START = 1700000000;
+
+    private static HeaderValidator validator(boolean parallel, boolean testnet) {
+        return new HeaderValidator(parallel ? ForkJoinPool.commonPool() : null, testnet, EASY_BITS);
+    }
+
+    private static Block mine(byte[] prevBlock, long timestamp, byte[] bits) {
+        for (int nonce = 0; ; nonce++) {
+            var header = new Block(Int.parse(0x20000000), prevBlock, new byte[32], Int.parse(timestamp), bits,
+                    Int.parse(nonce).toBytesLittleEndian(4), null);
+            if (header.checkProofOfWork()) return header;
+        }
+    }
+
+    /**
+     * Mined headers from height 0, ten minutes apart at the easiest bits
+     */
+    private static List<Block> headers(int n) {
+        var headers = new ArrayList<Block>();
+        var prev = new byte[32];
+        for (int i = 0; i < n; i++) {
+            headers.add(mine(prev, START + i * 600L, EASY_BITS));
+            prev = headers.getLast().hash();
+        }
+        return headers;
+    }
+
+    @Test
+    public void testGenesis() throws IOException {
+        var path = Files.createTempFile("headers", ".dat");
+        try (var chain = HeaderChain.open(path)) {
+            var result = HeaderValidator.parallel(false).validate(chain, new Block[]{Block.parse(GENESIS)});
+            assertTrue(result.valid());
+            assertEquals(1, result.validCount());
+            // the genesis block with another nonce does not meet its target
+            var raw = Bytes.hexStringToByteArray(GENESIS);
+            raw[79] ^= 1;
+            result = HeaderValidator.sequential(false).validate(chain, new Block[]{Block.parse(raw)});
+            assertEquals(0, result.firstInvalid());
+            assertEquals(HeaderValidationResult.Failure.HIGH_HASH, result.failure());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        var path = Files.createTempFile("headers", ".dat");
+        try (var chain = HeaderChain.open(path)) {
+            var headers = headers(600);
+            chain.appendAll(headers.subList(0, 100).toArray(new Block[0]));
+            var batch = headers.subList(100, 600).toArray(new Block[0]);
+            for (boolean parallel : new boolean[]{false, true}) {
+                var validator = validator(parallel, false);
+                assertTrue(validator.validate(chain, batch).valid());
+
+                // not linked to the header before
+                var broken = batch.clone();
+                broken[300] = mine(batch[298].hash(), START + 400 * 600L, EASY_BITS);
+                var result = validator.validate(chain, broken);
+                assertEquals(300, result.firstInvalid());
+                assertEquals(300, result.validCount());
+                assertEquals(HeaderValidationResult.Failure.BAD_PREV_BLOCK, result.failure());
+
+                // a batch that does not extend the tip
+                result = validator.validate(chain, headers.subList(101, 600).toArray(new Block[0]));
+                assertEquals(0, result.firstInvalid());
+                assertEquals(HeaderValidationResult.Failure.BAD_PREV_BLOCK, result.failure());
+
+                // another difficulty between retargets
+                broken = batch.clone();
+                broken[50] = mine(batch[49].hash(), START + 150 * 600L, Bytes.hexStringToByteArray("ffff3f20"));
+                result = validator.validate(chain, broken);
+                assertEquals(50, result.firstInvalid());
+                assertEquals(HeaderValidationResult.Failure.BAD_DIFFICULTY, result.failure());
+
+                // a hash above the target
+                broken = batch.clone();
+                var header = batch[499];
+                for (int nonce = 0; ; nonce++) {
+                    header = new Block(header.getVersion(), header.getPrevBlock(), header.getMerkleRoot(),
+                            header.getTimestamp(), header.getBits(), Int.parse(nonce).toBytesLittleEndian(4), null);
+                    if (!header.checkProofOfWork()) break;
+                }
+                broken[499] = header;
+                result = validator.validate(chain, broken);
+                assertEquals(499, result.firstInvalid());
+                assertEquals(HeaderValidationResult.Failure.HIGH_HASH, result.failure());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRetarget() throws IOException {
+        var path = Files.createTempFile("headers", ".dat");
+        try (var chain = HeaderChain.open(path)) {
+            // blocks twice as fast as they should be
+            var headers = new ArrayList<Block>();
+            var prev = new byte[32];
+            for (int i = 0; i < 2016; i++) {
+                headers.add(mine(prev, START + i * 300L, EASY_BITS));
+                prev = headers.getLast().hash();
+            }
+            chain.appendAll(headers.toArray(new Block[0]));
+            var timespan = Int.parse(2015 * 300L);
+            var newBits = Bytes.calculateNewBits(EASY_BITS, timespan);
+            assertFalse(Arrays.equals(EASY_BITS, newBits));
+
+            var validator = validator(true, false);
+            var retarget = mine(prev, START + 2016 * 300L, newBits);
+            var next = mine(retarget.hash(), START + 2017 * 300L, newBits);
+            assertTrue(validator.validate(chain, new Block[]{retarget, next}).valid());
+
+            var unchanged = mine(prev, START + 2016 * 300L, EASY_BITS);
+            var result = validator.validate(chain, new Block[]{unchanged});
+            assertEquals(0, result.firstInvalid());
+            assertEquals(HeaderValidationResult.Failure.BAD_DIFFICULTY, result.failure());
+
+            // testnet allows the minimum difficulty after 20 minutes, and returns to the real one after
+            chain.append(retarget);
+            var testnet = validator(false, true);
+            var late = mine(retarget.hash(), START + 2016 * 300L + 1201, EASY_BITS);
+            var back = mine(late.hash(), START + 2016 * 300L + 1500, newBits);
+            assertTrue(testnet.validate(chain, new Block[]{late, back}).valid());
+            var stuck = mine(late.hash(), START + 2016 * 300L + 1500, EASY_BITS);
+            assertEquals(1, testnet.validate(chain, new Block[]{late, stuck}).firstInvalid());
+            assertEquals(0, validator.validate(chain, new Block[]{late}).firstInvalid());
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.smithiboss.block;
+
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.Helper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MerkleAccumulatorTest {
+
+    private static List<byte[]> leaves(int n) {
+        var hashes = new ArrayList<byte[]>();
+        for (int i = 0; i < n; i++) {
+            hashes.add(Hash.hash256(new byte[]{(byte) i, (byte) (i >> 8)}));
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testRoot() {
+        var hashes = new ArrayList<byte[]>();
+        hashes.add(Bytes.hexStringToByteArray("c117ea8ec828342f4dfb0ad6bd140e03a50720ece40169ee38bdc15d9eb64cf5"));
+        hashes.add(Bytes.hexStringToByteArray("c131474164b412e3406696da1ee20ab0fc9bf41c8f05fa8ceea7a08d672d7cc5"));
+        hashes.add(Bytes.hexStringToByteArray("f391da6ecfeed1814efae39e7fcb3838ae0b02c02ae7d0a5848a66947c0727b0"));
+        var accumulator = new MerkleAccumulator(hashes);
+        assertArrayEquals(Helper.merkleRoot(new ArrayList<>(hashes)), accumulator.root());
+    }
+
+    @Test
+    public void testAdd() {
+        var accumulator = new MerkleAccumulator();
+        for (int n = 1; n <= 70; n++) {
+            var hashes = leaves(n);
+            accumulator.add(hashes.getLast());
+            assertEquals(n, accumulator.size());
+            assertArrayEquals(Helper.merkleRoot(new ArrayList<>(hashes)), accumulator.root());
+        }
+    }
+
+    @Test
+    public void testSet() {
+        for (int n : new int[]{1, 2, 5, 16, 33}) {
+            var hashes = leaves(n);
+            var accumulator = new MerkleAccumulator(hashes);
+            for (int i = 0; i < n; i++) {
+                var hash = Hash.hash256(new byte[]{(byte) 0xff, (byte) i});
+                hashes.set(i, hash);
+                accumulator.set(i, hash);
+                assertArrayEquals(hash, accumulator.get(i));
+                assertArrayEquals(Helper.merkleRoot(new ArrayList<>(hashes)), accumulator.root());
+            }
+        }
+    }
+
+}
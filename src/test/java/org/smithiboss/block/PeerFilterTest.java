@@ -0,0 +1,121 @@
+package org.smithiboss.block;
+
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.OpCodes;
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.tx.TxIn;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.Helper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PeerFilterTest {
+
+    private static final byte[] H160 = Bytes.hexStringToByteArray("bc3b654dca7e56b04dca18f2566cdaf02e8d9ada");
+
+    private static PreparedBlock prepare() {
+        var coinbase = Tx.parse("01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff5e03d71b07254d696e656420627920416e74506f6f6c20626a31312f4542312f4144362f43205914293101fabe6d6d678e2c8c34afc36896e7d9402824ed38e856676ee94bfdb0c6c4bcd8b2e5666a0400000000000000c7270000a5e00e00ffffffff01faf20b58000000001976a914338c84849423992471bffb1a54a8d9b1d69dc28a88ac00000000", false);
+        var paying = Tx.parse("0100000001813f79011acb80925dfe69b3def355fe914bd1d96a3f5f71bf8303c6a989c7d1000000006b483045022100ed81ff192e75a3fd2304004dcadb746fa5e24c5031ccfcf21320b0277457c98f02207a986d955c6e0cb35d446a89d3f56100f4d7f67801c31967743a9c8e10615bed01210349fc4e631e3624a545de3f89f5d8684c7b8138bd94bdd531d2e213bf016b278afeffffff02a135ef01000000001976a914bc3b654dca7e56b04dca18f2566cdaf02e8d9ada88ac99c39800000000001976a9141c4bc762dd5423e332166702cb75f40df79fea1288ac19430600", false);
+        // spends the first output of the paying transaction
+        var txIn = new TxIn(Hex.parse(paying.getId()), Int.parse(0), null, Hex.parse("ffffffff"));
+        var txOut = new TxOut(Int.parse(1000), Script.p2pkhScript(Bytes.hexStringToByteArray("1c4bc762dd5423e332166702cb75f40df79fea12")));
+        var spending = new Tx(Int.parse(1), new ArrayList<>(List.of(txIn)), new ArrayList<>(List.of(txOut)), Int.parse(0), false, false);
+        var txs = List.of(coinbase, paying, spending);
+
+        var hashes = new ArrayList<byte[]>();
+        for (Tx tx : txs) {
+            hashes.add(Hash.hash256(tx.serializeLegacy()));
+        }
+        var merkleRoot = Bytes.reverseOrder(Helper.merkleRoot(hashes));
+        var block = new Block(Int.parse(1), new byte[32], merkleRoot, Int.parse(0), new byte[4], new byte[4], null);
+        return new PreparedBlock(block, txs);
+    }
+
+    @Test
+    public void testFilterBlockUpdateAll() {
+        var bf = BloomFilter.create(10, 0.0001, 99);
+        bf.add(H160);
+        var peer = new PeerFilter(bf, BloomFilter.BLOOM_UPDATE_ALL);
+        var filtered = peer.filterBlock(prepare());
+        assertEquals(2, filtered.txs().size());
+        assertEquals(3, filtered.merkleBlock().getTotal());
+        assertTrue(filtered.merkleBlock().isValid());
+        assertEquals(3, filtered.messages().size());
+    }
+
+    @Test
+    public void testFilterBlockUpdateNone() {
+        var bf = BloomFilter.create(10, 0.0001, 99);
+        bf.add(H160);
+        var peer = new PeerFilter(bf, BloomFilter.BLOOM_UPDATE_NONE);
+        var filtered = peer.filterBlock(prepare());
+        assertEquals(1, filtered.txs().size());
+        assertTrue(filtered.merkleBlock().isValid());
+    }
+
+    @Test
+    public void testUpdateP2PubkeyOnly() {
+        var key = Bytes.concat(new byte[]{2}, Hash.sha256(new byte[]{1}));
+        var other = Bytes.concat(new byte[]{3}, Hash.sha256(new byte[]{2}));
+        var scripts = List.of(
+                // <pubkey> OP_CHECKSIG
+                new Script(new ArrayList<>(List.of(new Cmd(key), OpCodes.OP_172_CHECKSIG.toCmd()))),
+                // OP_1 <pubkey> <pubkey> OP_2 OP_CHECKMULTISIG
+                new Script(new ArrayList<>(List.of(OpCodes.OP_81_1.toCmd(), new Cmd(key), new Cmd(other),
+                        OpCodes.OP_82_2.toCmd(), OpCodes.OP_174_CHECKMULTISIG.toCmd()))),
+                // n does not count the keys
+                new Script(new ArrayList<>(List.of(OpCodes.OP_81_1.toCmd(), new Cmd(key),
+                        OpCodes.OP_82_2.toCmd(), OpCodes.OP_174_CHECKMULTISIG.toCmd()))),
+                // m above n
+                new Script(new ArrayList<>(List.of(OpCodes.OP_82_2.toCmd(), new Cmd(key),
+                        OpCodes.OP_81_1.toCmd(), OpCodes.OP_174_CHECKMULTISIG.toCmd()))),
+                // not a key
+                new Script(new ArrayList<>(List.of(OpCodes.OP_81_1.toCmd(), new Cmd(Arrays.copyOf(key, 20)),
+                        OpCodes.OP_81_1.toCmd(), OpCodes.OP_174_CHECKMULTISIG.toCmd()))),
+                // m and n pushed as data
+                new Script(new ArrayList<>(List.of(new Cmd(1), new Cmd(key), new Cmd(1),
+                        OpCodes.OP_174_CHECKMULTISIG.toCmd()))));
+        var txOuts = new ArrayList<TxOut>();
+        for (Script script : scripts) {
+            txOuts.add(new TxOut(Int.parse(1000), script));
+        }
+        var txIn = new TxIn(Hex.parse(Hash.hash256(new byte[]{9})), Int.parse(0), null, Hex.parse("ffffffff"));
+        var tx = new Tx(Int.parse(1), new ArrayList<>(List.of(txIn)), txOuts, Int.parse(0), false, false);
+        var merkleRoot = Bytes.reverseOrder(Hash.hash256(tx.serializeLegacy()));
+        var block = new Block(Int.parse(1), new byte[32], merkleRoot, Int.parse(0), new byte[4], new byte[4], null);
+        var prepared = new PreparedBlock(block, List.of(tx));
+
+        var bf = BloomFilter.create(10, 0.0001, 99);
+        bf.add(key);
+        assertTrue(prepared.matchAndUpdate(0, bf, BloomFilter.BLOOM_UPDATE_P2PUBKEY_ONLY));
+        var txId = Bytes.reverseOrder(tx.hash());
+        for (int o = 0; o < scripts.size(); o++) {
+            var outpoint = Bytes.concat(txId, new byte[]{(byte) o, 0, 0, 0});
+            assertEquals("output " + o, o < 2, bf.contains(outpoint));
+        }
+    }
+
+    @Test
+    public void testParse() {
+        var bf = new BloomFilter(10, 5, 99);
+        bf.add(H160);
+        var payload = bf.filterload(Int.parse(BloomFilter.BLOOM_UPDATE_P2PUBKEY_ONLY)).serialize();
+        var peer = PeerFilter.parse(new ByteArrayInputStream(payload));
+        assertEquals(BloomFilter.BLOOM_UPDATE_P2PUBKEY_ONLY, peer.getUpdateFlag());
+        assertArrayEquals(bf.filterBytes(), peer.getFilter().filterBytes());
+        assertTrue(peer.getFilter().contains(H160));
+        assertEquals(bf.fillRatio(), peer.getFilter().fillRatio(), 0);
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.smithiboss.block;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Helper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RawBlockTest {
+
+    private static final String COINBASE = "01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff5e03d71b07254d696e656420627920416e74506f6f6c20626a31312f4542312f4144362f43205914293101fabe6d6d678e2c8c34afc36896e7d9402824ed38e856676ee94bfdb0c6c4bcd8b2e5666a0400000000000000c7270000a5e00e00ffffffff01faf20b58000000001976a914338c84849423992471bffb1a54a8d9b1d69dc28a88ac00000000";
+    private static final String RAW_TX = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+
+    /**
+     * A block of a coinbase, a legacy and a segwit transaction with a matching merkle root
+     */
+    static byte[] block(List<Tx> txs) {
+        var hashes = new ArrayList<>(txs.stream().map(tx -> Bytes.reverseOrder(tx.hash())).toList());
+        var root = Bytes.reverseOrder(Helper.merkleRoot(hashes));
+        var header = new Block(Int.parse(0x20000000), new byte[32], root, Int.parse(1700000000),
+                Bytes.hexStringToByteArray("1d00ffff"), new byte[4], null);
+        var out = new ByteArrayOutputStream();
+        out.writeBytes(header.serialize());
+        out.writeBytes(Helper.encodeVarInt(Int.parse(txs.size())));
+        txs.forEach(tx -> out.writeBytes(tx.serialize()));
+        return out.toByteArray();
+    }
+
+    static List<Tx> txs() {
+        var legacy = Tx.parse(RAW_TX, false);
+        var segwit = new Tx(legacy.getVersion(), Tx.parse(RAW_TX, false).getTxIns(), legacy.getTxOuts(), Int.parse(7), false, true);
+        segwit.getTxIns().getFirst().setWitness(new Script(new ArrayList<>(List.of(new Cmd(new byte[72]), new Cmd(new byte[33])))));
+        return List.of(Tx.parse(COINBASE, false), legacy, segwit);
+    }
+
+    @Test
+    public void testParse() {
+        var txs = txs();
+        var bytes = block(txs);
+        var block = RawBlock.parse(bytes, false);
+        assertEquals(3, block.getTxCount());
+        assertEquals(bytes.length, block.size());
+        assertArrayEquals(Arrays.copyOf(bytes, 80), block.getHeader().serialize());
+        for (int i = 0; i < txs.size(); i++) {
+            var tx = txs.get(i);
+            assertArrayEquals(tx.hash(), block.txId(i));
+            assertArrayEquals(tx.witnessHash(), block.witnessId(i));
+            assertEquals(tx.measure(), block.span(i).size());
+            assertEquals(i == 2, block.span(i).isSegwit());
+            var raw = new byte[block.span(i).length()];
+            block.rawTx(i).get(raw);
+            assertArrayEquals(tx.serialize(), raw);
+        }
+        assertTrue(block.toBlock().validateMerkleRoot());
+
+        // transactions are parsed one by one, sequentially or in parallel
+        var ids = new ArrayList<String>();
+        for (Tx tx : block) ids.add(tx.getId());
+        assertEquals(txs.stream().map(Tx::getId).toList(), ids);
+        assertEquals(ids, block.txs().parallel().map(Tx::getId).toList());
+        assertEquals(txs.get(2).getWitnessId(), block.tx(2).getWitnessId());
+
+        // a view of a larger buffer
+        var padded = ByteBuffer.allocate(bytes.length + 10).position(5);
+        padded.put(bytes).position(5).limit(5 + bytes.length);
+        assertArrayEquals(block.txId(2), RawBlock.wrap(padded, false).txId(2));
+
+        assertThrows(IllegalStateException.class, () -> RawBlock.parse(Arrays.copyOf(bytes, bytes.length - 1), false));
+        assertThrows(IllegalStateException.class, () -> RawBlock.parse(Arrays.copyOf(bytes, bytes.length + 1), false));
+        assertThrows(IllegalStateException.class, () -> RawBlock.parse(Arrays.copyOf(bytes, 50), false));
+    }
+}
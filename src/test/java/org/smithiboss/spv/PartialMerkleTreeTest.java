@@ -0,0 +1,63 @@
+package org.smithiboss.spv;
+
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Helper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class PartialMerkleTreeTest {
+
+    private static ArrayList<byte[]> hashes() {
+        var hexHashes = new ArrayList<byte[]>();
+        hexHashes.add(Hex.parse("42f6f52f17620653dcc909e58bb352e0bd4bd1381e2955d19c00959a22122b2e").toBytes());
+        hexHashes.add(Hex.parse("94c3af34b9667bf787e1c6a0a009201589755d01d02fe2877cc69b929d2418d4").toBytes());
+        hexHashes.add(Hex.parse("959428d7c48113cb9149d0566bde3d46e98cf028053c522b8fa8f735241aa953").toBytes());
+        hexHashes.add(Hex.parse("a9f27b99d5d108dede755710d4a1ffa2c74af70b4ca71726fa57d68454e609a2").toBytes());
+        hexHashes.add(Hex.parse("62af110031e29de1efcad103b3ad4bec7bdcf6cb9c9f4afdd586981795516577").toBytes());
+        return hexHashes;
+    }
+
+    @Test
+    public void testBuildAllMatched() {
+        var hexHashes = hashes();
+        var tree = PartialMerkleTree.build(Helper.merkleLevels(hexHashes), new boolean[]{true, true, true, true, true});
+        assertEquals(5, tree.getTotal());
+        assertArrayEquals(hexHashes.toArray(), tree.getHashes().toArray());
+        // 11 nodes are visited, all of them are parents of a match
+        assertArrayEquals(Bytes.hexStringToByteArray("ff07"), tree.getFlags());
+    }
+
+    @Test
+    public void testBuildNoneMatched() {
+        var levels = Helper.merkleLevels(hashes());
+        var tree = PartialMerkleTree.build(levels, new boolean[5]);
+        assertEquals(1, tree.getHashes().size());
+        assertArrayEquals(levels.getLast().getFirst(), tree.getHashes().getFirst());
+        assertArrayEquals(new byte[]{0x00}, tree.getFlags());
+    }
+
+    @Test
+    public void testBuildPopulate() {
+        var hexHashes = hashes();
+        var levels = Helper.merkleLevels(hexHashes);
+        var root = Hex.parse("a8e8bd023169b81bc56854137a135b97ef47a6a7237f4c6e037baed16285a5ab").toBytes();
+        for (int mask = 0; mask < 32; mask++) {
+            var matches = new boolean[5];
+            for (int i = 0; i < 5; i++) {
+                matches[i] = (mask >> i & 1) == 1;
+            }
+            var partial = PartialMerkleTree.build(levels, matches);
+            var tree = new FlatMerkleTree(partial.getTotal());
+            tree.populateTree(partial.getFlags(), partial.getHashes(), false);
+            assertArrayEquals(root, tree.root());
+            for (int i = 0; i < 5; i++) {
+                if (matches[i]) assertTrue(partial.getHashes().contains(hexHashes.get(i)));
+            }
+        }
+    }
+
+}
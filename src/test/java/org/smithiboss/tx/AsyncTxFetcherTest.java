@@ -0,0 +1,159 @@
+package org.smithiboss.tx;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Bytes;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class AsyncTxFetcherTest {
+
+    private static final String RAW_TX = "0100000001813f79011acb80925dfe69b3def355fe914bd1d96a3f5f71bf8303c6a989c7d1000000006b483045022100ed81ff192e75a3fd2304004dcadb746fa5e24c5031ccfcf21320b0277457c98f02207a986d955c6e0cb35d446a89d3f56100f4d7f67801c31967743a9c8e10615bed01210349fc4e631e3624a545de3f89f5d8684c7b8138bd94bdd531d2e213bf016b278afeffffff02a135ef01000000001976a914bc3b654dca7e56b04dca18f2566cdaf02e8d9ada88ac99c39800000000001976a9141c4bc762dd5423e332166702cb75f40df79fea1288ac19430600";
+    private static final String OTHER_TX = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+
+    private static AsyncTxFetcher fetcher(StubTxServer server, int maxConcurrent, int maxRetries) {
+        return new AsyncTxFetcher(server.getUrl(), false, maxConcurrent, maxRetries, Duration.ofMillis(1));
+    }
+
+    @Test
+    public void testDeduplicate() throws IOException {
+        TxFetcher.getCache().clear();
+        try (var server = new StubTxServer()) {
+            var txId = server.add(RAW_TX);
+            var fetcher = fetcher(server, 4, 0);
+            var gate = server.hold();
+            var first = fetcher.fetch(txId);
+            var second = fetcher.fetch(txId);
+            assertEquals(1, fetcher.inFlight());
+            gate.countDown();
+            assertEquals(txId, first.join().getId());
+            assertEquals(txId, second.join().getId());
+            assertNotSame(first.join(), second.join());
+            assertEquals(1, server.getRequests());
+            // cached now
+            assertEquals(txId, fetcher.fetch(txId).join().getId());
+            assertEquals(1, server.getRequests());
+            assertEquals(0, fetcher.inFlight());
+        } finally {
+            TxFetcher.getCache().clear();
+        }
+    }
+
+    @Test
+    public void testRetry() throws IOException {
+        TxFetcher.getCache().clear();
+        try (var server = new StubTxServer()) {
+            var txId = server.add(RAW_TX);
+            server.failNext(2);
+            assertEquals(txId, fetcher(server, 4, 2).fetch(txId).join().getId());
+            assertEquals(3, server.getRequests());
+
+            TxFetcher.getCache().clear();
+            server.failNext(3);
+            var error = assertThrows(CompletionException.class, () -> fetcher(server, 4, 2).fetch(txId).join());
+            assertTrue(error.getCause() instanceof IOException);
+            assertEquals(6, server.getRequests());
+
+            // an unknown transaction is not retried
+            error = assertThrows(CompletionException.class, () -> fetcher(server, 4, 2).fetch("00".repeat(32)).join());
+            assertTrue(error.getCause() instanceof IOException);
+            assertEquals(7, server.getRequests());
+        } finally {
+            TxFetcher.getCache().clear();
+        }
+    }
+
+    @Test
+    public void testInvalidTxId() throws IOException {
+        TxFetcher.getCache().clear();
+        try (var server = new StubTxServer()) {
+            var fetcher = fetcher(server, 1, 0);
+            for (var txId : List.of("00 11", "00|11", "00".repeat(33), "zz".repeat(32))) {
+                var error = assertThrows(CompletionException.class, () -> fetcher.fetch(txId).join());
+                assertTrue(error.getCause() instanceof IllegalArgumentException);
+                // nothing is left behind for the next caller to wait on
+                assertEquals(0, fetcher.inFlight());
+                assertThrows(CompletionException.class, () -> fetcher.fetch(txId).join());
+            }
+            assertEquals(0, server.getRequests());
+        } finally {
+            TxFetcher.getCache().clear();
+        }
+    }
+
+    @Test
+    public void testInvalidBaseUrl() throws IOException {
+        TxFetcher.getCache().clear();
+        try (var server = new StubTxServer()) {
+            var txId = server.add(RAW_TX);
+            var fetcher = new AsyncTxFetcher("http://no such host", false, 1, 0, Duration.ofMillis(1));
+            var error = assertThrows(CompletionException.class, () -> fetcher.fetch(txId).join());
+            assertTrue(error.getCause() instanceof IllegalArgumentException);
+            assertEquals(0, fetcher.inFlight());
+            assertThrows(CompletionException.class, () -> fetcher.fetch(txId).join());
+            assertEquals(0, server.getRequests());
+        } finally {
+            TxFetcher.getCache().clear();
+        }
+    }
+
+    @Test
+    public void testFetchAll() throws IOException {
+        TxFetcher.getCache().clear();
+        try (var server = new StubTxServer()) {
+            var txId = server.add(RAW_TX);
+            var otherId = server.add(OTHER_TX);
+            var txs = fetcher(server, 1, 0).fetchAll(List.of(txId, otherId, txId)).join();
+            assertEquals(List.of(txId, otherId), List.copyOf(txs.keySet()));
+            assertEquals(otherId, txs.get(otherId).getId());
+            assertEquals(2, server.getRequests());
+
+            // a transaction served under a different txid is rejected
+            TxFetcher.getCache().clear();
+            var wrongId = "11".repeat(32);
+            server.put(wrongId, RAW_TX);
+            var error = assertThrows(CompletionException.class, () -> fetcher(server, 1, 0).fetchAll(List.of(txId, wrongId)).join());
+            assertTrue(error.getCause() instanceof IllegalStateException);
+        } finally {
+            TxFetcher.getCache().clear();
+        }
+    }
+
+    @Test
+    public void testSegwit() throws IOException {
+        TxFetcher.getCache().clear();
+        var legacy = Tx.parse(OTHER_TX, false);
+        var tx = new Tx(legacy.getVersion(), legacy.getTxIns(), legacy.getTxOuts(), Int.parse(500000), false, true);
+        tx.getTxIns().getFirst().setWitness(new Script(new ArrayList<>(List.of(new Cmd(new byte[72]), new Cmd(new byte[33])))));
+        var rawTx = Bytes.byteArrayToHexString(tx.serializeSegwit());
+        try (var server = new StubTxServer()) {
+            // surrounding whitespace of the response is skipped
+            server.put(tx.getId(), rawTx + "\n");
+            var fetched = fetcher(server, 4, 0).fetch(tx.getId()).join();
+            assertEquals(tx.getId(), fetched.getId());
+            assertEquals(tx.getWitnessId(), fetched.getWitnessId());
+            assertEquals(Int.parse(500000), fetched.getLockTime());
+
+            TxFetcher.getCache().clear();
+            fetched = TxFetcher.fetch(server.getUrl(), tx.getId(), false);
+            assertEquals(tx.getWitnessId(), fetched.getWitnessId());
+            assertArrayEquals(tx.serializeSegwit(), TxFetcher.getCache().get(tx.getId()));
+            assertEquals(2, server.getRequests());
+
+            // a response that is not hex fails the fetch
+            TxFetcher.getCache().clear();
+            server.put(tx.getId(), rawTx.substring(1));
+            assertNull(TxFetcher.fetch(server.getUrl(), tx.getId(), false));
+        } finally {
+            TxFetcher.getCache().clear();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.smithiboss.tx;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.ecc.PrivateKey;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrevoutProviderTest {
+
+    private static final String RAW_TX = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+    private static final OutPoint PREVOUT = new OutPoint(Hex.parse("0d6fe5213c0b3291f208cba8bfb59b7476dffacc4e5cb66f6eb20a080843a299"), 13);
+
+    @Test
+    public void testSignAndVerify() {
+        var privateKey = new PrivateKey(Int.parse(8675309));
+        var prevouts = new InMemoryPrevoutProvider();
+        prevouts.put(PREVOUT, new TxOut(Int.parse(44000000), Script.p2pkhScript(privateKey.getPublicKey().hash160(true))));
+        var tx = Tx.parse(RAW_TX, true);
+        assertTrue(tx.signInput(0, privateKey, Hash.SIGHASH_ALL, prevouts));
+        var want = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d0000006b4830450221008ed46aa2cf12d6d81065bfabe903670165b538f65ee9a3385e6327d80c66d3b502203124f804410527497329ec4715e18558082d489b218677bd029e7fa306a72236012103935581e52c354cd2f484fe8ed83af7a3097005b2f9c60bff71d35bd795f54b67ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+        assertEquals(want, Bytes.byteArrayToHexString(tx.serializeLegacy()));
+        assertEquals(Int.parse(1000000), tx.fee(prevouts));
+        assertTrue(tx.verify(prevouts));
+
+        // a different script pubkey or too small an amount fail verification
+        prevouts.put(PREVOUT, new TxOut(Int.parse(44000000), Script.p2pkhScript(new byte[20])));
+        assertFalse(tx.verify(prevouts));
+        prevouts.put(PREVOUT, new TxOut(Int.parse(42000000), Script.p2pkhScript(privateKey.getPublicKey().hash160(true))));
+        assertFalse(tx.verify(prevouts));
+        // an unknown prevout cannot be verified
+        prevouts.remove(PREVOUT);
+        assertThrows(IllegalStateException.class, () -> tx.verify(prevouts));
+    }
+
+    @Test
+    public void testConnect() {
+        var prevouts = new InMemoryPrevoutProvider();
+        var script = Script.p2pkhScript(new byte[20]);
+        var coinbase = new Tx(Int.parse(1), new ArrayList<>(List.of(new TxIn(Int.parse(0), Hex.parse("ffffffff"), null, Hex.parse("ffffffff")))),
+                List.of(new TxOut(Int.parse(5000), script), new TxOut(Int.parse(1000), script)), Int.parse(0), false, false);
+        prevouts.connect(coinbase);
+        assertEquals(2, prevouts.size());
+        var coinbaseId = Hex.parse(coinbase.hash());
+        var spend = new Tx(Int.parse(1), new ArrayList<>(List.of(new TxIn(coinbaseId, Int.parse(0), null, Hex.parse("ffffffff")))),
+                List.of(new TxOut(Int.parse(4000), script)), Int.parse(0), false, false);
+        prevouts.connect(spend);
+        assertEquals(2, prevouts.size());
+        assertNull(prevouts.prevout(new OutPoint(coinbaseId, 0)));
+        assertEquals(Int.parse(1000), prevouts.prevout(new OutPoint(coinbaseId, 1)).amount());
+        assertEquals(Int.parse(4000), prevouts.prevout(new OutPoint(Hex.parse(spend.hash()), 0)).amount());
+        // spending the same output again fails and leaves the set unchanged
+        assertThrows(IllegalStateException.class, () -> prevouts.connect(spend));
+        assertEquals(2, prevouts.size());
+    }
+
+    @Test
+    public void testCaching() {
+        var lookups = new int[1];
+        var txOut = new TxOut(Int.parse(1), Script.p2pkhScript(new byte[20]));
+        PrevoutProvider delegate = outPoint -> {
+            lookups[0]++;
+            return outPoint.index() < 10 ? txOut : null;
+        };
+        var cached = new CachingPrevoutProvider(delegate, 2);
+        var txId = Int.parse(1);
+        assertSame(txOut, cached.prevout(new OutPoint(txId, 0)));
+        assertSame(txOut, cached.prevout(new OutPoint(txId, 0)));
+        assertEquals(1, lookups[0]);
+        cached.prevout(new OutPoint(txId, 1));
+        cached.prevout(new OutPoint(txId, 2));
+        assertEquals(2, cached.size());
+        // the least recently used outpoint was evicted
+        cached.prevout(new OutPoint(txId, 0));
+        assertEquals(4, lookups[0]);
+        // unknown outputs are not cached
+        assertNull(cached.prevout(new OutPoint(txId, 10)));
+        assertNull(cached.prevout(new OutPoint(txId, 10)));
+        assertEquals(6, lookups[0]);
+        assertThrows(IllegalArgumentException.class, () -> new CachingPrevoutProvider(delegate, 0));
+    }
+}
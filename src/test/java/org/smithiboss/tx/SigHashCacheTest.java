@@ -0,0 +1,132 @@
+package org.smithiboss.tx;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+import org.smithiboss.utils.Helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SigHashCacheTest {
+
+    @Test
+    public void testLegacySigHash() {
+        var rawTx = "0100000001813f79011acb80925dfe69b3def355fe914bd1d96a3f5f71bf8303c6a989c7d1000000006b483045022100ed81ff192e75a3fd2304004dcadb746fa5e24c5031ccfcf21320b0277457c98f02207a986d955c6e0cb35d446a89d3f56100f4d7f67801c31967743a9c8e10615bed01210349fc4e631e3624a545de3f89f5d8684c7b8138bd94bdd531d2e213bf016b278afeffffff02a135ef01000000001976a914bc3b654dca7e56b04dca18f2566cdaf02e8d9ada88ac99c39800000000001976a9141c4bc762dd5423e332166702cb75f40df79fea1288ac19430600";
+        var tx = Tx.parse(rawTx, false);
+        var scriptPubkey = Script.parse(new ByteArrayInputStream(Bytes.hexStringToByteArray("1976a914a802fc56c704ce87c42d7c92eb75e7896bdc41ae88ac")));
+        var want = Hex.parse("27e0c5994dec7824e56dec6b2fcb342eb7cdb0d0957c2fce9882f715e85d81a6");
+        assertEquals(want, new SigHashCache(tx).legacySigHash(0, scriptPubkey, Hash.SIGHASH_ALL));
+        assertEquals(want, tx.sigHash(0, scriptPubkey));
+    }
+
+    @Test
+    public void testLegacySigHashManyInputs() {
+        var scriptCode = Script.p2pkhScript(new byte[20]);
+        var txIns = new ArrayList<TxIn>();
+        for (int i = 0; i < 5; i++) {
+            txIns.add(new TxIn(Hex.parse(Hash.hash256(new byte[]{(byte) i})), Int.parse(i), scriptCode, Int.parse(0xfffffffdL - i)));
+        }
+        var txOuts = List.of(new TxOut(Int.parse(1000), scriptCode), new TxOut(Int.parse(2000), Script.p2shScript(new byte[20])));
+        var tx = new Tx(Int.parse(2), txIns, txOuts, Int.parse(700000), false, false);
+        var cache = new SigHashCache(tx);
+        for (int i = 0; i < txIns.size(); i++) {
+            assertEquals(naiveSigHash(tx, i, scriptCode), cache.legacySigHash(i, scriptCode, Hash.SIGHASH_ALL));
+        }
+        assertThrows(IllegalArgumentException.class, () -> cache.legacySigHash(5, scriptCode, Hash.SIGHASH_ALL));
+    }
+
+    @Test
+    public void testLegacySigHashTypes() {
+        var scriptCode = Script.p2pkhScript(new byte[20]);
+        var txIns = new ArrayList<TxIn>();
+        for (int i = 0; i < 3; i++) {
+            txIns.add(new TxIn(Hex.parse(Hash.hash256(new byte[]{(byte) i})), Int.parse(i), null, Int.parse(0xfffffffdL - i)));
+        }
+        var txOuts = List.of(new TxOut(Int.parse(1000), scriptCode), new TxOut(Int.parse(2000), Script.p2shScript(new byte[20])));
+        var tx = new Tx(Int.parse(1), txIns, txOuts, Int.parse(0), false, false);
+        var cache = new SigHashCache(tx);
+        for (Int baseType : List.of(Hash.SIGHASH_ALL, Hash.SIGHASH_NONE, Hash.SIGHASH_SINGLE)) {
+            for (Int hashType : List.of(baseType, baseType.add(Hash.SIGHASH_ANYONECANPAY))) {
+                for (int i = 0; i < txOuts.size(); i++) {
+                    assertEquals(naiveSigHash(tx, i, scriptCode, hashType), cache.legacySigHash(i, scriptCode, hashType));
+                }
+            }
+        }
+        // SIGHASH_SINGLE without a matching output signs one
+        var one = Hex.parse("0100000000000000000000000000000000000000000000000000000000000000");
+        assertEquals(one, cache.legacySigHash(2, scriptCode, Hash.SIGHASH_SINGLE));
+        assertEquals(naiveSigHash(tx, 2, scriptCode, Hash.SIGHASH_ALL), cache.legacySigHash(2, scriptCode, Hash.SIGHASH_ALL));
+    }
+
+    @Test
+    public void testBip143P2wpkh() {
+        // native P2WPKH example of BIP143
+        var rawTx = "0100000002fff7f7881a8099afa6940d42d1e7f6362bec38171ea3edf433541db4e4ad969f0000000000eeffffffef51e1b804cc89d182d279655c3aa89e815b1b309fe287d9b2b55d57b90ec68a0100000000ffffffff02202cb206000000001976a9148280b37df378db99f66f85c95a783a76ac7a6d5988ac9093510d000000001976a9143bde42dbee7e4dbe6a21b2d50ce2f0167faa815988ac11000000";
+        var cache = new SigHashCache(Tx.parse(rawTx, false));
+        assertEquals(Hex.parse("96b827c8483d4e9b96712b6713a7b68d6e8003a781feba36c31143470b4efd37"), Hex.parse(cache.getHashPrevouts()));
+        assertEquals(Hex.parse("52b0a642eea2fb7ae638c36f6252b6750293dbe574a806984b8e4d8548339a3b"), Hex.parse(cache.getHashSequence()));
+        assertEquals(Hex.parse("863ef3e1a92afbfdb97f31ad0fc7683ee943e9abcf2501590ff8f6551f47e5e5"), Hex.parse(cache.getHashOutputs()));
+        var scriptCode = Bytes.hexStringToByteArray("1976a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a188ac");
+        var want = Hex.parse("c37af31116d1b27caf68aae9e3ac82f1477929014d5b917657d0eb49478cb670");
+        assertEquals(want, cache.bip143SigHash(1, scriptCode, Int.parse(600000000), Hash.SIGHASH_ALL));
+    }
+
+    @Test
+    public void testBip143SigHashTypes() {
+        // P2SH-P2WSH 6-of-6 multisig example of BIP143, signed with all six hash types
+        var rawTx = "010000000136641869ca081e70f394c6948e8af409e18b619df2ed74aa106c1ca29787b96e0100000000ffffffff0200e9a435000000001976a914389ffce9cd9ae88dcc0631e88a821ffdbe9bfe2688acc0832f05000000001976a9147480a33f950689af511e6e84c138dbbd3c3ee41588ac00000000";
+        var cache = new SigHashCache(Tx.parse(rawTx, false));
+        var scriptCode = Bytes.hexStringToByteArray("cf56210307b8ae49ac90a048e9b53357a2354b3334e9c8bee813ecb98e99a7e07e8c3ba32103b28f0c28bfab54554ae8c658ac5c3e0ce6e79ad336331f78c428dd43eea8449b21034b8113d703413d57761b8b9781957b8c0ac1dfe69f492580ca4195f50376ba4a21033400f6afecb833092a9a21cfdf1ed1376e58c5d1f47de74683123987e967a8f42103a6d48b1131e94ba04d9737d61acdaa1322008af9602b3b14862c07a1789aac162102d8b661b0b3302ee2f162b09e07a55ad5dfbe673a9f01d9f0c19617681024306b56ae");
+        var value = Int.parse(987654321);
+        assertEquals(Hex.parse("185c0be5263dce5b4bb50a047973c1b6272bfbd0103a89444597dc40b248ee7c"), cache.bip143SigHash(0, scriptCode, value, Int.parse(0x01)));
+        assertEquals(Hex.parse("e9733bc60ea13c95c6527066bb975a2ff29a925e80aa14c213f686cbae5d2f36"), cache.bip143SigHash(0, scriptCode, value, Int.parse(0x02)));
+        assertEquals(Hex.parse("1e1f1c303dc025bd664acb72e583e933fae4cff9148bf78c157d1e8f78530aea"), cache.bip143SigHash(0, scriptCode, value, Int.parse(0x03)));
+        assertEquals(Hex.parse("2a67f03e63a6a422125878b40b82da593be8d4efaafe88ee528af6e5a9955c6e"), cache.bip143SigHash(0, scriptCode, value, Int.parse(0x81)));
+        assertEquals(Hex.parse("781ba15f3779d5542ce8ecb5c18716733a5ee42a6f51488ec96154934e2c890a"), cache.bip143SigHash(0, scriptCode, value, Int.parse(0x82)));
+        assertEquals(Hex.parse("511e8e52ed574121fc1b654970395502128263f62662e076dc6baf05c2e6a99b"), cache.bip143SigHash(0, scriptCode, value, Int.parse(0x83)));
+    }
+
+    // serializes the whole transaction for the input, the way the signature hash is defined
+    private static Int naiveSigHash(Tx tx, int inputIndex, Script scriptCode) {
+        return naiveSigHash(tx, inputIndex, scriptCode, Hash.SIGHASH_ALL);
+    }
+
+    private static Int naiveSigHash(Tx tx, int inputIndex, Script scriptCode, Int hashType) {
+        var anyoneCanPay = (hashType.intValue() & 0x80) != 0;
+        var baseType = hashType.intValue() & 0x1f;
+        var stream = new ByteArrayOutputStream();
+        stream.writeBytes(tx.getVersion().toBytesLittleEndian(4));
+        stream.writeBytes(Helper.encodeVarInt(Int.parse(anyoneCanPay ? 1 : tx.getTxIns().size())));
+        for (int i = 0; i < tx.getTxIns().size(); i++) {
+            if (anyoneCanPay && i != inputIndex) continue;
+            var txIn = tx.getTxIns().get(i);
+            var script = i == inputIndex ? scriptCode : null;
+            var sequence = i != inputIndex && baseType != 1 ? Int.parse(0) : txIn.getSequence();
+            stream.writeBytes(new TxIn(txIn.getPrevTx(), txIn.getPrevIndex(), script, sequence).serialize());
+        }
+        var outputs = switch (baseType) {
+            case 2 -> List.<TxOut>of();
+            case 3 -> tx.getTxOuts().subList(0, inputIndex + 1);
+            default -> tx.getTxOuts();
+        };
+        stream.writeBytes(Helper.encodeVarInt(Int.parse(outputs.size())));
+        for (int i = 0; i < outputs.size(); i++) {
+            if (baseType == 3 && i < inputIndex) {
+                stream.writeBytes(new TxOut(Hex.parse("ffffffffffffffff"), new Script(null)).serialize());
+            } else {
+                stream.writeBytes(outputs.get(i).serialize());
+            }
+        }
+        stream.writeBytes(tx.getLockTime().toBytesLittleEndian(4));
+        stream.writeBytes(hashType.toBytesLittleEndian(4));
+        return Hex.parse(Hash.hash256(stream.toByteArray()));
+    }
+}
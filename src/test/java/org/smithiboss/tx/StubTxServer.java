@@ -0,0 +1,108 @@
+package org.smithiboss.tx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the Blockstream API, serving {@code /tx/<txid>/hex} from memory
+ */
+public class StubTxServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, String> txs = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile CountDownLatch gate = null;
+
+    public StubTxServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tx/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Serves the transaction under its txid
+     *
+     * @return the txid
+     */
+    public String add(String rawTx) {
+        var txId = Tx.parse(rawTx, false).getId();
+        txs.put(txId, rawTx);
+        return txId;
+    }
+
+    public void put(String txId, String rawTx) {
+        txs.put(txId, rawTx);
+    }
+
+    /**
+     * Answers the next requests with 503 Service Unavailable
+     */
+    public void failNext(int count) {
+        failures.set(count);
+    }
+
+    /**
+     * Holds all responses until the returned latch is counted down
+     */
+    public CountDownLatch hold() {
+        gate = new CountDownLatch(1);
+        return gate;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        var gate = this.gate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // the path is /tx/<txid>/hex
+        var parts = exchange.getRequestURI().getPath().split("/");
+        var rawTx = parts.length == 4 ? txs.get(parts[2]) : null;
+        if (failures.getAndDecrement() > 0) {
+            respond(exchange, 503, "Service Unavailable");
+        } else if (rawTx == null) {
+            respond(exchange, 404, "Transaction not found");
+        } else {
+            respond(exchange, 200, rawTx);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,156 @@
+package org.smithiboss.tx;
+
+import org.junit.Test;
+import org.smithiboss.utils.Bytes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class TxStoreTest {
+
+    private static final String RAW_TX = "0100000001813f79011acb80925dfe69b3def355fe914bd1d96a3f5f71bf8303c6a989c7d1000000006b483045022100ed81ff192e75a3fd2304004dcadb746fa5e24c5031ccfcf21320b0277457c98f02207a986d955c6e0cb35d446a89d3f56100f4d7f67801c31967743a9c8e10615bed01210349fc4e631e3624a545de3f89f5d8684c7b8138bd94bdd531d2e213bf016b278afeffffff02a135ef01000000001976a914bc3b654dca7e56b04dca18f2566cdaf02e8d9ada88ac99c39800000000001976a9141c4bc762dd5423e332166702cb75f40df79fea1288ac19430600";
+    private static final String TX_ID = "452c629d67e41baec3ac6f04fe744b4b9617f8f859c63b3002f8684e7a4fee03";
+
+    @Test
+    public void testReopen() throws IOException {
+        var path = Files.createTempFile("txstore", ".dat");
+        try {
+            var raw = Bytes.hexStringToByteArray(RAW_TX);
+            var otherId = "00".repeat(31) + "01";
+            try (var store = TxStore.open(path)) {
+                store.put(TX_ID, raw);
+                store.put(otherId, new byte[]{1, 2, 3});
+                // a stored transaction is not appended again
+                store.put(TX_ID, raw);
+                assertEquals(2, store.size());
+                assertArrayEquals(raw, store.get(TX_ID));
+            }
+            assertEquals(2L * 40 + raw.length + 3, Files.size(path));
+            try (var store = TxStore.open(path)) {
+                assertEquals(2, store.size());
+                assertArrayEquals(raw, store.get(TX_ID));
+                assertArrayEquals(new byte[]{1, 2, 3}, store.get(otherId));
+                assertNull(store.get("00".repeat(32)));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws IOException {
+        var path = Files.createTempFile("txstore", ".dat");
+        try {
+            var raw = Bytes.hexStringToByteArray(RAW_TX);
+            try (var store = TxStore.open(path)) {
+                store.put(TX_ID, raw);
+            }
+            var size = Files.size(path);
+            // a record cut off by a crash is dropped when the store is opened
+            Files.write(path, new byte[50], StandardOpenOption.APPEND);
+            try (var store = TxStore.open(path)) {
+                assertEquals(1, store.size());
+                assertEquals(size, Files.size(path));
+                store.put("00".repeat(32), new byte[]{4});
+            }
+            try (var store = TxStore.open(path)) {
+                assertEquals(2, store.size());
+                assertArrayEquals(new byte[]{4}, store.get("00".repeat(32)));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testCacheEviction() {
+        var cache = new TxCache(10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertNotNull(cache.get("a"));
+        // b is the least recently used entry
+        cache.put("c", new byte[4]);
+        assertNull(cache.get("b"));
+        assertEquals(8, cache.getBytes());
+        // too large for the whole cache
+        cache.put("d", new byte[11]);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+        cache.put("a", new byte[10]);
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.getBytes());
+    }
+
+    @Test
+    public void testFetcherCache() throws IOException {
+        var path = Files.createTempFile("txstore", ".dat");
+        try {
+            var raw = Bytes.hexStringToByteArray(RAW_TX);
+            TxFetcher.getCache().put(TX_ID, raw);
+            // served from the cache without the network
+            assertEquals(TX_ID, TxFetcher.fetch(TX_ID, false).getId());
+            TxFetcher.dumpCache(path.toString());
+            TxFetcher.getCache().clear();
+            TxFetcher.loadCache(path.toString());
+            assertArrayEquals(raw, TxFetcher.getCache().get(TX_ID));
+
+            // served from the store after the cache was cleared
+            TxFetcher.getCache().clear();
+            TxFetcher.useStore(path);
+            assertEquals(TX_ID, TxFetcher.fetch(TX_ID, false).getId());
+            assertNotNull(TxFetcher.getCache().get(TX_ID));
+        } finally {
+            TxFetcher.closeStore();
+            TxFetcher.getCache().clear();
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testUpperCaseTxId() throws IOException {
+        var path = Files.createTempFile("txstore", ".dat");
+        try {
+            var raw = Bytes.hexStringToByteArray(RAW_TX);
+            var upper = TX_ID.toUpperCase();
+            try (var store = TxStore.open(path)) {
+                store.put(upper, raw);
+                assertTrue(store.contains(TX_ID));
+                // the same txid in another case is not appended again
+                store.put(TX_ID, raw);
+                assertEquals(1, store.size());
+            }
+            try (var store = TxStore.open(path)) {
+                assertArrayEquals(raw, store.get(upper));
+                assertArrayEquals(raw, store.get(TX_ID));
+                assertTrue(store.contains(upper));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testInvalidTxId() throws IOException {
+        var path = Files.createTempFile("txstore", ".dat");
+        try {
+            try (var store = TxStore.open(path)) {
+                store.put(TX_ID, new byte[]{1});
+                assertThrows(IllegalArgumentException.class, () -> store.put("00".repeat(31), new byte[]{2}));
+                assertThrows(IllegalArgumentException.class, () -> store.put("00".repeat(33), new byte[]{2}));
+                assertThrows(IllegalArgumentException.class, () -> store.put("zz".repeat(32), new byte[]{2}));
+                assertThrows(IllegalArgumentException.class, () -> store.get("00".repeat(31)));
+                assertEquals(1, store.size());
+            }
+            // nothing was written for the rejected txids
+            assertEquals(40 + 1, Files.size(path));
+            try (var store = TxStore.open(path)) {
+                assertArrayEquals(new byte[]{1}, store.get(TX_ID));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
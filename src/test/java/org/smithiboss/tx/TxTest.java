@@ -3,8 +3,18 @@ package org.smithiboss.tx;
 import org.smithiboss.ecc.Hex;
 import org.smithiboss.ecc.Int;
 import org.smithiboss.ecc.PrivateKey;
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.OpCodes;
+import org.smithiboss.script.Script;
 import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
 import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 
@@ -141,6 +151,92 @@ public class TxTest {
         assertEquals(want, Bytes.byteArrayToHexString(tx.serializeLegacy()));
     }
 
+    @Test
+    public void testCachedId() {
+        var rawTx = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+        var tx = Tx.parse(rawTx, true);
+        var id = tx.getId();
+        assertSame(tx.hash(), tx.hash());
+        assertEquals(rawTx.length() / 2, tx.size());
+        assertEquals(tx.size(), tx.legacySize());
+        assertArrayEquals(tx.hash(), tx.witnessHash());
+        // changing the locktime changes the id
+        tx.setLockTime(Int.parse(1));
+        assertNotEquals(id, tx.getId());
+        tx.setLockTime(Int.parse(0));
+        assertEquals(id, tx.getId());
+        // changing the script sig changes the id
+        tx.getTxIns().getFirst().setScriptSig(new Script(new ArrayList<>(List.of(new Cmd(new byte[]{1, 2, 3})))));
+        assertNotEquals(id, tx.getId());
+        assertEquals(Tx.parse(Bytes.byteArrayToHexString(tx.serializeLegacy()), true).getId(), tx.getId());
+    }
+
+    @Test
+    public void testWitnessHash() {
+        var rawTx = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+        var legacy = Tx.parse(rawTx, true);
+        var tx = new Tx(legacy.getVersion(), legacy.getTxIns(), legacy.getTxOuts(), legacy.getLockTime(), true, true);
+        tx.getTxIns().getFirst().setWitness(new Script(new ArrayList<>(List.of(new Cmd(new byte[]{1, 2, 3})))));
+        assertEquals(legacy.getId(), tx.getId());
+        assertNotEquals(tx.getId(), tx.getWitnessId());
+        assertEquals(tx.legacySize() + 2 + 1 + 1 + 3, tx.size());
+        assertEquals(tx.getWitnessId(), Tx.parse(Bytes.byteArrayToHexString(tx.serializeSegwit()), true).getWitnessId());
+    }
+
+    @Test
+    public void testSharedInputs() {
+        var rawTx = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+        var first = Tx.parse(rawTx, true);
+        var second = new Tx(first.getVersion(), first.getTxIns(), first.getTxOuts(), first.getLockTime(), true, false);
+        var id = first.getId();
+        assertEquals(id, second.getId());
+        // an input of the first transaction is copied into the second, and each reports to its own transaction
+        assertNotSame(first.getTxIns().getFirst(), second.getTxIns().getFirst());
+        first.getTxIns().getFirst().setScriptSig(new Script(new ArrayList<>(List.of(new Cmd(new byte[]{1, 2, 3})))));
+        assertNotEquals(id, first.getId());
+        assertEquals(id, second.getId());
+        second.getTxIns().getFirst().setScriptSig(new Script(new ArrayList<>(List.of(new Cmd(new byte[]{1, 2, 3})))));
+        assertEquals(first.getId(), second.getId());
+    }
+
+    @Test
+    public void testSerializationCopies() {
+        var rawTx = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+        var tx = Tx.parse(rawTx, true);
+        var hash = Bytes.reverseOrder(Hash.hash256(Bytes.hexStringToByteArray(rawTx)));
+        // writing to a returned array does not change the cached serialization or the txid
+        tx.serializeLegacy()[10] ^= 1;
+        assertArrayEquals(hash, tx.hash());
+        assertArrayEquals(hash, tx.witnessHash());
+        assertEquals(rawTx, Bytes.byteArrayToHexString(tx.serializeLegacy()));
+    }
+
+    @Test
+    public void testWeight() {
+        var rawTx = "0100000001813f79011acb80925dfe69b3def355fe914bd1d96a3f5f71bf8303c6a989c7d1000000006b483045022100ed81ff192e75a3fd2304004dcadb746fa5e24c5031ccfcf21320b0277457c98f02207a986d955c6e0cb35d446a89d3f56100f4d7f67801c31967743a9c8e10615bed01210349fc4e631e3624a545de3f89f5d8684c7b8138bd94bdd531d2e213bf016b278afeffffff02a135ef01000000001976a914bc3b654dca7e56b04dca18f2566cdaf02e8d9ada88ac99c39800000000001976a9141c4bc762dd5423e332166702cb75f40df79fea1288ac19430600";
+        var legacy = Tx.parse(rawTx, true);
+        assertEquals(226, legacy.size());
+        assertEquals(226 * 4, legacy.weight());
+        assertEquals(226, legacy.vsize());
+        assertEquals(new TxSize(226, 226), TxSize.scan(new ByteArrayInputStream(Bytes.hexStringToByteArray(rawTx))));
+        assertEquals(10.0, legacy.feeRate(Int.parse(2260)), 0.0);
+
+        var tx = new Tx(legacy.getVersion(), legacy.getTxIns(), legacy.getTxOuts(), legacy.getLockTime(), true, true);
+        tx.getTxIns().getFirst().setWitness(new Script(new ArrayList<>(List.of(new Cmd(new byte[72]), new Cmd(new byte[33])))));
+        var serialized = tx.serializeSegwit();
+        assertEquals(serialized.length, tx.size());
+        assertEquals(226, tx.legacySize());
+        // 2 bytes marker and flag, 1 byte item count and 2 items with a length byte each
+        assertEquals(226 * 3 + 226 + 2 + 1 + 73 + 34, tx.weight());
+        assertEquals(254, tx.vsize());
+        // scanning leaves the stream after the transaction
+        var s = new ByteArrayInputStream(Bytes.concat(serialized, serialized));
+        assertEquals(tx.measure(), TxSize.scan(s));
+        assertEquals(tx.measure(), TxSize.scan(s));
+        assertEquals(0, s.available());
+        assertThrows(IllegalStateException.class, () -> TxSize.scan(new ByteArrayInputStream(Arrays.copyOf(serialized, 100))));
+    }
+
     @Test
     public void testIsCoinbase() {
         var rawTx = "01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff5e03d71b07254d696e656420627920416e74506f6f6c20626a31312f4542312f4144362f43205914293101fabe6d6d678e2c8c34afc36896e7d9402824ed38e856676ee94bfdb0c6c4bcd8b2e5666a0400000000000000c7270000a5e00e00ffffffff01faf20b58000000001976a914338c84849423992471bffb1a54a8d9b1d69dc28a88ac00000000";
@@ -159,6 +255,36 @@ public class TxTest {
         
     }
 
+    @Test
+    public void testVerifyMixedHashTypes() {
+        var key1 = new PrivateKey(Int.parse(8675309));
+        var key2 = new PrivateKey(Int.parse(9035768));
+        // a bare 2-of-2 multisig output
+        var scriptPubkey = new Script(List.of(OpCodes.OP_82_2.toCmd(), new Cmd(key1.getPublicKey().sec(true)),
+                new Cmd(key2.getPublicKey().sec(true)), OpCodes.OP_82_2.toCmd(), OpCodes.OP_174_CHECKMULTISIG.toCmd()));
+        var prevouts = new InMemoryPrevoutProvider();
+        var txId = Hex.parse(Hash.hash256(new byte[]{1}));
+        prevouts.put(new OutPoint(txId, 0), new TxOut(Int.parse(2000), scriptPubkey));
+        var txIns = new ArrayList<TxIn>(List.of(new TxIn(txId, Int.parse(0), null, Hex.parse("ffffffff"))));
+        var txOuts = List.of(new TxOut(Int.parse(1500), Script.p2pkhScript(key1.getPublicKey().hash160(true))));
+        var tx = new Tx(Int.parse(1), txIns, txOuts, Int.parse(0), false, false);
+
+        // the first key signs everything, the second one no output
+        var all = Bytes.concat(key1.sign(tx.sigHash(0, null, Hash.SIGHASH_ALL, prevouts)).der(),
+                Hash.SIGHASH_ALL.toBytes(1));
+        var none = Bytes.concat(key2.sign(tx.sigHash(0, null, Hash.SIGHASH_NONE, prevouts)).der(),
+                Hash.SIGHASH_NONE.toBytes(1));
+        tx.getTxIns().getFirst().setScriptSig(new Script(List.of(OpCodes.OP_0_0.toCmd(), new Cmd(all), new Cmd(none))));
+        assertTrue(tx.verifyInput(0, prevouts));
 
+        // the signatures must be in the order of the keys
+        tx.getTxIns().getFirst().setScriptSig(new Script(List.of(OpCodes.OP_0_0.toCmd(), new Cmd(none), new Cmd(all))));
+        assertFalse(tx.verifyInput(0, prevouts));
 
+        // a signature of the hash of another type
+        var relabeled = Arrays.copyOf(none, none.length);
+        relabeled[relabeled.length - 1] = (byte) Hash.SIGHASH_ALL.intValue();
+        tx.getTxIns().getFirst().setScriptSig(new Script(List.of(OpCodes.OP_0_0.toCmd(), new Cmd(all), new Cmd(relabeled))));
+        assertFalse(tx.verifyInput(0, prevouts));
+    }
 }
@@ -0,0 +1,192 @@
+package org.smithiboss.tx;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.ecc.PrivateKey;
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.OpCodes;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Bytes;
+import org.smithiboss.utils.Hash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TxVerifierTest {
+
+    private static final int INPUTS = 4;
+
+    private final PrivateKey privateKey = new PrivateKey(Int.parse(8675309));
+    private final InMemoryPrevoutProvider prevouts = new InMemoryPrevoutProvider();
+
+    // a transaction spending one p2pkh output per input, all signed with the same key
+    private Tx signedTx() {
+        var scriptPubkey = Script.p2pkhScript(privateKey.getPublicKey().hash160(true));
+        var txIns = new ArrayList<TxIn>();
+        for (int i = 0; i < INPUTS; i++) {
+            var txId = Hex.parse(Hash.hash256(new byte[]{(byte) i}));
+            prevouts.put(new OutPoint(txId, i), new TxOut(Int.parse(1000), scriptPubkey));
+            txIns.add(new TxIn(txId, Int.parse(i), null, Hex.parse("ffffffff")));
+        }
+        var tx = new Tx(Int.parse(1), txIns, List.of(new TxOut(Int.parse(3000), scriptPubkey)), Int.parse(0), false, false);
+        for (int i = 0; i < INPUTS; i++) {
+            assertTrue(tx.signInput(i, privateKey, Hash.SIGHASH_ALL, prevouts));
+        }
+        return tx;
+    }
+
+    @Test
+    public void testVerify() {
+        var context = VerificationContext.resolve(signedTx(), prevouts);
+        var sequential = TxVerifier.sequential().verify(context);
+        assertTrue(sequential.valid());
+        assertEquals(INPUTS, sequential.inputs().size());
+        assertEquals(-1, sequential.firstInvalidInput());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var parallel = TxVerifier.parallel(executor).verify(context);
+            assertTrue(parallel.valid());
+            for (VerificationResult.InputResult input : parallel.inputs()) {
+                assertEquals(VerificationResult.Status.VALID, input.status());
+            }
+        }
+        assertTrue(TxVerifier.parallel().verify(context).valid());
+    }
+
+    @Test
+    public void testInvalidInput() {
+        var tx = signedTx();
+        // the signature of input 0 does not sign input 1
+        tx.getTxIns().get(1).setScriptSig(tx.getTxIns().getFirst().getScriptSig());
+        var context = VerificationContext.resolve(tx, prevouts);
+
+        var sequential = TxVerifier.sequential().verify(context);
+        assertFalse(sequential.valid());
+        assertEquals(1, sequential.firstInvalidInput());
+        assertEquals(VerificationResult.Status.VALID, sequential.inputs().get(0).status());
+        assertEquals(VerificationResult.Status.CANCELLED, sequential.inputs().get(2).status());
+        assertEquals(VerificationResult.Status.CANCELLED, sequential.inputs().get(3).status());
+
+        var parallel = TxVerifier.parallel().verify(context);
+        assertFalse(parallel.valid());
+        assertEquals(1, parallel.firstInvalidInput());
+    }
+
+    @Test
+    public void testNegativeFee() {
+        var tx = signedTx();
+        for (int i = 0; i < INPUTS; i++) {
+            var outPoint = OutPoint.of(tx.getTxIns().get(i));
+            prevouts.put(outPoint, new TxOut(Int.parse(100), prevouts.prevout(outPoint).scriptPubkey()));
+        }
+        var result = TxVerifier.parallel().verify(VerificationContext.resolve(tx, prevouts));
+        assertFalse(result.feeValid());
+        assertFalse(result.valid());
+        for (VerificationResult.InputResult input : result.inputs()) {
+            assertEquals(VerificationResult.Status.CANCELLED, input.status());
+        }
+    }
+
+    @Test
+    public void testFailureWhileRunning() {
+        // input 0 is a p2pkh spend with a signature of something else
+        var p2pkh = Script.p2pkhScript(privateKey.getPublicKey().hash160(true));
+        // input 1 is a bare 1-of-16 multisig signed by the last key, so it checks the signature sixteen times
+        var cmds = new ArrayList<Cmd>(List.of(new Cmd(new byte[]{1})));
+        for (int i = 1; i < 16; i++) {
+            cmds.add(new Cmd(new PrivateKey(Int.parse(i)).getPublicKey().sec(true)));
+        }
+        cmds.add(new Cmd(privateKey.getPublicKey().sec(true)));
+        cmds.add(new Cmd(new byte[]{16}));
+        cmds.add(OpCodes.OP_174_CHECKMULTISIG.toCmd());
+        var multisig = new Script(cmds);
+
+        var txIns = new ArrayList<TxIn>();
+        var scriptPubkeys = List.of(p2pkh, multisig);
+        for (int i = 0; i < scriptPubkeys.size(); i++) {
+            var txId = Hex.parse(Hash.hash256(new byte[]{(byte) i}));
+            prevouts.put(new OutPoint(txId, i), new TxOut(Int.parse(1000), scriptPubkeys.get(i)));
+            txIns.add(new TxIn(txId, Int.parse(i), null, Hex.parse("ffffffff")));
+        }
+        var tx = new Tx(Int.parse(1), txIns, List.of(new TxOut(Int.parse(1500), p2pkh)), Int.parse(0), false, false);
+        var wrong = Bytes.concat(privateKey.sign(Int.parse(1)).der(), Hash.SIGHASH_ALL.toBytes(1));
+        tx.getTxIns().get(0).setScriptSig(new Script(List.of(new Cmd(wrong), new Cmd(privateKey.getPublicKey().sec(true)))));
+        var z = tx.sigHash(1, null, Hash.SIGHASH_ALL, prevouts);
+        var sig = Bytes.concat(privateKey.sign(z).der(), Hash.SIGHASH_ALL.toBytes(1));
+        tx.getTxIns().get(1).setScriptSig(new Script(List.of(OpCodes.OP_0_0.toCmd(), new Cmd(sig))));
+
+        var context = VerificationContext.resolve(tx, prevouts);
+        try (var executor = new InputOneFirst(Executors.newFixedThreadPool(2))) {
+            var result = TxVerifier.parallel(executor).verify(context);
+            assertFalse(result.valid());
+            assertEquals(0, result.firstInvalidInput());
+            // input 1 was still running when input 0 failed, its result is waited for
+            assertEquals(VerificationResult.Status.VALID, result.inputs().get(1).status());
+        }
+    }
+
+    /**
+     * Holds the task of input 0 until the task of input 1 is running, so input 0 fails while input 1 is verified
+     */
+    private static class InputOneFirst extends AbstractExecutorService {
+
+        private final ExecutorService executor;
+        private final AtomicInteger submitted = new AtomicInteger();
+        private final CountDownLatch running = new CountDownLatch(1);
+
+        InputOneFirst(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            var index = submitted.getAndIncrement();
+            executor.execute(() -> {
+                if (index == 0) {
+                    try {
+                        running.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                } else {
+                    running.countDown();
+                }
+                command.run();
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.smithiboss.tx;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.ecc.PrivateKey;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Hash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VerificationContextTest {
+
+    private static final String RAW_TX = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+    private static final OutPoint PREVOUT = new OutPoint(Hex.parse("0d6fe5213c0b3291f208cba8bfb59b7476dffacc4e5cb66f6eb20a080843a299"), 13);
+
+    @Test
+    public void testResolveOnce() {
+        var privateKey = new PrivateKey(Int.parse(8675309));
+        var prevouts = new InMemoryPrevoutProvider();
+        var spent = new TxOut(Int.parse(44000000), Script.p2pkhScript(privateKey.getPublicKey().hash160(true)));
+        prevouts.put(PREVOUT, spent);
+        var tx = Tx.parse(RAW_TX, true);
+        assertTrue(tx.signInput(0, privateKey, Hash.SIGHASH_ALL, prevouts));
+
+        var lookups = new AtomicInteger();
+        PrevoutProvider counting = outPoint -> {
+            lookups.incrementAndGet();
+            return prevouts.prevout(outPoint);
+        };
+        var context = VerificationContext.resolve(tx, counting);
+        assertEquals(1, lookups.get());
+        assertSame(spent, context.getSpent(0));
+        assertEquals(Int.parse(1000000), context.fee());
+        assertTrue(context.verify());
+        assertTrue(context.verifyInput(0));
+        // the fee check, signature hash and script evaluation did not look up the output again
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testResolveParallel() {
+        var prevouts = new InMemoryPrevoutProvider();
+        var txIns = new ArrayList<TxIn>();
+        for (int i = 0; i < 20; i++) {
+            var outPoint = new OutPoint(Int.parse(i + 1), i);
+            prevouts.put(outPoint, new TxOut(Int.parse(i), Script.p2pkhScript(new byte[20])));
+            txIns.add(new TxIn(outPoint.txId(), Int.parse(i), null, Hex.parse("ffffffff")));
+        }
+        // the same outpoint twice is resolved once
+        txIns.add(new TxIn(Int.parse(1), Int.parse(0), null, Hex.parse("ffffffff")));
+        var tx = new Tx(Int.parse(1), txIns, List.of(), Int.parse(0), false, false);
+
+        var lookups = new AtomicInteger();
+        PrevoutProvider counting = outPoint -> {
+            lookups.incrementAndGet();
+            return prevouts.prevout(outPoint);
+        };
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var context = VerificationContext.resolve(tx, counting, executor);
+            assertEquals(20, lookups.get());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(Int.parse(i), context.getSpent(i).amount());
+            }
+            assertSame(context.getSpent(0), context.getSpent(20));
+            assertEquals(Int.parse(190), context.fee());
+        }
+        assertEquals(Int.parse(190), VerificationContext.resolveParallel(tx, prevouts).fee());
+
+        // an unknown output fails the resolution
+        prevouts.remove(new OutPoint(Int.parse(5), 4));
+        assertThrows(IllegalStateException.class, () -> VerificationContext.resolveParallel(tx, prevouts));
+        assertThrows(IllegalStateException.class, () -> VerificationContext.resolve(tx, prevouts));
+    }
+
+    @Test
+    public void testCoinbase() {
+        var coinbase = new Tx(Int.parse(1), new ArrayList<>(List.of(new TxIn(Int.parse(0), Hex.parse("ffffffff"), null, Hex.parse("ffffffff")))),
+                List.of(), Int.parse(0), false, false);
+        assertThrows(IllegalArgumentException.class, () -> VerificationContext.resolve(coinbase, new InMemoryPrevoutProvider()));
+        assertFalse(coinbase.verify());
+    }
+}
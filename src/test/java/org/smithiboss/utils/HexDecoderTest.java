@@ -0,0 +1,44 @@
+package org.smithiboss.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HexDecoderTest {
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testUpdate() {
+        var decoder = new HexDecoder(1);
+        // a byte split across two chunks and mixed case
+        decoder.update(ascii(" 0aF"), 0, 4);
+        decoder.update(ascii("f10\n"), 0, 4);
+        assertEquals(3, decoder.length());
+        assertArrayEquals(new byte[]{0x0a, (byte) 0xff, 0x10}, decoder.toByteArray());
+        assertEquals(0x0a, decoder.stream().read());
+
+        decoder.reset();
+        decoder.update(ascii("abc"), 0, 3);
+        assertThrows(IllegalArgumentException.class, decoder::length);
+        decoder.reset();
+        assertThrows(IllegalArgumentException.class, () -> decoder.update(ascii("0g"), 0, 2));
+    }
+
+    @Test
+    public void testReadFrom() throws IOException {
+        var bytes = Bytes.randomBytes(20000);
+        var decoder = new HexDecoder(16);
+        decoder.readFrom(new ByteArrayInputStream(ascii(Bytes.byteArrayToHexString(bytes))));
+        assertArrayEquals(bytes, decoder.toByteArray());
+        decoder.reset();
+        decoder.readFrom(new ByteArrayInputStream(ascii("00ff")));
+        assertArrayEquals(new byte[]{0, -1}, decoder.toByteArray());
+    }
+}
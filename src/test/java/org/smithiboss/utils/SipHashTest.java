@@ -0,0 +1,61 @@
+package org.smithiboss.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SipHashTest {
+
+    private static final long K0 = 0x0706050403020100L;
+    private static final long K1 = 0x0f0e0d0c0b0a0908L;
+
+    private static byte[] message(int length) {
+        var data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testSipHash() {
+        // reference vectors of the SipHash paper, key 00..0f and message 00..(length - 1)
+        assertEquals(0x726fdb47dd0e0e31L, SipHash.sipHash(K0, K1, message(0)));
+        assertEquals(0xa129ca6149be45e5L, SipHash.sipHash(K0, K1, message(15)));
+        assertEquals(0x958a324ceb064572L, SipHash.sipHash(K0, K1, message(63)));
+    }
+
+    @Test
+    public void testSipHashRange() {
+        var data = message(70);
+        var part = new byte[20];
+        System.arraycopy(data, 5, part, 0, 20);
+        assertEquals(SipHash.sipHash(K0, K1, part), SipHash.sipHash(K0, K1, data, 5, 20));
+    }
+
+    @Test
+    public void testSipHash256() {
+        assertEquals(0x7127512f72f27cceL, SipHash.sipHash(K0, K1, message(32)));
+        assertEquals(0x7127512f72f27cceL, SipHash.sipHash256(K0, K1, message(32), 0));
+        var padded = new byte[33];
+        System.arraycopy(message(32), 0, padded, 1, 32);
+        assertEquals(0x7127512f72f27cceL, SipHash.sipHash256(K0, K1, padded, 1));
+    }
+
+    @Test
+    public void testSipHash256Batch() {
+        var hashes = new byte[3][];
+        var flat = new byte[96];
+        for (int i = 0; i < 3; i++) {
+            hashes[i] = Hash.hash256(new byte[]{(byte) i});
+            System.arraycopy(hashes[i], 0, flat, i * 32, 32);
+        }
+        var out = new long[3];
+        SipHash.sipHash256(K0, K1, flat, out);
+        assertArrayEquals(out, SipHash.sipHash256(K0, K1, hashes));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(SipHash.sipHash(K0, K1, hashes[i], 0, 32), out[i]);
+        }
+    }
+
+}
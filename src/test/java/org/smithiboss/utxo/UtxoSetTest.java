@@ -0,0 +1,140 @@
+package org.smithiboss.utxo;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Hex;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.script.Cmd;
+import org.smithiboss.script.OpCodes;
+import org.smithiboss.script.Script;
+import org.smithiboss.tx.OutPoint;
+import org.smithiboss.tx.Tx;
+import org.smithiboss.tx.TxIn;
+import org.smithiboss.tx.TxOut;
+import org.smithiboss.utils.Bytes;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class UtxoSetTest {
+
+    private static final String COINBASE = "01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff5e03d71b07254d696e656420627920416e74506f6f6c20626a31312f4542312f4144362f43205914293101fabe6d6d678e2c8c34afc36896e7d9402824ed38e856676ee94bfdb0c6c4bcd8b2e5666a0400000000000000c7270000a5e00e00ffffffff01faf20b58000000001976a914338c84849423992471bffb1a54a8d9b1d69dc28a88ac00000000";
+    private static final String RAW_TX = "010000000199a24308080ab26e6fb65c4eccfadf76749bb5bfa8cb08f291320b3c21e56f0d0d00000000ffffffff02408af701000000001976a914d52ad7ca9b3d096a38e752c2018e6fbc40cdf26f88ac80969800000000001976a914507b27411ccf7f16f10297de6cef3f291623eddf88ac00000000";
+    private static final OutPoint PREVOUT = new OutPoint(Hex.parse("0d6fe5213c0b3291f208cba8bfb59b7476dffacc4e5cb66f6eb20a080843a299"), 13);
+
+    @Test
+    public void testPutGetRemove() {
+        var random = new Random(42);
+        // small on purpose, the table grows several times
+        var set = new UtxoSet(100);
+        var reference = new HashMap<OutPoint, UtxoEntry>();
+        for (int i = 0; i < 20000; i++) {
+            var outPoint = new OutPoint(Hex.parse(Bytes.randomBytes(32)), random.nextInt(4));
+            var entry = new UtxoEntry(random.nextLong(21_000_000_00000000L), Bytes.randomBytes(random.nextInt(40)),
+                    random.nextInt(900000), random.nextBoolean());
+            set.put(outPoint, entry);
+            reference.put(outPoint, entry);
+        }
+        assertEquals(reference.size(), set.size());
+        // remove every other entry, which shifts entries back within the probe sequences
+        var removed = 0;
+        for (var outPoint : new ArrayList<>(reference.keySet())) {
+            if (removed++ % 2 == 0) {
+                assertEquals(reference.remove(outPoint), set.remove(outPoint));
+                assertNull(set.remove(outPoint));
+            }
+        }
+        assertEquals(reference.size(), set.size());
+        reference.forEach((outPoint, entry) -> assertEquals(entry, set.get(outPoint)));
+
+        var visited = new HashMap<String, UtxoEntry>();
+        set.forEach((key, entry) -> visited.put(Bytes.byteArrayToHexString(key), entry));
+        assertEquals(reference.size(), visited.size());
+        reference.forEach((outPoint, entry) -> assertEquals(entry, visited.get(Bytes.byteArrayToHexString(UtxoSet.key(outPoint)))));
+
+        set.clear();
+        assertEquals(0, set.size());
+        assertNull(set.get(reference.keySet().iterator().next()));
+    }
+
+    @Test
+    public void testConnectDisconnect() {
+        var coinbase = Tx.parse(COINBASE, false);
+        var tx = Tx.parse(RAW_TX, false);
+        var txId = Hex.parse(tx.hash());
+        // spends the first output of the transaction before it in the same block and burns some of it
+        var child = new Tx(Int.parse(1), new ArrayList<>(List.of(new TxIn(txId, Int.parse(0), null, Int.parse(0xffffffffL)))),
+                new ArrayList<>(List.of(
+                        new TxOut(Int.parse(1000), tx.getTxOuts().get(1).scriptPubkey()),
+                        new TxOut(Int.parse(0), new Script(new ArrayList<>(List.of(OpCodes.OP_106_RETURN.toCmd(), new Cmd(new byte[]{1, 2, 3}))))))),
+                Int.parse(0), false, false);
+        var block = List.of(coinbase, tx, child);
+
+        var set = new UtxoSet();
+        var spent = new UtxoEntry(44000000, tx.getTxOuts().get(0).scriptPubkey().rawSerialize(), 100, false);
+        set.put(PREVOUT, spent);
+
+        var undo = set.connectBlock(block, 200);
+        assertEquals(List.of(spent, UtxoEntry.of(tx.getTxOuts().get(0), 200, false)), undo.spent());
+        assertNull(set.get(PREVOUT));
+        assertNull(set.get(new OutPoint(txId, 0)));
+        assertEquals(UtxoEntry.of(tx.getTxOuts().get(1), 200, false), set.get(new OutPoint(txId, 1)));
+        var coinbaseEntry = set.get(new OutPoint(Hex.parse(coinbase.hash()), 0));
+        assertTrue(coinbaseEntry.coinbase());
+        assertEquals(200, coinbaseEntry.height());
+        // the OP_RETURN output is not kept
+        assertNotNull(set.get(new OutPoint(Hex.parse(child.hash()), 0)));
+        assertNull(set.get(new OutPoint(Hex.parse(child.hash()), 1)));
+        assertEquals(3, set.size());
+        assertArrayEquals(tx.getTxOuts().get(1).serialize(), set.prevout(new OutPoint(txId, 1)).serialize());
+
+        assertTrue(set.disconnectBlock(block, undo));
+        assertEquals(1, set.size());
+        assertEquals(spent, set.get(PREVOUT));
+
+        // a block spending an unknown output changes nothing
+        set.remove(PREVOUT);
+        set.put(new OutPoint(txId, 5), spent);
+        assertThrows(IllegalStateException.class, () -> set.connectBlock(block, 200));
+        assertEquals(1, set.size());
+        assertEquals(spent, set.get(new OutPoint(txId, 5)));
+        assertThrows(IllegalArgumentException.class, () -> set.disconnectBlock(block, new BlockUndo(List.of())));
+    }
+
+    @Test
+    public void testConnectRawScripts() {
+        var coinbase = Tx.parse(COINBASE, false);
+        var tx = Tx.parse(RAW_TX, false);
+        // a 75 byte element pushed directly, kept as it was in the block
+        var raw = Bytes.concat(new byte[]{0x4b}, new byte[75], new byte[]{(byte) 0xac});
+        var script = Script.parse(new ByteArrayInputStream(Bytes.concat(new byte[]{(byte) raw.length}, raw)));
+        var spend = new Tx(Int.parse(1), tx.getTxIns(), new ArrayList<>(List.of(new TxOut(Int.parse(1000), script))),
+                Int.parse(0), false, false);
+        // spends that output, but an element too long for any push means its own output cannot be serialized
+        var bad = new Tx(Int.parse(1), new ArrayList<>(List.of(new TxIn(Hex.parse(spend.hash()), Int.parse(0), null, Int.parse(0xffffffffL)))),
+                new ArrayList<>(List.of(new TxOut(Int.parse(1000), new Script(new ArrayList<>(List.of(new Cmd(new byte[0x10000]))))))),
+                Int.parse(0), false, false);
+
+        var set = new UtxoSet();
+        var spent = new UtxoEntry(44000000, tx.getTxOuts().get(0).scriptPubkey().rawSerialize(), 100, false);
+        set.put(PREVOUT, spent);
+
+        // the block fails before the set is changed
+        assertThrows(IllegalStateException.class, () -> set.connectBlock(List.of(coinbase, spend, bad), 200));
+        assertEquals(1, set.size());
+        assertEquals(spent, set.get(PREVOUT));
+
+        var block = List.of(coinbase, spend);
+        var undo = set.connectBlock(block, 200);
+        assertNull(set.get(PREVOUT));
+        assertArrayEquals(raw, set.get(new OutPoint(Hex.parse(spend.hash()), 0)).scriptPubkey());
+        assertEquals(2, set.size());
+        assertTrue(set.disconnectBlock(block, undo));
+        assertEquals(1, set.size());
+        assertEquals(spent, set.get(PREVOUT));
+    }
+}
@@ -0,0 +1,178 @@
+package org.smithiboss.utxo;
+
+import org.junit.Test;
+import org.smithiboss.ecc.Int;
+import org.smithiboss.ecc.S256Point;
+import org.smithiboss.script.Script;
+import org.smithiboss.utils.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class UtxoSnapshotTest {
+
+    private static final long COIN = 100000000L;
+
+    @Test
+    public void testCompressAmount() {
+        assertEquals(0, UtxoCompression.compressAmount(0));
+        assertEquals(1, UtxoCompression.compressAmount(1));
+        assertEquals(0x7, UtxoCompression.compressAmount(COIN / 100));
+        assertEquals(0x9, UtxoCompression.compressAmount(COIN));
+        assertEquals(0x32, UtxoCompression.compressAmount(50 * COIN));
+        assertEquals(0x1406f40, UtxoCompression.compressAmount(21000000 * COIN));
+        var random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            var amount = random.nextLong(21000000 * COIN);
+            assertEquals(amount, UtxoCompression.decompressAmount(UtxoCompression.compressAmount(amount)));
+        }
+    }
+
+    @Test
+    public void testVarInt() {
+        long[] values = {0, 0x7f, 0x80, 0x1234, 0xffff, 0x123456, 0x80123456L, 0xffffffffL};
+        String[] encodings = {"00", "7f", "8000", "a334", "82fe7f", "c7e756", "86ffc7e756", "8efefefe7f"};
+        for (int i = 0; i < values.length; i++) {
+            var out = new ByteArrayOutputStream();
+            UtxoCompression.writeVarInt(values[i], out);
+            assertEquals(encodings[i], Bytes.byteArrayToHexString(out.toByteArray()));
+            assertEquals(values[i], UtxoCompression.readVarInt(ByteBuffer.wrap(out.toByteArray())));
+        }
+    }
+
+    @Test
+    public void testCompressScript() {
+        var hash = Bytes.randomBytes(20);
+        var compressed = S256Point.G.sec(true);
+        var uncompressed = S256Point.G.mul(Int.parse(3)).sec(false);
+        var scripts = List.of(
+                Script.p2pkhScript(hash).rawSerialize(),
+                Script.p2shScript(hash).rawSerialize(),
+                Bytes.concat(new byte[]{33}, compressed, new byte[]{(byte) 0xac}),
+                Bytes.concat(new byte[]{65}, uncompressed, new byte[]{(byte) 0xac}),
+                Script.p2wpkhScript(hash).rawSerialize(),
+                new byte[0]);
+        int[] lengths = {21, 21, 33, 33, 23, 1};
+        for (int i = 0; i < scripts.size(); i++) {
+            var out = new ByteArrayOutputStream();
+            UtxoCompression.writeScript(scripts.get(i), out);
+            assertEquals(lengths[i], out.size());
+            var in = ByteBuffer.wrap(out.toByteArray());
+            assertArrayEquals(scripts.get(i), UtxoCompression.readScript(in));
+            assertEquals(0, in.remaining());
+        }
+        // a key off the curve is kept as it is
+        var invalid = Bytes.concat(new byte[]{65, 4}, new byte[64], new byte[]{(byte) 0xac});
+        var out = new ByteArrayOutputStream();
+        UtxoCompression.writeScript(invalid, out);
+        assertEquals(1 + 67, out.size());
+    }
+
+    private static UtxoEntry randomEntry(Random random) {
+        var script = switch (random.nextInt(4)) {
+            case 0 -> Script.p2pkhScript(Bytes.randomBytes(20)).rawSerialize();
+            case 1 -> Script.p2shScript(Bytes.randomBytes(20)).rawSerialize();
+            case 2 -> Bytes.concat(new byte[]{33}, S256Point.G.sec(true), new byte[]{(byte) 0xac});
+            default -> Bytes.randomBytes(random.nextInt(80));
+        };
+        return new UtxoEntry(random.nextLong(50 * COIN), script, random.nextInt(900000), random.nextBoolean());
+    }
+
+    private static Map<String, UtxoEntry> contents(UtxoSet set) {
+        var contents = new HashMap<String, UtxoEntry>();
+        set.forEach((key, entry) -> contents.put(Bytes.byteArrayToHexString(key), entry));
+        return contents;
+    }
+
+    @Test
+    public void testSnapshotAndDiff() throws IOException {
+        var random = new Random(7);
+        var set = new UtxoSet(100);
+        var keys = new ArrayList<byte[]>();
+        for (int i = 0; i < 3000; i++) {
+            // several outputs per transaction share a prefix
+            var txId = Bytes.randomBytes(32);
+            for (int index = 0; index < 1 + random.nextInt(3); index++) {
+                var key = Bytes.concat(txId, new byte[]{(byte) index, 0, 0, 0});
+                set.put(key, randomEntry(random));
+                keys.add(key);
+            }
+        }
+        var dir = Files.createTempDirectory("utxo");
+        var path = dir.resolve("utxo.dat");
+        try {
+            testSnapshotAndDiff(random, set, keys, path);
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (var file : files.toList()) Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static void testSnapshotAndDiff(Random random, UtxoSet set, List<byte[]> keys, Path path) throws IOException {
+        var checksum = UtxoSnapshot.write(set, 800000, path);
+
+        var snapshot = UtxoSnapshot.open(path);
+        assertFalse(snapshot.isDiff());
+        assertEquals(800000, snapshot.getHeight());
+        assertEquals(set.size(), snapshot.size());
+        assertArrayEquals(checksum, snapshot.getChecksum());
+        assertTrue(snapshot.verify());
+        for (byte[] key : keys) {
+            assertEquals(set.get(key), snapshot.get(key));
+        }
+        assertNull(snapshot.get(Bytes.randomBytes(36)));
+        assertEquals(contents(set), contents(UtxoSnapshot.restore(path, null)));
+
+        // remove, change and add outputs
+        for (int i = 0; i < 500; i++) {
+            var key = keys.get(random.nextInt(keys.size()));
+            if (i % 2 == 0) {
+                set.remove(key);
+            } else {
+                set.put(key, randomEntry(random));
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            set.put(Bytes.randomBytes(36), randomEntry(random));
+        }
+        var diffPath = path.resolveSibling("utxo.diff");
+        UtxoSnapshot.writeDiff(snapshot, set, 800010, diffPath);
+        var diff = UtxoSnapshot.open(diffPath);
+        assertTrue(diff.isDiff());
+        assertArrayEquals(checksum, diff.getBase());
+        assertTrue(diff.size() < set.size());
+        assertEquals(contents(set), contents(UtxoSnapshot.restore(path, diffPath)));
+
+        // a diff against another snapshot is rejected
+        var otherPath = path.resolveSibling("other.dat");
+        UtxoSnapshot.write(new UtxoSet(), 1, otherPath);
+        assertThrows(IllegalStateException.class, () -> UtxoSnapshot.restore(otherPath, diffPath));
+
+        // the files are checked to be of the right kind
+        var e = assertThrows(IllegalStateException.class, () -> UtxoSnapshot.restore(diffPath, null));
+        assertTrue(e.getMessage().startsWith("Expected a full snapshot"));
+        e = assertThrows(IllegalStateException.class, () -> UtxoSnapshot.restore(path, otherPath));
+        assertTrue(e.getMessage().startsWith("Expected a diff"));
+
+        // a damaged snapshot is not loaded
+        var bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        assertFalse(UtxoSnapshot.open(path).verify());
+        var empty = new UtxoSet();
+        assertThrows(IllegalStateException.class, () -> UtxoSnapshot.open(path).loadInto(empty));
+        assertEquals(0, empty.size());
+    }
+}